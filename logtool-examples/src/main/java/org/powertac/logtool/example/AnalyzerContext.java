@@ -0,0 +1,253 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.powertac.common.repo.BrokerRepo;
+import org.powertac.logtool.LogtoolContext;
+import org.powertac.logtool.common.DomainObjectReader;
+import org.powertac.logtool.ifc.Analyzer;
+
+/**
+ * Common superclass for the example analyzers. When an analyzer is run
+ * by itself, this behaves exactly like LogtoolContext. A driver such as
+ * MultiAnalyzer can instead ask for an analyzer to be configured from its
+ * usual command-line arguments without reading the log, so that several
+ * analyzers can share a single pass through the same state log.
+ *
+ * The state log may also be given as a compressed game archive such as
+ * game-3-sim-logs.tar.gz, in which case the sim state log is read directly
+ * out of the archive.
+ *
+ * If the system property logtool.checkpoint is set to a number of
+ * timeslots, analyzers that implement Checkpointable are run by a
+ * CheckpointRunner, which saves their state that often and resumes an
+ * interrupted run from its last checkpoint.
+ *
+ * Indexes that several analyzers can use, such as BrokerIndex and
+ * DemandIndex, are obtained through getBrokerIndex() and getDemandIndex()
+ * in setup(). Analyzers set up together by a driver get the same
+ * instances, so the work of keeping them up to date is done only once.
+ */
+public abstract class AnalyzerContext
+extends LogtoolContext
+{
+  // Non-null while a driver is collecting configured analyzers
+  // on the current thread
+  private static ThreadLocal<List<PendingRun>> pending = new ThreadLocal<>();
+
+  /**
+   * System property giving the checkpoint interval in timeslots.
+   */
+  public static final String checkpointProperty = "logtool.checkpoint";
+
+  // Non-null while a driver is setting up analyzers that share indexes
+  private static ThreadLocal<Map<Class<?>, Object>> shared =
+      new ThreadLocal<>();
+
+  // True while a CheckpointRunner is skipping to a checkpoint
+  private boolean resuming = false;
+
+  private BrokerIndex brokerIndex = null;
+  private DemandIndex demandIndex = null;
+
+  public AnalyzerContext ()
+  {
+    super();
+  }
+
+  /**
+   * Reads the state log from the given source and passes its contents
+   * to the given analyzer. If a driver is collecting analyzers on this
+   * thread, the source and analyzer are recorded instead, and nothing
+   * is read.
+   */
+  @Override
+  public void cli (String source, Analyzer tool)
+  {
+    // indexes from an earlier run belong to the previous game
+    brokerIndex = null;
+    demandIndex = null;
+    List<PendingRun> runs = pending.get();
+    if (null != runs) {
+      runs.add(new PendingRun(source, tool));
+      return;
+    }
+    int interval = Integer.getInteger(checkpointProperty, 0);
+    if (interval > 0 && tool instanceof Checkpointable
+        && tool instanceof AnalyzerContext && !"-".equals(source)) {
+      new CheckpointRunner(tool, interval).run(source);
+      return;
+    }
+    if (!GameArchive.isArchive(source)) {
+      super.cli(source, tool);
+      return;
+    }
+    // Feed the state log to the framework through standard input
+    InputStream stateLog = null;
+    try {
+      stateLog = GameArchive.openStateLog(source);
+    }
+    catch (IOException ioe) {
+      System.out.println("Cannot read state log from " + source
+                         + ": " + ioe.toString());
+      return;
+    }
+    StdinRouter.route(stateLog);
+    try {
+      super.cli("-", tool);
+    }
+    finally {
+      StdinRouter.route(null);
+      try {
+        stateLog.close();
+      }
+      catch (IOException ioe) {
+        // nothing more to read
+      }
+    }
+  }
+
+  /**
+   * True if this analyzer is being set up to resume from a checkpoint.
+   * Its setup() must not create or truncate its data file in that case,
+   * since the output written before the checkpoint is still there.
+   */
+  protected boolean isResuming ()
+  {
+    return resuming;
+  }
+
+  void setResuming (boolean value)
+  {
+    resuming = value;
+  }
+
+  /**
+   * Returns the BrokerIndex for this run, creating it if needed. Must
+   * first be called from setup().
+   */
+  protected BrokerIndex getBrokerIndex ()
+  {
+    if (null == brokerIndex) {
+      brokerIndex = (BrokerIndex) getShared(BrokerIndex.class);
+      if (null == brokerIndex) {
+        brokerIndex =
+            new BrokerIndex((BrokerRepo) getBean("brokerRepo"),
+                            (DomainObjectReader) getBean("domainObjectReader"));
+        putShared(BrokerIndex.class, brokerIndex);
+      }
+    }
+    return brokerIndex;
+  }
+
+  /**
+   * Returns the DemandIndex for this run, creating it if needed. Must
+   * first be called from setup().
+   */
+  protected DemandIndex getDemandIndex ()
+  {
+    if (null == demandIndex) {
+      demandIndex = (DemandIndex) getShared(DemandIndex.class);
+      if (null == demandIndex) {
+        demandIndex =
+            new DemandIndex(getBrokerIndex(),
+                            (DomainObjectReader) getBean("domainObjectReader"));
+        putShared(DemandIndex.class, demandIndex);
+      }
+    }
+    return demandIndex;
+  }
+
+  private Object getShared (Class<?> type)
+  {
+    Map<Class<?>, Object> components = shared.get();
+    if (null == components)
+      return null;
+    return components.get(type);
+  }
+
+  private void putShared (Class<?> type, Object component)
+  {
+    Map<Class<?>, Object> components = shared.get();
+    if (null != components)
+      components.put(type, component);
+  }
+
+  /**
+   * Called by a driver before setting up the analyzers it runs together,
+   * so that they share their indexes. Must be followed by endSharing().
+   */
+  static void beginSharing ()
+  {
+    shared.set(new HashMap<>());
+  }
+
+  static void endSharing ()
+  {
+    shared.remove();
+  }
+
+  /**
+   * Calls the main() method of an analyzer class with the given args,
+   * and returns the configured analyzer along with the state log it would
+   * have read. Returns null if the analyzer rejected its arguments.
+   */
+  static PendingRun configure (Class<? extends AnalyzerContext> analyzerClass,
+                               String[] args)
+    throws ReflectiveOperationException
+  {
+    List<PendingRun> runs = new ArrayList<>();
+    pending.set(runs);
+    try {
+      Method main = analyzerClass.getMethod("main", String[].class);
+      main.invoke(null, (Object) args);
+    }
+    catch (InvocationTargetException ite) {
+      if (ite.getCause() instanceof RuntimeException)
+        throw (RuntimeException) ite.getCause();
+      throw ite;
+    }
+    finally {
+      pending.remove();
+    }
+    if (runs.size() != 1)
+      return null;
+    return runs.get(0);
+  }
+
+  // An analyzer that has been configured but not yet run
+  static class PendingRun
+  {
+    String source;
+    Analyzer tool;
+
+    PendingRun (String source, Analyzer tool)
+    {
+      super();
+      this.source = source;
+      this.tool = tool;
+    }
+  }
+}
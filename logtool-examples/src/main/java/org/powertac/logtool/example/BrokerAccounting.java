@@ -15,16 +15,15 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -46,7 +45,6 @@ import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BrokerRepo;
 import org.powertac.common.repo.TimeslotRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -74,13 +72,19 @@ import org.powertac.logtool.ifc.Analyzer;
  * NOTE: Numeric data is formatted using the US locale in order to avoid confusion over
  * the meaning of the comma character when used in other locales.
  * 
+ * If the output filename ends in ".ptcol", the same columns are written in
+ * the columnar binary format described in ColumnarSink.
+ * 
+ * The analyzer is Checkpointable, so a long run can be resumed if it is
+ * interrupted; see CheckpointRunner.
+ * 
  * Usage: BrokerAccounting [--per-broker | --broker name] state-log-filename output-data-filename
  * 
  * @author John Collins
  */
 public class BrokerAccounting
-extends LogtoolContext
-implements Analyzer
+extends AnalyzerContext
+implements Analyzer, Checkpointable
 {
   static private Logger log = LogManager.getLogger(BrokerAccounting.class.getName());
 
@@ -90,7 +94,9 @@ implements Analyzer
 
   // Data
   private List<Broker> brokerList;
-  private HashMap<Broker, TreeMap<Integer, ArrayList<MarketTransaction>>> data;
+  // market credits and debits by target timeslot, two columns per
+  // broker in brokerList order
+  private TimeslotRing data;
   private HashMap<Broker, BrokerData> brokerData;
 
   private boolean started = false;
@@ -98,8 +104,14 @@ implements Analyzer
   private int timeslot = 0;
   private boolean perBroker = false;
   private String singleBroker = null;
-  private PrintWriter output = null;
+  private DataSink output = null;
   private String dataFilename = "broker-accounting.data";
+
+  // names of the per-broker data columns
+  static final String[] dataColumns =
+    {"ttx-sc", "ttx-sd", "ttx-uc", "ttx-ud", "mtx-c", "mtx-d",
+     "btx-c", "btx-d", "dtx-c", "dtx-d", "ctx-c", "ctx-d",
+     "bce-c", "bce-d", "bank-c", "bank-d", "cash"};
   
   /**
    * Main method just creates an instance and passes command-line args to
@@ -141,13 +153,6 @@ implements Analyzer
     brokerRepo = (BrokerRepo) getBean("brokerRepo");
     timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
     brokerList = new ArrayList<>();
-    data = new HashMap<>();
-    try {
-      output = new PrintWriter(new File(dataFilename));
-    }
-    catch (FileNotFoundException e) {
-      log.error("Cannot open file " + dataFilename);
-    }
   }
 
   private void firstLine ()
@@ -157,7 +162,6 @@ implements Analyzer
       Broker single = brokerRepo.findByUsername(singleBroker);
       if (null == single) {
         log.error("Cannot find single broker {}", singleBroker);
-        output.close();
         System.out.println("Single broker not found in data file");
         System.exit(-1);
       }
@@ -170,16 +174,38 @@ implements Analyzer
     for (Broker broker: brokerList) {
       brokerData.put(broker, new BrokerData());
     }
+    data = new TimeslotRing(32, 2 * brokerList.size(), 0.0);
+    try {
+      output = DataSink.open(dataFilename, getColumns(), df, true);
+    }
+    catch (IOException e) {
+      log.error("Cannot open file " + dataFilename);
+    }
+  }
+
+  private List<DataSink.Column> getColumns ()
+  {
+    List<DataSink.Column> columns = new ArrayList<>();
+    columns.add(new DataSink.Column("ts", DataSink.Type.INT));
+    columns.add(new DataSink.Column("dow", DataSink.Type.INT));
+    columns.add(new DataSink.Column("hod", DataSink.Type.INT));
     if (perBroker) {
-      output.println("ts,dow,hod,broker,ttx-sc,ttx-sd,ttx-uc,ttx-ud,mtx-c,mtx-d,btx-c,btx-d,dtx-c,dtx-d,ctx-c,ctx-d,bce-c,bce-d,bank-c,bank-d,cash");
+      addBrokerColumns(columns, "broker");
     }
     else {
-      output.print("ts,dow,hod");
       for (int i = 0; i < brokerList.size(); i++) {
-        output.printf(",broker%d,ttx-sc,ttx-sd,ttx-uc,ttx-ud,mtx-c,mtx-d,btx-c,btx-d,dtx-c,dtx-d,ctx-c,ctx-d,bce-c,bce-d,bank-c,bank-d,cash",
-                      i);
+        addBrokerColumns(columns, "broker" + i);
       }
-      output.println();
+    }
+    return columns;
+  }
+
+  private void addBrokerColumns (List<DataSink.Column> columns,
+                                 String brokerColumn)
+  {
+    columns.add(new DataSink.Column(brokerColumn, DataSink.Type.STRING));
+    for (String name: dataColumns) {
+      columns.add(new DataSink.Column(name, DataSink.Type.DOUBLE));
     }
   }
 
@@ -189,7 +215,8 @@ implements Analyzer
   @Override
   public void report ()
   {
-    output.close();
+    if (null != output)
+      output.close();
   }
 
   // Dump collected data to output. Format depends on perBroker setting.
@@ -199,67 +226,45 @@ implements Analyzer
       for (Broker broker: brokerList) {
         dumpTS();
         dumpData(broker);
-        output.println();
+        output.endRow();
       }
     }
     else {
       dumpTS();
       for (Broker broker: brokerList)
         dumpData(broker);
-      output.println();
+      output.endRow();
     }
+    // market transactions for this timeslot have been reported
+    data.release(timeslot + 1);
   }
 
   private void dumpData (Broker broker)
   {
-    output.format(",%s",broker.getUsername());
+    output.putString(broker.getUsername());
     BrokerData bd = brokerData.get(broker);
     // TariffTransaction, state and usage
-    //output.format(",%.4f,%.4f,%.4f,%.4f",
-    //              bd.ttxSC, bd.ttxSD, bd.ttxUC, bd.ttxUD);
-    output.format(",%s,%s,%s,%s",
-                  df.format(bd.ttxSC),
-                  df.format(bd.ttxSD),
-                  df.format(bd.ttxUC),
-                  df.format(bd.ttxUD));
+    output.putDouble(bd.ttxSC)
+        .putDouble(bd.ttxSD)
+        .putDouble(bd.ttxUC)
+        .putDouble(bd.ttxUD);
     // Handle deferred market transactions for this timeslot
-    TreeMap<Integer, ArrayList<MarketTransaction>> brokerTxMap =
-        data.get(broker);
-    double mtxD = 0.0;
-    double mtxC = 0.0;
-    if (null != brokerTxMap) {
-      List<MarketTransaction> txList = brokerTxMap.get(timeslot);
-      if (null != txList) {
-        for (MarketTransaction tx: txList) {
-          double money = Math.abs(tx.getMWh()) * tx.getPrice();
-          if (money >= 0.0)
-            mtxC += money;
-          else
-            mtxD += money;
-        }
-      }
-    }
-    //output.format(",%.4f,%.4f", mtxC, mtxD);
-    output.format(",%s,%s", df.format(mtxC), df.format(mtxD));
+    int column = 2 * brokerList.indexOf(broker);
+    output.putDouble(data.get(timeslot, column))
+        .putDouble(data.get(timeslot, column + 1));
     // balancing, distribution, capacity
-    //output.format(",%.4f,%.4f,%.4f,%.4f,%.4f,%.4f",
-    //              bd.btxC, bd.btxD, bd.dtxC, bd.dtxD, bd.ctxC, bd.ctxD);
-    output.format(",%s,%s,%s,%s,%s,%s",
-                  df.format(bd.btxC),
-                  df.format(bd.btxD),
-                  df.format(bd.dtxC),
-                  df.format(bd.dtxD),
-                  df.format(bd.ctxC),
-                  df.format(bd.ctxD));
+    output.putDouble(bd.btxC)
+        .putDouble(bd.btxD)
+        .putDouble(bd.dtxC)
+        .putDouble(bd.dtxD)
+        .putDouble(bd.ctxC)
+        .putDouble(bd.ctxD);
     // balancing control, bank
-    //output.format(",%.4f,%.4f,%.4f,%.4f,%.4f",
-    //              bd.bceC, bd.bceD, bd.bankC, bd.bankD, bd.cash);
-    output.format(",%s,%s,%s,%s,%s",
-                  df.format(bd.bceC),
-                  df.format(bd.bceD),
-                  df.format(bd.bankC),
-                  df.format(bd.bankD),
-                  df.format(bd.cash));
+    output.putDouble(bd.bceC)
+        .putDouble(bd.bceD)
+        .putDouble(bd.bankC)
+        .putDouble(bd.bankD)
+        .putDouble(bd.cash);
     bd.clear();
   }
 
@@ -267,9 +272,9 @@ implements Analyzer
   {
     // print ts,dow,hod
     DateTime dt = timeslotRepo.getDateTimeForIndex(timeslot);
-    output.format("%d,%d,%d", timeslot,
-                  dt.get(DateTimeFieldType.dayOfWeek()),
-                  dt.get(DateTimeFieldType.hourOfDay()));
+    output.putInt(timeslot)
+        .putInt(dt.get(DateTimeFieldType.dayOfWeek()))
+        .putInt(dt.get(DateTimeFieldType.hourOfDay()));
   }
 
   // -----------------------------------
@@ -320,25 +325,18 @@ implements Analyzer
   // catch MarketTransaction messages
   public void handleMessage (MarketTransaction tx)
   {
-    Broker broker = tx.getBroker();
-    if (!brokerList.contains(broker))
+    int index = brokerList.indexOf(tx.getBroker());
+    if (index < 0)
       return;
     //System.out.printf("Market tx %s, ts %d, mwh %.4f, price %.4f\n",
     //                  tx.getBroker().getUsername(), tx.getTimeslotIndex(),
     //                  tx.getMWh(), tx.getPrice());
-    Integer target = tx.getTimeslotIndex();
-    TreeMap<Integer, ArrayList<MarketTransaction>> brokerData =
-        data.get(broker);
-    if (null == brokerData) {
-      brokerData = new TreeMap<>();
-      data.put(broker, brokerData);
-    }
-    ArrayList<MarketTransaction> list = brokerData.get(target);
-    if (null == list) {
-      list = new ArrayList<>();
-      brokerData.put(target, list);
-    }
-    list.add(tx);
+    // credits and debits are summed in arrival order
+    double money = Math.abs(tx.getMWh()) * tx.getPrice();
+    if (money >= 0.0)
+      data.add(tx.getTimeslotIndex(), 2 * index, money);
+    else
+      data.add(tx.getTimeslotIndex(), 2 * index + 1, money);
   }
 
   // -----------------------------------
@@ -444,6 +442,85 @@ implements Analyzer
         Competition.currentCompetition().getDeactivateTimeslotsAhead();
   }
 
+  // -----------------------------------
+  // Checkpointable
+
+  @Override
+  public String getDataFilename ()
+  {
+    return dataFilename;
+  }
+
+  @Override
+  public void saveState (DataOutputStream out) throws IOException
+  {
+    if (null != output)
+      output.flush();
+    out.writeBoolean(started);
+    out.writeInt(skip);
+    out.writeInt(timeslot);
+    out.writeBoolean(null != brokerData);
+    out.writeInt(brokerList.size());
+    for (Broker broker: brokerList) {
+      out.writeUTF(broker.getUsername());
+      if (null != brokerData)
+        brokerData.get(broker).write(out);
+    }
+    if (null == data)
+      return;
+    // market rows that have not been reported yet
+    int rows = 0;
+    for (int ts = data.getLow(); ts <= data.getHigh(); ts++) {
+      if (data.contains(ts))
+        rows += 1;
+    }
+    out.writeInt(rows);
+    for (int ts = data.getLow(); ts <= data.getHigh(); ts++) {
+      if (!data.contains(ts))
+        continue;
+      out.writeInt(ts);
+      for (int i = 0; i < data.getWidth(); i++)
+        out.writeDouble(data.get(ts, i));
+    }
+  }
+
+  @Override
+  public void restoreState (DataInputStream in) throws IOException
+  {
+    started = in.readBoolean();
+    skip = in.readInt();
+    timeslot = in.readInt();
+    boolean hasData = in.readBoolean();
+    if (hasData)
+      brokerData = new HashMap<>();
+    brokerList = new ArrayList<>();
+    int brokerCount = in.readInt();
+    for (int i = 0; i < brokerCount; i++) {
+      String name = in.readUTF();
+      Broker broker = brokerRepo.findByUsername(name);
+      if (null == broker)
+        throw new IOException("Unknown broker " + name);
+      brokerList.add(broker);
+      if (hasData) {
+        BrokerData bd = new BrokerData();
+        bd.read(in);
+        brokerData.put(broker, bd);
+      }
+    }
+    if (!hasData)
+      return;
+    data = new TimeslotRing(32, 2 * brokerList.size(), 0.0);
+    // nothing before the current timeslot is needed again
+    data.release(timeslot);
+    int rows = in.readInt();
+    for (int r = 0; r < rows; r++) {
+      int ts = in.readInt();
+      for (int i = 0; i < data.getWidth(); i++)
+        data.set(ts, i, in.readDouble());
+    }
+    output = DataSink.append(dataFilename, getColumns(), df);
+  }
+
   class BrokerData
   {
     double ttxSC;
@@ -486,5 +563,32 @@ implements Analyzer
       bankD = 0.0;
       cash = 0.0;
     }
+
+    void write (DataOutputStream out) throws IOException
+    {
+      for (double value: new double[] {ttxSC, ttxSD, ttxUC, ttxUD,
+                                       btxC, btxD, dtxC, dtxD, ctxC, ctxD,
+                                       bceC, bceD, bankC, bankD, cash})
+        out.writeDouble(value);
+    }
+
+    void read (DataInputStream in) throws IOException
+    {
+      ttxSC = in.readDouble();
+      ttxSD = in.readDouble();
+      ttxUC = in.readDouble();
+      ttxUD = in.readDouble();
+      btxC = in.readDouble();
+      btxD = in.readDouble();
+      dtxC = in.readDouble();
+      dtxD = in.readDouble();
+      ctxC = in.readDouble();
+      ctxD = in.readDouble();
+      bceC = in.readDouble();
+      bceD = in.readDouble();
+      bankC = in.readDouble();
+      bankD = in.readDouble();
+      cash = in.readDouble();
+    }
   }
 }
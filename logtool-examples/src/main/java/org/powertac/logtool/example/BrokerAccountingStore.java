@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.powertac.logtool.example.DataSink.Column;
+import org.powertac.logtool.example.DataSink.Type;
+
+/**
+ * Collects the BrokerAccounting --per-broker data of every game in a
+ * tournament into a store with one columnar data file per broker, so that
+ * a broker's accounts across all games can be read from a single file.
+ * BrokerAccounting is run on the games through TournamentProcessor,
+ * several games at once, writing tournament-dir/data/ba-g.ptcol for game
+ * g, and the rows of each game are then appended to the store.
+ *
+ * The store is a directory holding broker.ptcol for each broker (with
+ * characters other than letters, digits, '.', '_' and '-' in the name
+ * replaced by '_'), in the format described in ColumnarSink, with columns
+ *   game, broker, ts, dow, hod
+ * followed by the 17 BrokerAccounting columns. Rows are in game order, and
+ * in timeslot order within a game. The file games.idx in the store lists
+ * the games that have been added, one line per broker file of each game,
+ * as game-id, file name and file length separated by tabs. Games that are
+ * already in the store are not added again, so a store can be brought up
+ * to date as a tournament goes on. If adding a game was interrupted, the
+ * broker files are cut back to the lengths recorded for the last complete
+ * game when the store is next opened.
+ *
+ * A broker's file can be read with ColumnarReader, converted with
+ * ColumnarToCsv, or loaded with ColumnarData.readDict() in python.
+ *
+ * Usage: BrokerAccountingStore [--force] [--threads n] [--csv manifest]
+ *          tournament-dir store-dir
+ */
+public class BrokerAccountingStore
+{
+  static final String dataPrefix = "ba-";
+  static final String indexName = "games.idx";
+
+  private List<String> processorArgs = new ArrayList<>();
+  private File storeDir;
+
+  // games in the store, and the length of each broker file
+  private Set<String> games = new HashSet<>();
+  private Map<String, Long> lengths = new HashMap<>();
+
+  /**
+   * Main method just creates an instance and passes command-line args to
+   * its cli() method.
+   */
+  public static void main (String[] args)
+  {
+    new BrokerAccountingStore().cli(args);
+  }
+
+  private void cli (String[] args)
+  {
+    processorArgs.add("--columnar");
+    int offset = 0;
+    while (offset < args.length && args[offset].startsWith("--")) {
+      if ("--force".equals(args[offset])) {
+        processorArgs.add(args[offset]);
+        offset += 1;
+      }
+      else if (("--threads".equals(args[offset]) || "--csv".equals(args[offset]))
+               && offset + 1 < args.length) {
+        processorArgs.add(args[offset]);
+        processorArgs.add(args[offset + 1]);
+        offset += 2;
+      }
+      else {
+        break;
+      }
+    }
+    if (args.length - offset != 2) {
+      System.out.println("Usage: BrokerAccountingStore [--force] [--threads n] [--csv manifest] tournament-dir store-dir");
+      return;
+    }
+    processorArgs.add(args[offset]);
+    processorArgs.add(BrokerAccounting.class.getSimpleName());
+    processorArgs.add(dataPrefix);
+    processorArgs.add("--per-broker");
+    storeDir = new File(args[offset + 1]);
+    try {
+      openStore();
+    }
+    catch (IOException ioe) {
+      System.out.println("Cannot open store " + storeDir + ": "
+                         + ioe.toString());
+      return;
+    }
+
+    List<TournamentProcessor.Game> processed =
+        new TournamentProcessor().cli(processorArgs.toArray(new String[0]));
+    int added = 0;
+    for (TournamentProcessor.Game game: processed) {
+      if (games.contains(game.gameId))
+        continue;
+      if (null == game.dataFile || !game.dataFile.isFile()) {
+        System.out.println("No data for game " + game.gameId);
+        continue;
+      }
+      try {
+        addGame(game.gameId, game.dataFile);
+        added += 1;
+      }
+      catch (IOException ioe) {
+        System.out.println("Cannot add game " + game.gameId + ": "
+                           + ioe.toString());
+        return;
+      }
+    }
+    System.out.println("Added " + added + " games to " + storeDir + ", "
+                       + games.size() + " games in store");
+  }
+
+  // Reads the index, and cuts back any broker files that were left
+  // partly written
+  private void openStore () throws IOException
+  {
+    if (!storeDir.isDirectory() && !storeDir.mkdirs())
+      throw new IOException("Cannot create directory");
+    File index = new File(storeDir, indexName);
+    if (index.isFile()) {
+      try (BufferedReader in =
+          new BufferedReader(new InputStreamReader(new FileInputStream(index),
+                                                   StandardCharsets.UTF_8))) {
+        String line;
+        while (null != (line = in.readLine())) {
+          String[] fields = line.split("\t");
+          if (fields.length != 3)
+            continue;
+          games.add(fields[0]);
+          lengths.put(fields[1], Long.parseLong(fields[2]));
+        }
+      }
+    }
+    File[] segments =
+        storeDir.listFiles((d, name) -> ColumnarSink.isColumnar(name));
+    for (File segment: segments) {
+      Long length = lengths.get(segment.getName());
+      if (null == length) {
+        segment.delete();
+      }
+      else if (segment.length() > length) {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+          file.setLength(length);
+        }
+      }
+    }
+  }
+
+  // Appends the rows of one game to the broker files, then records
+  // the game in the index
+  private void addGame (String gameId, File dataFile) throws IOException
+  {
+    List<Column> columns = getColumns();
+    Map<String, DataSink> sinks = new HashMap<>();
+    try (ColumnarReader reader = new ColumnarReader(dataFile.getPath())) {
+      List<Column> gameColumns = reader.getColumns();
+      checkColumns(gameColumns, columns);
+      while (reader.nextGroup()) {
+        int[] ts = reader.getInts(0);
+        int[] dow = reader.getInts(1);
+        int[] hod = reader.getInts(2);
+        String[] brokers = reader.getStrings(3);
+        for (int row = 0; row < reader.getRowCount(); row++) {
+          DataSink sink = sinks.get(brokers[row]);
+          if (null == sink) {
+            sink = openSegment(segmentName(brokers[row]), columns);
+            sinks.put(brokers[row], sink);
+          }
+          sink.putString(gameId).putString(brokers[row])
+              .putInt(ts[row]).putInt(dow[row]).putInt(hod[row]);
+          for (int col = 4; col < gameColumns.size(); col++)
+            sink.putDouble(reader.getDoubles(col)[row]);
+          sink.endRow();
+        }
+      }
+    }
+    finally {
+      for (DataSink sink: sinks.values())
+        sink.close();
+    }
+    try (PrintWriter index =
+        new PrintWriter(new OutputStreamWriter(new FileOutputStream(new File(storeDir, indexName), true),
+                                               StandardCharsets.UTF_8))) {
+      for (String broker: sinks.keySet()) {
+        String name = segmentName(broker);
+        long length = new File(storeDir, name).length();
+        lengths.put(name, length);
+        index.print(gameId + "\t" + name + "\t" + length + "\n");
+      }
+    }
+    games.add(gameId);
+  }
+
+  private DataSink openSegment (String name, List<Column> columns)
+    throws IOException
+  {
+    File segment = new File(storeDir, name);
+    if (segment.isFile())
+      return ColumnarSink.append(segment.getPath(), columns);
+    return new ColumnarSink(segment.getPath(), columns);
+  }
+
+  static String segmentName (String broker)
+  {
+    return broker.replaceAll("[^A-Za-z0-9._-]", "_")
+        + ColumnarSink.extension;
+  }
+
+  // Store columns: game and broker, then the BrokerAccounting columns
+  private List<Column> getColumns ()
+  {
+    List<Column> columns = new ArrayList<>();
+    columns.add(new Column("game", Type.STRING));
+    columns.add(new Column("broker", Type.STRING));
+    columns.add(new Column("ts", Type.INT));
+    columns.add(new Column("dow", Type.INT));
+    columns.add(new Column("hod", Type.INT));
+    for (String name: BrokerAccounting.dataColumns)
+      columns.add(new Column(name, Type.DOUBLE));
+    return columns;
+  }
+
+  // Makes sure a game's file has the per-broker BrokerAccounting columns
+  private void checkColumns (List<Column> gameColumns, List<Column> columns)
+    throws IOException
+  {
+    if (gameColumns.size() != columns.size() - 1
+        || gameColumns.get(3).getType() != Type.STRING)
+      throw new IOException("Not per-broker BrokerAccounting data");
+    for (int i = 0; i < gameColumns.size(); i++) {
+      if (i == 3)
+        continue;
+      Column expected = columns.get(i < 3 ? i + 2 : i + 1);
+      Column actual = gameColumns.get(i);
+      if (!expected.getName().equals(actual.getName())
+          || expected.getType() != actual.getType())
+        throw new IOException("Unexpected column " + actual.getName());
+    }
+  }
+}
@@ -15,17 +15,25 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Formatter;
 import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
@@ -47,7 +55,6 @@ import org.powertac.common.msg.EconomicControlEvent;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BrokerRepo;
 import org.powertac.common.repo.TariffRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -72,20 +79,37 @@ import org.powertac.logtool.ifc.Analyzer;
  * amount of regulating capacity offered by the broker,
  * regUsed is the amount actually used, and baseCost is what the broker's
  * imbalance would have cost in the absence of exercised customer capacity.
+ *
+ * With --threads n, n greater than 1, the settlement of each timeslot is
+ * run on a pool of n worker threads while the logs are read, and the rows
+ * are written in timeslot order as they complete. At most 4n timeslots
+ * are waiting to be settled or written at any time. Everything a
+ * settlement needs, including the imbalance of each Broker, is looked up
+ * on the thread reading the logs before it is handed to a worker, so the
+ * workers do not touch the BrokerIndex or any other shared state. If the
+ * settlement of a timeslot fails, the run stops with an
+ * IllegalStateException rather than leave its row out, and any later
+ * timeslot or report() throws as well. The workers are daemon threads,
+ * so a run that stops early does not keep the JVM alive.
  * 
  * @author John Collins
  */
 public class BrokerBalancingActions
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(BrokerBalancingActions.class.getName());
 
   private BrokerRepo brokerRepo;
+  private BrokerIndex brokerIndex;
   private TariffRepo tariffRepo;
-  private CapacityControlSvc capacityControl;
-  private LocalSettlementContext settlementContext;
-  private StaticSettlementProcessor settlementProcessor;
+
+  // settlement workers, and rows waiting to be written in timeslot order
+  private int threads = 1;
+  private ExecutorService pool = null;
+  private ArrayDeque<Future<String>> pending = new ArrayDeque<>();
+  // the first settlement failure; once set, no more rows are written
+  private Throwable failure = null;
 
   // command-line options
   private Integer gameId = null;
@@ -107,10 +131,10 @@ implements Analyzer
   private HashMap<TariffSpecification, BalancingOrder> balancingOrdersUp;
   private HashMap<TariffSpecification, BalancingOrder> balancingOrdersDown;
 
-  // trace input file
+  // trace input file, and the index of where each timeslot starts
   private String traceFilename;
-  private BufferedReader trace;
-  private int traceLineNumber = 0;
+  private TraceReader trace;
+  private TraceIndex traceIndex;
 
   // data output file
   private PrintWriter data = null;
@@ -148,22 +172,32 @@ implements Analyzer
         parser.accepts("game").withRequiredArg().ofType(Integer.class);
     OptionSpec<String> competitionIdOption = 
         parser.accepts("competition").withRequiredArg().ofType(String.class);
+    OptionSpec<Integer> threadsOption =
+        parser.accepts("threads").withRequiredArg().ofType(Integer.class);
     OptionSet options = parser.parse(args);
     gameId = options.valueOf(gameIdOption);
     competitionId = options.valueOf(competitionIdOption);
+    if (options.has(threadsOption))
+      threads = options.valueOf(threadsOption);
     String[] fileArgs = options.nonOptionArguments().toArray(new String[0]);
-    if (fileArgs.length != 2) {
-      System.out.println("Usage: <analyzer> [--game g] [--competition c] state-log output-file");
+    if (fileArgs.length != 2 || threads < 1) {
+      System.out.println("Usage: <analyzer> [--game g] [--competition c] [--threads n] state-log output-file");
       return;
     }
 
     String stateFilename = fileArgs[0];
-    int ext = stateFilename.indexOf(".state");
-    if (-1 == ext) {
-      System.out.println("Usage: first file arg must be a .state log");
-      return;
+    if (GameArchive.isArchive(stateFilename)) {
+      // the trace log is in the same archive
+      traceFilename = stateFilename;
+    }
+    else {
+      int ext = stateFilename.indexOf(".state");
+      if (-1 == ext) {
+        System.out.println("Usage: first file arg must be a .state log or a game archive");
+        return;
+      }
+      traceFilename = stateFilename.replace(".state", ".trace");
     }
-    traceFilename = stateFilename.replace(".state", ".trace");
     dataFilename = fileArgs[1];
     super.cli(fileArgs[0], this);
   }
@@ -178,10 +212,13 @@ implements Analyzer
   {
     brokerRepo = (BrokerRepo) getBean("brokerRepo");
     tariffRepo = (TariffRepo) getBean("tariffRepo");
+    brokerIndex = getBrokerIndex();
 
-    capacityControl = new CapacityControlSvc();
-    settlementContext = new LocalSettlementContext();
-    settlementProcessor = new StaticSettlementProcessor(null, capacityControl);
+    // a run that failed may have left its pool behind
+    shutdownPool();
+    failure = null;
+    if (threads > 1)
+      pool = Executors.newFixedThreadPool(threads, new SettlementThreads());
 
     balancingOrdersUp =
         new HashMap<TariffSpecification, BalancingOrder>();
@@ -189,9 +226,10 @@ implements Analyzer
         new HashMap<TariffSpecification, BalancingOrder>();
 
     try {
-      trace = new BufferedReader (new FileReader(traceFilename));
+      trace = TraceReader.open(traceFilename);
+      traceIndex = TraceIndex.load(traceFilename);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       System.out.println("Cannot open trace file " + traceFilename);
     }
 
@@ -210,7 +248,24 @@ implements Analyzer
     System.out.println("Game " + Competition.currentCompetition().getName()
                        + ", " + timeslot + " timeslots");
     //data.print("Summary, ");
-    data.close();
+    try {
+      checkFailure();
+      while (!pending.isEmpty())
+        writeNext();
+    }
+    finally {
+      shutdownPool();
+      data.close();
+    }
+    if (null == trace)
+      return;
+    traceIndex.save();
+    try {
+      trace.close();
+    }
+    catch (IOException e) {
+      log.error("Error closing trace file " + traceFilename);
+    }
   }
 
   // Called once to print column headers
@@ -218,7 +273,7 @@ implements Analyzer
   {
     printHeader = true;
     data.print("ts;pPlus;pMinus;totalImbalance;rmBase;rmActual");
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
+    for (Broker broker : brokerIndex.getBrokers()) {
       data.format(";%s;netLoad;regOffered;regUsed;baseCost;p1;p2",
                   broker.getUsername());
     }
@@ -232,6 +287,7 @@ implements Analyzer
   // four calls.
   private void summarizeTimeslot ()
   {
+    checkFailure();
     if (timeslot == 874) {
       // breakpoint location
       log.info("timeslot " + timeslot);
@@ -257,64 +313,74 @@ implements Analyzer
       rmBase = -imbalance * price;
       balancingOrders = balancingOrdersDown;
     }
-    if (competitionId != null)
-      data.format("%s;", competitionId);
-    if (gameId != null)
-      data.format("%d;", gameId);
-    // ts pPlus pMinus ti rmBase rmActual
-    data.format("%d;%.4f;%.4f;%.4f;%.4f;%.4f",
-                             traceData.getTimeslot(),
-                             traceData.getPPlus(),
-                             traceData.getPMinus(),
-                             traceData.getTotalImbalance(),
-                             rmBase, traceData.getRmCost());
-    capacityControl.setTraceData(traceData);
-    settlementContext.setTraceData(traceData);
     List<ChargeInfo> brokerData = generateBrokerData(traceData);
-    settlementProcessor.settle(settlementContext, brokerData);
-    for (ChargeInfo bd: brokerData) {
-      // compute offered regulation and base cost for this broker
-      double offeredReg = 0.0;
-      for (TariffSpecification spec: balancingOrders.keySet()) {
-        if (spec.getBroker() == bd.getBroker()) {
-          BalancingOrder order = balancingOrders.get(spec);
-          RegulationAccumulator cap =
-              traceData.getRegulationCapacity(order.getId());
-          if (null == cap)
-            continue;
-          if (imbalance < 0.0) {
-            // up-regulation
-            offeredReg += cap.getUpRegulationCapacity();
-          }
-          else {
-            offeredReg += cap.getDownRegulationCapacity();
-          }
-        }
-      }
-      // compute per-broker rm-base cost
-      double brokerBase = -rmBase * bd.getNetLoadKWh() / imbalance;
-      data.format(";%s;%.4f;%.4f;%.4f;%.4f;%.4f;%.4f", bd.getBrokerName(),
-                  bd.getNetLoadKWh(),
-                  offeredReg,
-                  bd.getCurtailment(),
-                  brokerBase,
-                  bd.getBalanceChargeP1(),
-                  bd.getBalanceChargeP2());
-    }
-    data.format("%n");
+    traceData.resolveBrokers();
+    Settlement settlement =
+        new Settlement(traceData, brokerData,
+                       new HashMap<>(balancingOrders), rmBase);
+    if (null == pool) {
+      data.print(settlement.call());
+      return;
+    }
+    pending.add(pool.submit(settlement));
+    if (pending.size() > 4 * threads)
+      writeNext();
+  }
+
+  // Waits for the oldest pending timeslot to be settled, and writes its row
+  private void writeNext ()
+  {
+    Future<String> row = pending.poll();
+    try {
+      data.print(row.get());
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = e;
+      shutdownPool();
+      throw new IllegalStateException("Interrupted waiting for settlement", e);
+    }
+    catch (ExecutionException e) {
+      log.error("Settlement failed: " + e.getCause().toString());
+      failure = e.getCause();
+      shutdownPool();
+      throw new IllegalStateException("Settlement failed", e.getCause());
+    }
+  }
+
+  // Throws if a settlement has failed. The rows after it were dropped,
+  // so carrying on would leave a gap in the output.
+  private void checkFailure ()
+  {
+    if (null != failure)
+      throw new IllegalStateException("An earlier settlement failed",
+                                       failure);
+  }
+
+  // Stops the workers, dropping any timeslots not yet written
+  private void shutdownPool ()
+  {
+    for (Future<String> row: pending)
+      row.cancel(true);
+    pending.clear();
+    if (null == pool)
+      return;
+    pool.shutdownNow();
+    pool = null;
   }
 
   private List<ChargeInfo> generateBrokerData (TraceData traceData)
   {
-    HashMap<Broker, ChargeInfo> chargeInfoMap = new HashMap<>();
+    ChargeInfo[] chargeInfo = new ChargeInfo[brokerIndex.size()];
 
     // code stolen from BalancingMarketService.balanceTimeslot()
     // create the ChargeInfo instances for each broker
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      double imbalance = traceData.getBrokerBalance(broker);
+    for (int i = 0; i < chargeInfo.length; i++) {
+      Broker broker = brokerIndex.get(i);
+      double imbalance = traceData.getBrokerBalance(i);
       ChargeInfo info = new ChargeInfo(broker, imbalance);
       //report.addImbalance(imbalance);
-      chargeInfoMap.put(broker, info);
+      chargeInfo[i] = info;
     }
     
     // retrieve and allocate the balancing orders
@@ -322,46 +388,46 @@ implements Analyzer
     boc.addAll(balancingOrdersUp.values());
     boc.addAll(balancingOrdersDown.values());
     for (BalancingOrder order : boc) {
-      ChargeInfo info = chargeInfoMap.get(order.getBroker());
+      ChargeInfo info = chargeInfo[brokerIndex.indexOf(order.getBroker())];
       info.addBalancingOrder(order);
     }
 
     // gather up the list of ChargeInfo instances and settle
     log.info("balancing prices: pPlus=" + traceData.getPPlus()
              + ", pMinus=" + traceData.getPMinus());
-    List<ChargeInfo> brokerData = new ArrayList<>();
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      brokerData.add(chargeInfoMap.get(broker));
-    }
-    return brokerData;
+    return new ArrayList<>(Arrays.asList(chargeInfo));
   }
 
-  // Regular expressions for trace file
+  // Patterns for trace file messages. Each starts with a fixed string
+  // that is checked before the regular expression is run.
   // first, some patterns to capture numbers and names:
   private String floatCapture = "(-?\\d+\\.\\d*)";
   private String intCapture = "(\\d+)";
   private String expCapture = "(-?\\d+\\.\\d*(?:E-?\\d+)?)";
   private String bnCapture = "(\\w(?:\\w| )*\\w+)"; // broker names
-  private Pattern configQual =
-      Pattern.compile(String.format("Configured BM: balancing cost = %s, \\(pPlus',pMinus'\\) = \\(%s,%s\\)",
-                                    floatCapture, expCapture, expCapture));
-  private Pattern tsQual =
-      Pattern.compile(String.format("Deactivated timeslot %s", intCapture));
-  private Pattern mbQual =
-      Pattern.compile(String.format("BalancingMarketService: market balance for %s: %s",
-                                    bnCapture, floatCapture));
-  private Pattern tiQual =
-      Pattern.compile(String.format("SettlementProcessor: totalImbalance=%s",
-                                    floatCapture));
-  private Pattern bpQual =
-      Pattern.compile(String.format("balancing prices: pPlus=%s, pMinus=%s",
-                                    floatCapture, floatCapture));
-  private Pattern boQual =
-      Pattern.compile(String.format("BalancingOrder %s capacity = \\(%s,%s\\)",
-                                    intCapture, floatCapture, floatCapture));
-  private Pattern duQual =
-      Pattern.compile(String.format("SettlementProcessor: DU budget: rm cost = %s, broker cost = %s",
-                                    floatCapture, floatCapture));
+  private TracePattern configQual =
+      new TracePattern("Configured BM: balancing cost = ",
+                       String.format("%s, \\(pPlus',pMinus'\\) = \\(%s,%s\\)",
+                                     floatCapture, expCapture, expCapture));
+  private TracePattern tsQual =
+      new TracePattern("Deactivated timeslot ", intCapture);
+  private TracePattern mbQual =
+      new TracePattern("BalancingMarketService: market balance for ",
+                       String.format("%s: %s", bnCapture, floatCapture));
+  private TracePattern tiQual =
+      new TracePattern("SettlementProcessor: totalImbalance=", floatCapture);
+  private TracePattern bpQual =
+      new TracePattern("balancing prices: pPlus=",
+                       String.format("%s, pMinus=%s",
+                                     floatCapture, floatCapture));
+  private TracePattern boQual =
+      new TracePattern("BalancingOrder ",
+                       String.format("%s capacity = \\(%s,%s\\)",
+                                     intCapture, floatCapture, floatCapture));
+  private TracePattern duQual =
+      new TracePattern("SettlementProcessor: DU budget: rm cost = ",
+                       String.format("%s, broker cost = %s",
+                                     floatCapture, floatCapture));
   private enum Scan {INIT, TIMESLOT, PRICE, BALANCE, CAPACITY, NEXT, END}
   private Scan scanState = Scan.INIT;
 
@@ -374,6 +440,9 @@ implements Analyzer
   // total imbalance for the timeslot using the tiQual pattern.
   // In the CAPACITY state, we use the boQual pattern to pick off the
   // 
+  // Where the trace index knows the location of the configuration line or
+  // of the start of the timeslot, we skip directly to it. Otherwise we
+  // scan, and record the locations we find in the index.
   private TraceData readTraceData(int timeslot)
   {
     if (scanState == Scan.END) {
@@ -384,29 +453,27 @@ implements Analyzer
     if (scanState == Scan.NEXT) {
       scanState = Scan.TIMESLOT;
     }
+    seekTraceData(timeslot);
     TraceData collector = null;
+    long lineOffset = 0l;
     while (!(scanState == Scan.NEXT || scanState == Scan.END)) {
       try {
+        lineOffset = trace.position();
         String line = trace.readLine();
-        traceLineNumber += 1;
         if (null == line) {
           log.info("Reached EOF in ts " + timeslot);
           scanState = Scan.END;
         }
         else if (scanState == Scan.INIT) {
           // capture balancing market initialization
-          Matcher cf = configQual.matcher(line);
-          if (cf.find()) {
-            balancingCost = Double.parseDouble(cf.group(1));
-            pPlusPrime = Double.parseDouble(cf.group(2));
-            pMinusPrime = Double.parseDouble(cf.group(3));
-            scanState = Scan.TIMESLOT;
+          if (captureConfig(line)) {
+            traceIndex.setConfigOffset(lineOffset);
           }
         }
         if (scanState == Scan.TIMESLOT) {
-          Matcher m = tsQual.matcher(line);
-          if (m.find()) {
-            int ts = Integer.parseInt(m.group(1));
+          if (tsQual.match(line)) {
+            int ts = tsQual.getInt(1);
+            traceIndex.addOffset(ts, lineOffset);
             if (ts == timeslot) {
               // found the target timeslot
               collector = new TraceData(ts);
@@ -417,32 +484,26 @@ implements Analyzer
         else if (scanState == Scan.PRICE) {
           // pick up individual broker imbalance numbers
           // once we see the pPlus/pMinus line, capture and switch to BALANCE
-          Matcher mb = mbQual.matcher(line);
-          if (mb.find()) {
+          if (mbQual.match(line)) {
             //pull out broker and balance info
-            String brokerName = mb.group(1);
-            double balance = Double.parseDouble(mb.group(2));
-            log.info("ts " + timeslot + ": broker " + brokerName
-                     + " imbalance=" + balance);
+            String brokerName = mbQual.getString(1);
+            double balance = mbQual.getDouble(2);
+            log.info("ts {}: broker {} imbalance={}",
+                     timeslot, brokerName, balance);
             collector.addBroker(brokerName, balance);
           }
-          else {
-            mb = bpQual.matcher(line);
-            if (mb.find()) {
-              double pPlus = Double.parseDouble(mb.group(1));
-              double pMinus = Double.parseDouble(mb.group(2));
-              log.info("ts " + timeslot + " spot prices ("
-                       + pPlus + ", " + pMinus + ")");
-              collector.setPrices(pPlus, pMinus);
-              scanState = Scan.BALANCE;
-            }
+          else if (bpQual.match(line)) {
+            double pPlus = bpQual.getDouble(1);
+            double pMinus = bpQual.getDouble(2);
+            log.info("ts {} spot prices ({}, {})", timeslot, pPlus, pMinus);
+            collector.setPrices(pPlus, pMinus);
+            scanState = Scan.BALANCE;
           }
         }
         else if (scanState == Scan.BALANCE) {
-          Matcher mt = tiQual.matcher(line);
-          if (mt.find()) {
+          if (tiQual.match(line)) {
             // here we find the total imbalance number
-            double imbalance = Double.parseDouble(mt.group(1));
+            double imbalance = tiQual.getDouble(1);
             collector.setTotalImbalance(imbalance);
             // end of timeslot
             scanState = Scan.CAPACITY;
@@ -451,35 +512,64 @@ implements Analyzer
         else if (scanState == Scan.CAPACITY) {
           // pick up BalancingOrder capacity values, terminated by the
           // static settlement summary
-          Matcher bc = boQual.matcher(line);
-          if (bc.find()) {
-            long id = Long.parseLong(bc.group(1));
-            double up = Double.parseDouble(bc.group(2));
-            double down = Double.parseDouble(bc.group(3));
-            log.info("ts " + timeslot + " add BO capacity ("
-                     + id + ", " + up + ", " + down + ")");
+          if (boQual.match(line)) {
+            long id = boQual.getLong(1);
+            double up = boQual.getDouble(2);
+            double down = boQual.getDouble(3);
+            log.info("ts {} add BO capacity ({}, {}, {})",
+                     timeslot, id, up, down);
             collector.addRegulationCapacity(id, up, down);
           }
-          else {
-            bc = duQual.matcher(line);
-            if (bc.find()) {
-              double value = Double.parseDouble(bc.group(1));
-              collector.setRmCost(value);
-              value = Double.parseDouble(bc.group(2));
-              collector.setBrokerCost(value);
-              scanState = Scan.NEXT;
-            }
+          else if (duQual.match(line)) {
+            collector.setRmCost(duQual.getDouble(1));
+            collector.setBrokerCost(duQual.getDouble(2));
+            scanState = Scan.NEXT;
           }
         }
       }
       catch (IOException e) {
-        log.error("tracefile error line " + traceLineNumber);
+        log.error("tracefile error at offset " + lineOffset);
         e.printStackTrace();
       }
     }
     return collector;
   }
 
+  // Uses the trace index to skip to the configuration line if we have
+  // not seen it yet, and to the start of the given timeslot.
+  private void seekTraceData (int timeslot)
+  {
+    try {
+      long offset = traceIndex.getConfigOffset();
+      if (scanState == Scan.INIT && offset >= trace.position()) {
+        trace.seek(offset);
+        String line = trace.readLine();
+        if (null != line)
+          captureConfig(line);
+      }
+      offset = traceIndex.getOffset(timeslot);
+      if (scanState == Scan.TIMESLOT && offset > trace.position()) {
+        trace.seek(offset);
+      }
+    }
+    catch (IOException e) {
+      log.error("Cannot seek to ts " + timeslot + " in trace file: "
+                + e.toString());
+    }
+  }
+
+  // Captures balancing market parameters from the configuration line
+  private boolean captureConfig (String line)
+  {
+    if (!configQual.match(line))
+      return false;
+    balancingCost = configQual.getDouble(1);
+    pPlusPrime = configQual.getDouble(2);
+    pMinusPrime = configQual.getDouble(3);
+    scanState = Scan.TIMESLOT;
+    return true;
+  }
+
   // -----------------------------------
   // catch TimeslotUpdate events
   public void handleMessage (TimeslotUpdate msg)
@@ -513,11 +603,95 @@ implements Analyzer
     }
   }
 
+  // -----------------------------------
+  // Settles one timeslot and formats its row. Each one has its own
+  // settlement processor, so several can run at once.
+  class Settlement implements Callable<String>
+  {
+    TraceData traceData;
+    List<ChargeInfo> brokerData;
+    HashMap<TariffSpecification, BalancingOrder> balancingOrders;
+    double rmBase;
+    LocalSettlementContext settlementContext;
+
+    // Called on the reader thread; takes its own copy of the balancing
+    // market parameters
+    Settlement (TraceData traceData, List<ChargeInfo> brokerData,
+                HashMap<TariffSpecification, BalancingOrder> balancingOrders,
+                double rmBase)
+    {
+      super();
+      this.traceData = traceData;
+      this.brokerData = brokerData;
+      this.balancingOrders = balancingOrders;
+      this.rmBase = rmBase;
+      settlementContext =
+          new LocalSettlementContext(balancingCost, pPlusPrime, pMinusPrime,
+                                     defaultSpotPrice);
+    }
+
+    @Override
+    public String call ()
+    {
+      CapacityControlSvc capacityControl = new CapacityControlSvc();
+      StaticSettlementProcessor settlementProcessor =
+          new StaticSettlementProcessor(null, capacityControl);
+      double imbalance = traceData.getTotalImbalance();
+      Formatter row = new Formatter(new StringBuilder());
+      if (competitionId != null)
+        row.format("%s;", competitionId);
+      if (gameId != null)
+        row.format("%d;", gameId);
+      // ts pPlus pMinus ti rmBase rmActual
+      row.format("%d;%.4f;%.4f;%.4f;%.4f;%.4f",
+                 traceData.getTimeslot(),
+                 traceData.getPPlus(),
+                 traceData.getPMinus(),
+                 traceData.getTotalImbalance(),
+                 rmBase, traceData.getRmCost());
+      capacityControl.setTraceData(traceData);
+      settlementContext.setTraceData(traceData);
+      settlementProcessor.settle(settlementContext, brokerData);
+      for (ChargeInfo bd: brokerData) {
+        // compute offered regulation and base cost for this broker
+        double offeredReg = 0.0;
+        for (TariffSpecification spec: balancingOrders.keySet()) {
+          if (spec.getBroker() == bd.getBroker()) {
+            BalancingOrder order = balancingOrders.get(spec);
+            RegulationAccumulator cap =
+                traceData.getRegulationCapacity(order.getId());
+            if (null == cap)
+              continue;
+            if (imbalance < 0.0) {
+              // up-regulation
+              offeredReg += cap.getUpRegulationCapacity();
+            }
+            else {
+              offeredReg += cap.getDownRegulationCapacity();
+            }
+          }
+        }
+        // compute per-broker rm-base cost
+        double brokerBase = -rmBase * bd.getNetLoadKWh() / imbalance;
+        row.format(";%s;%.4f;%.4f;%.4f;%.4f;%.4f;%.4f", bd.getBrokerName(),
+                   bd.getNetLoadKWh(),
+                   offeredReg,
+                   bd.getCurtailment(),
+                   brokerBase,
+                   bd.getBalanceChargeP1(),
+                   bd.getBalanceChargeP2());
+      }
+      row.format("%n");
+      return row.toString();
+    }
+  }
+
   class TraceData
   {
     int timeslot = 0;
-    HashMap<Broker, Double> brokerBalance =
-        new HashMap<Broker, Double>();
+    // broker imbalance by BrokerIndex index, and by Broker once resolved
+    double[] brokerBalance = new double[brokerIndex.size()];
+    Map<Broker, Double> balanceByBroker = null;
     HashMap<Long, RegulationAccumulator> boCapacity =
         new HashMap<Long, RegulationAccumulator>(); 
     double pPlus = 0.0;
@@ -539,12 +713,39 @@ implements Analyzer
 
     void addBroker (String brokerName, double imbalance)
     {
-      brokerBalance.put(brokerRepo.findByUsername(brokerName), imbalance);
+      int index = brokerIndex.indexOf(brokerRepo.findByUsername(brokerName));
+      if (index < 0)
+        return;
+      if (index >= brokerBalance.length)
+        brokerBalance = Arrays.copyOf(brokerBalance, brokerIndex.size());
+      brokerBalance[index] = imbalance;
+    }
+
+    // Maps the broker imbalances to their brokers. Called on the reader
+    // thread before settlement, which may run on a worker thread where
+    // the BrokerIndex must not be used.
+    void resolveBrokers ()
+    {
+      HashMap<Broker, Double> result = new HashMap<>();
+      int count = Math.min(brokerBalance.length, brokerIndex.size());
+      for (int i = 0; i < count; i++)
+        result.put(brokerIndex.get(i), brokerBalance[i]);
+      balanceByBroker = Collections.unmodifiableMap(result);
     }
 
     double getBrokerBalance (Broker broker)
     {
-      return brokerBalance.get(broker);
+      if (null == balanceByBroker)
+        throw new IllegalStateException("Broker balances not resolved");
+      Double balance = balanceByBroker.get(broker);
+      return (null == balance) ? 0.0 : balance;
+    }
+
+    double getBrokerBalance (int index)
+    {
+      if (index < 0 || index >= brokerBalance.length)
+        return 0.0;
+      return brokerBalance[index];
     }
 
     void addRegulationCapacity (Long balancingOrder, double up, double down)
@@ -610,10 +811,10 @@ implements Analyzer
       result.append("ts ").append(timeslot);
       result.append(String.format(" pPlus=%.4f pMinus=%.4f imbalance=%.4f, rmCost=%.4f, brokerCost=%.4f",
                                   pPlus, pMinus, totalImbalance, rmCost, brokerCost));
-      for (Broker broker: brokerBalance.keySet()) {
+      for (int i = 0; i < brokerBalance.length; i++) {
         result.append(String.format(" %s=%.4f",
-                                    broker.getUsername(),
-                                    brokerBalance.get(broker)));
+                                    brokerIndex.get(i).getUsername(),
+                                    brokerBalance[i]));
       }
       if (!boCapacity.isEmpty()) {
         for (Long id: boCapacity.keySet()) {
@@ -633,6 +834,20 @@ implements Analyzer
   class LocalSettlementContext implements SettlementContext
   {
     TraceData traceData;
+    double balancingCost;
+    double pPlusPrime;
+    double pMinusPrime;
+    double defaultSpotPrice;
+
+    LocalSettlementContext (double balancingCost, double pPlusPrime,
+                            double pMinusPrime, double defaultSpotPrice)
+    {
+      super();
+      this.balancingCost = balancingCost;
+      this.pPlusPrime = pPlusPrime;
+      this.pMinusPrime = pMinusPrime;
+      this.defaultSpotPrice = defaultSpotPrice;
+    }
 
     void setTraceData (TraceData data)
     {
@@ -721,4 +936,18 @@ implements Analyzer
     }
     
   }
+
+  // Names the settlement workers, and makes them daemon threads
+  class SettlementThreads implements ThreadFactory
+  {
+    private AtomicInteger count = new AtomicInteger(0);
+
+    @Override
+    public Thread newThread (Runnable task)
+    {
+      Thread thread = new Thread(task, "settlement-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
 }
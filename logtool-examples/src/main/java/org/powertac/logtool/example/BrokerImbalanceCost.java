@@ -18,10 +18,7 @@ package org.powertac.logtool.example;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
-import java.util.Map;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -35,7 +32,6 @@ import org.powertac.common.OrderbookOrder;
 import org.powertac.common.TariffTransaction;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BrokerRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.common.DomainObjectReader;
 import org.powertac.logtool.common.NewObjectListener;
 import org.powertac.logtool.ifc.Analyzer;
@@ -51,6 +47,13 @@ import org.powertac.logtool.ifc.Analyzer;
  * gameid, timeslot, broker, netDemand, marketQty, marketCost, imbalance, balancingCost, MktImbalanceCost, estCost
  * 
  * The estCost is the cost to clear a negative imbalance, given the n-1 orderbook.
+ *
+ * With the --by-lead option, each row also has columns estCost0 ...
+ * estCostN, where N is the number of open timeslots plus the deactivation
+ * lead. estCostL is the money the broker would have received (negative if
+ * paid) for clearing its whole imbalance by buying or selling in the
+ * orderbook for its timeslot that was published L timeslots ahead, or
+ * empty if there is no such orderbook.
  * 
  * NOTE: Numeric data is formatted using the US locale in order to avoid confusion over
  * the meaning of the comma character when used in other locales.
@@ -58,7 +61,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class BrokerImbalanceCost
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(BrokerImbalanceCost.class.getName());
@@ -66,15 +69,27 @@ implements Analyzer
   private DomainObjectReader dor;
 
   private BrokerRepo brokerRepo;
+  private BrokerIndex brokerIndex;
 
   // state and timeslot info
   private int timeslot = -1;
   private int tsOffset = 0;
-  private Map<Broker, RingArray> rings;
+  private TimeslotRing ring;
   private Orderbook orderbook = null;
   private Orderbook lastOrderbook = null;
   private Orderbook pendingLastOrderbook = null;
   private double totalImbalance = 0.0;
+  private boolean byLead = false;
+  private OrderbookEngine engine = null;
+
+  // per-broker values in ring rows, at fieldCount * broker index + field
+  private static final int netDemandField = 0;
+  private static final int imbalanceField = 1;
+  private static final int balancingCostField = 2;
+  private static final int marketQtyField = 3;
+  private static final int marketCostField = 4;
+  private static final int fieldCount = 5;
+  private int brokerCount = 0;
 
   // data output file
   private PrintWriter data = null;
@@ -105,12 +120,17 @@ implements Analyzer
    */
   private void cli (String[] args)
   {
-    if (args.length != 2) {
-      System.out.println("Usage: <analyzer> input-file output-file");
+    int offset = 0;
+    if (args.length == 3 && "--by-lead".equals(args[0])) {
+      byLead = true;
+      offset = 1;
+    }
+    else if (args.length != 2) {
+      System.out.println("Usage: <analyzer> [--by-lead] input-file output-file");
       return;
     }
-    dataFilename = args[1];
-    super.cli(args[0], this);
+    dataFilename = args[1 + offset];
+    super.cli(args[offset], this);
   }
 
   /**
@@ -123,6 +143,7 @@ implements Analyzer
   {
     dor = (DomainObjectReader) getBean("domainObjectReader");
     brokerRepo = (BrokerRepo) getBean("brokerRepo");
+    brokerIndex = getBrokerIndex();
     dor.registerNewObjectListener(new TimeslotUpdateHandler(),
                                   TimeslotUpdate.class);
     dor.registerNewObjectListener(new BalancingTxHandler(),
@@ -222,14 +243,16 @@ implements Analyzer
       }
     }
     // iterate through the balancing and tariff transactions
-    for (Broker broker: rings.keySet()) {
-      BrokerData bt = rings.get(broker).get();
+    for (int i = 0; i < brokerCount; i++) {
+      Broker broker = brokerIndex.get(i);
+      int base = i * fieldCount;
+      double imbalance = ring.get(timeslot, base + imbalanceField);
       double mktImbalance = 0.0;
-      mktImbalance = finalClearing * bt.imbalance;
+      mktImbalance = finalClearing * imbalance;
       // estimate cost of clearing imbalance from lastOrderbook
       double estPrice = 0.0;
       if (null != lastOrderbook) {
-        double imb = bt.imbalance;
+        double imb = imbalance;
         Iterator<OrderbookOrder> asks = orderbook.getAsks().iterator();
         while (imb < 0.0) {
           if (!asks.hasNext()) {
@@ -246,39 +269,61 @@ implements Analyzer
         }
       }
 
-      data.printf("%s,%d,%s,%s,%s,%s,%s,%s,%s,%s\n",
+      data.printf("%s,%d,%s,%s,%s,%s,%s,%s,%s,%s",
                   competition.getName(), timeslot,
                   broker.getUsername(),
-                  df.format(bt.netDemand),
-                  df.format(bt.marketQty),
-                  df.format(bt.marketCost),
-                  df.format(bt.imbalance),
-                  df.format(bt.balancingCost),
+                  df.format(ring.get(timeslot, base + netDemandField)),
+                  df.format(ring.get(timeslot, base + marketQtyField)),
+                  df.format(ring.get(timeslot, base + marketCostField)),
+                  df.format(imbalance),
+                  df.format(ring.get(timeslot, base + balancingCostField)),
                   df.format(mktImbalance),
-                  df.format(estPrice * bt.imbalance));
+                  df.format(estPrice * imbalance));
+      if (null != engine) {
+        for (int lead = 0; lead <= engine.getMaxLead(); lead++) {
+          double cost = engine.getCost(timeslot, lead, -imbalance / 1000.0);
+          data.print(',');
+          if (!Double.isNaN(cost))
+            data.print(df.format(-cost));
+        }
+      }
+      data.println();
     }
     lastOrderbook = pendingLastOrderbook; // push the queue
   }
 
   private void initData (int tsIndex)
   {
-    data.println("game, timeslot, broker, netDemand, mktQty, mktCost, imbalance, imbalanceCost, mktImbCost, estCost");
-    rings = new HashMap<>();
-    for (Broker broker: brokerRepo.findRetailBrokers()) {
-      RingArray ring =
-          new RingArray(competition.getTimeslotsOpen()
-                        + competition.getDeactivateTimeslotsAhead());
-      rings.put(broker, ring);
+    data.print("game, timeslot, broker, netDemand, mktQty, mktCost, imbalance, imbalanceCost, mktImbCost, estCost");
+    int window = competition.getTimeslotsOpen()
+        + competition.getDeactivateTimeslotsAhead() + 1;
+    if (byLead) {
+      engine = new OrderbookEngine(window + 1, window - 1);
+      for (int lead = 0; lead <= engine.getMaxLead(); lead++)
+        data.print(", estCost" + lead);
     }
+    data.println();
+    brokerCount = brokerIndex.size();
+    ring = new TimeslotRing(window, fieldCount * brokerCount, 0.0);
     System.out.println("first ts sn = " + tsIndex);
   }
 
+  // Returns the offset of a broker's fields in a ring row, or -1 if
+  // it is not a retail broker known at the start of the game
+  private int getBase (Broker broker)
+  {
+    int index = brokerIndex.indexOf(broker);
+    if (index < 0 || index >= brokerCount)
+      return -1;
+    return index * fieldCount;
+  }
+
   // Clear out the data for the timeslot just past
   private void newTimeslot ()
   {
-    for (Broker broker: rings.keySet()) {
-      rings.get(broker).clearCurrent();
-    }
+    ring.release(timeslot + 1);
+    if (null != engine)
+      engine.release(timeslot + 1);
     orderbook = null;
     totalImbalance = 0.0;
   }
@@ -318,10 +363,12 @@ implements Analyzer
     public void handleNewObject (Object thing)
     {
       BalancingTransaction tx = (BalancingTransaction)thing;
-      BrokerData bd = rings.get(tx.getBroker()).get();
-      bd.imbalance = tx.getKWh();
+      int base = getBase(tx.getBroker());
+      if (base < 0)
+        return;
+      ring.set(timeslot, base + imbalanceField, tx.getKWh());
       totalImbalance += tx.getKWh();
-      bd.balancingCost = tx.getCharge();
+      ring.set(timeslot, base + balancingCostField, tx.getCharge());
     } 
   }
 
@@ -335,7 +382,9 @@ implements Analyzer
       TariffTransaction tx = (TariffTransaction)thing;
       if (tx.getTxType() == TariffTransaction.Type.CONSUME
           || tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-        rings.get(tx.getBroker()).get().addDemand(tx.getKWh());
+        int base = getBase(tx.getBroker());
+        if (base >= 0)
+          ring.add(timeslot, base + netDemandField, tx.getKWh());
       }
     } 
   }
@@ -349,11 +398,13 @@ implements Analyzer
     public void handleNewObject (Object thing)
     {
       MarketTransaction tx = (MarketTransaction)thing;
-      RingArray ring = rings.get(tx.getBroker());
-      if (null != ring) {
+      int base = getBase(tx.getBroker());
+      if (base >= 0) {
         // might not be a retail broker
-        ring.addMarketTx(tx.getTimeslotIndex(),
-                         tx.getMWh(), tx.getPrice());
+        ring.add(tx.getTimeslotIndex(), base + marketQtyField,
+                 tx.getMWh() * 1000.0);
+        ring.add(tx.getTimeslotIndex(), base + marketCostField,
+                 tx.getPrice() * tx.getMWh());
       }
     }
   }
@@ -367,6 +418,8 @@ implements Analyzer
     public void handleNewObject (Object thing)
     {
       Orderbook book = (Orderbook) thing;
+      if (null != engine && -1 != timeslot)
+        engine.add(book, book.getTimeslotIndex() - timeslot);
       if (book.getTimeslotIndex() == timeslot) {
         orderbook = book;
       }
@@ -375,87 +428,4 @@ implements Analyzer
       }
     }
   }
-
-  // data holder
-  class BrokerData
-  {
-    int timeslot = -1;
-    double netDemand;
-    double imbalance;
-    double balancingCost;
-    double marketQty;
-    double marketCost;
-
-    BrokerData ()
-    {
-      super();
-    }
-
-    void clear ()
-    {
-      timeslot = -1;
-      netDemand = 0.0;
-      imbalance = 0.0;
-      balancingCost = 0.0;
-      marketQty = 0.0;
-      marketCost = 0.0;
-    }
-
-    // Updates net demand
-    void addDemand (double kWh)
-    {
-      netDemand += kWh;
-    }
-
-    // Updates market data
-    void addMarketTx (double mWh, double price)
-    {
-      marketQty += mWh * 1000.0;
-      marketCost += price * mWh;
-    }
-  }
-
-  // rings array
-  class RingArray
-  {
-    private ArrayList<BrokerData> data;
-    private int size = 0;
-    //private int index = 0;
-
-    // Creates and populates a ring
-    RingArray (int size)
-    {
-      super();
-      this.size = size;
-      data = new ArrayList<>(size);
-      for (int i = 0; i < size; i++) {
-        data.add(i, new BrokerData());
-      }
-    }
-
-    // Returns the current data holder
-    BrokerData get ()
-    {
-      return data.get((timeslot - tsOffset) % size);
-    }
-
-    // Returns the data holder for a future timeslot
-    BrokerData get (int timeslot)
-    {
-      return data.get((timeslot - tsOffset) % size);
-    }
-
-    // Clears out the current data holder after processing, making it
-    // the new end element of the array
-    void clearCurrent ()
-    {
-      get().clear();
-    }
-
-    // Updates market data for a future timeslot
-    void addMarketTx (int timeslot, double mWh, double price)
-    {
-      get(timeslot).addMarketTx(mWh, price);
-    }
-  }
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.powertac.common.Broker;
+import org.powertac.common.repo.BrokerRepo;
+import org.powertac.logtool.common.DomainObjectReader;
+import org.powertac.logtool.common.NewObjectListener;
+
+/**
+ * Gives the retail brokers of a game dense int indices 0, 1, 2, ... so
+ * per-broker state can be kept in arrays rather than maps keyed by Broker,
+ * and so analyzers do not have to call BrokerRepo.findRetailBrokers() every
+ * timeslot. The list is worked out from the repo the first time it is
+ * needed, and again only after a new Broker has been read from the log.
+ * Brokers keep their indices when the list is worked out again; retail
+ * brokers that were not there before are added at the end.
+ *
+ * Analyzers get one with AnalyzerContext.getBrokerIndex() in setup(),
+ * rather than keeping one from an earlier run, since the repo and the
+ * DomainObjectReader are reused for the next game.
+ */
+public class BrokerIndex
+implements NewObjectListener
+{
+  private BrokerRepo brokerRepo;
+
+  private List<Broker> brokers = new ArrayList<>();
+  private List<Broker> view = Collections.unmodifiableList(brokers);
+
+  // broker id to position in brokers
+  private LongIndex ids = new LongIndex(16);
+  private boolean stale = true;
+
+  public BrokerIndex (BrokerRepo brokerRepo, DomainObjectReader dor)
+  {
+    super();
+    this.brokerRepo = brokerRepo;
+    dor.registerNewObjectListener(this, Broker.class);
+  }
+
+  /**
+   * Number of retail brokers, which is also one more than the highest
+   * index.
+   */
+  public int size ()
+  {
+    update();
+    return brokers.size();
+  }
+
+  /**
+   * Returns the retail brokers in index order. The list must not be
+   * modified, and grows in place if more brokers arrive.
+   */
+  public List<Broker> getBrokers ()
+  {
+    update();
+    return view;
+  }
+
+  /**
+   * Returns the broker at the given index.
+   */
+  public Broker get (int index)
+  {
+    update();
+    return brokers.get(index);
+  }
+
+  /**
+   * Returns the index of the given broker, or -1 if it is not a retail
+   * broker.
+   */
+  public int indexOf (Broker broker)
+  {
+    if (null == broker)
+      return -1;
+    update();
+    return ids.get(broker.getId());
+  }
+
+  @Override
+  public void handleNewObject (Object thing)
+  {
+    stale = true;
+  }
+
+  // Adds any retail brokers that are not yet indexed
+  private void update ()
+  {
+    if (!stale)
+      return;
+    stale = false;
+    for (Broker broker: brokerRepo.findRetailBrokers()) {
+      int known = ids.size();
+      if (ids.add(broker.getId()) == known)
+        brokers.add(broker);
+    }
+  }
+}
@@ -15,13 +15,8 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.TreeMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -36,7 +31,6 @@ import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BrokerRepo;
 import org.powertac.common.repo.TimeslotRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -52,7 +46,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class BrokerMktPrices
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(BrokerMktPrices.class.getName());
@@ -61,14 +55,14 @@ implements Analyzer
   private BrokerRepo brokerRepo;
   private TimeslotRepo timeslotRepo;
 
-  // Data
-  private HashMap<Broker, TreeMap<Integer, ArrayList<MarketTransaction>>> data;
+  // Data: total mwh and money for each broker, by target timeslot
+  private TimeslotRing data;
   private ArrayList<Broker> brokerList;
 
   private boolean started = false;
   private boolean firstTx = false;
   private int timeslot = 0;
-  private PrintWriter output = null;
+  private RowWriter output = null;
   private String dataFilename = "broker-market-price.data";
   private double epsilon = 1.0e-4;
   
@@ -103,11 +97,10 @@ implements Analyzer
     brokerRepo = (BrokerRepo) getBean("brokerRepo");
     timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
     brokerList = new ArrayList<>();
-    data = new HashMap<>();
     try {
-      output = new PrintWriter(new File(dataFilename));
+      output = new RowWriter(dataFilename, df);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       log.error("Cannot open file " + dataFilename);
     }
   }
@@ -117,9 +110,10 @@ implements Analyzer
     output.print("ts, dow, hod");
     for (Broker broker: brokerRepo.findRetailBrokers()) {
       brokerList.add(broker);
-      output.printf(", %s", broker.getUsername());
+      output.print(", ").print(broker.getUsername());
     }
     output.println();
+    data = new TimeslotRing(32, 2 * brokerList.size(), 0.0);
   }
 
   /* (non-Javadoc)
@@ -135,35 +129,25 @@ implements Analyzer
   {
     // print ts,dow,hod,
     DateTime dt = timeslotRepo.getDateTimeForIndex(timeslot);
-    output.format("%d, %d, %d", timeslot,
-                  dt.get(DateTimeFieldType.dayOfWeek()),
-                  dt.get(DateTimeFieldType.hourOfDay()));
-    for (Broker broker: brokerList) {
-      double mwh = 0.0;
-      double money = 0.0;
+    output.print(timeslot)
+        .print(", ").print(dt.get(DateTimeFieldType.dayOfWeek()))
+        .print(", ").print(dt.get(DateTimeFieldType.hourOfDay()));
+    for (int i = 0; i < brokerList.size(); i++) {
+      double mwh = data.get(timeslot, 2 * i);
+      double money = data.get(timeslot, 2 * i + 1);
       double price = 0.0;
-      TreeMap<Integer, ArrayList<MarketTransaction>> brokerData =
-          data.get(broker);
-      if (null != brokerData) {
-        List<MarketTransaction> txList = brokerData.get(timeslot);
-        if (null != txList) {
-          for (MarketTransaction tx: txList) {
-            double m = tx.getMWh();
-            double p = tx.getPrice();
-            mwh += m;
-            money += Math.abs(m) * p;
-          }
-        }
-      }
       if (Math.abs(mwh) > epsilon) {
         price = money / Math.abs(mwh);
       }
       else {
         mwh = 0.0;
       }
-      output.format(", [%.4f, %.4f]", mwh, price);
+      output.print(", [").print(mwh, 0, 4)
+          .print(", ").print(price, 0, 4).print(']');
     }
-     output.println();
+    output.println();
+    // no more transactions for this timeslot
+    data.release(timeslot + 1);
   }
 
   // -----------------------------------
@@ -190,26 +174,16 @@ implements Analyzer
       return;
     firstTx = true;
     checkSignAnomaly(tx);
-    Broker broker = tx.getBroker();
-    if (!brokerList.contains(broker))
+    int index = brokerList.indexOf(tx.getBroker());
+    if (index < 0)
       return;
     //System.out.printf("Market tx %s, ts %d, mwh %.4f, price %.4f\n",
     //                  tx.getBroker().getUsername(), tx.getTimeslotIndex(),
     //                  tx.getMWh(), tx.getPrice());
-    Integer target = tx.getTimeslotIndex();
-    TreeMap<Integer, ArrayList<MarketTransaction>> brokerData =
-        data.get(broker);
-    if (null == brokerData) {
-      brokerData = new TreeMap<>();
-      data.put(broker, brokerData);
-    }
-    ArrayList<MarketTransaction> list = brokerData.get(target);
-    if (null == list) {
-      list = new ArrayList<>();
-      brokerData.put(target, list);
-    }
-    list.add(tx);
-    }
+    int target = tx.getTimeslotIndex();
+    data.add(target, 2 * index, tx.getMWh());
+    data.add(target, 2 * index + 1, Math.abs(tx.getMWh()) * tx.getPrice());
+  }
 
   // Print out transactions that seem to have backward prices (or quantities)
   private void checkSignAnomaly (MarketTransaction tx)
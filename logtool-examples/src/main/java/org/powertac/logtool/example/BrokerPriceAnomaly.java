@@ -36,7 +36,6 @@ import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BrokerRepo;
 import org.powertac.common.repo.TimeslotRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -50,7 +49,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class BrokerPriceAnomaly
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(BrokerPriceAnomaly.class.getName());
@@ -31,7 +31,6 @@ import org.powertac.common.MarketTransaction;
 import org.powertac.common.TariffTransaction;
 import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -47,7 +46,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class CapacityAnalysis
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(CapacityAnalysis.class.getName());
@@ -38,7 +38,6 @@ import org.powertac.common.Competition;
 import org.powertac.common.TariffTransaction;
 import org.powertac.common.msg.CustomerBootstrapData;
 import org.powertac.common.msg.TimeslotUpdate;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -60,7 +59,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class CapacityValidator
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static Logger log = LogManager.getLogger(CapacityValidator.class.getSimpleName());
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.powertac.common.msg.SimEnd;
+import org.powertac.common.msg.SimStart;
+import org.powertac.common.msg.TimeslotUpdate;
+import org.powertac.logtool.common.DomainObjectReader;
+import org.powertac.logtool.common.NewObjectListener;
+import org.powertac.logtool.ifc.Analyzer;
+
+/**
+ * Runs a Checkpointable analyzer over a state log, saving its state every
+ * few timeslots in a checkpoint file next to its output, and resuming from
+ * that checkpoint if one is found for the same state log. The checkpoint
+ * is removed once the analyzer has finished.
+ *
+ * Like MultiAnalyzer, this registers with the DomainObjectReader on the
+ * analyzer's behalf, so it can count TimeslotUpdates and withhold the
+ * messages that came before the checkpoint. The checkpoint file holds
+ * <ul>
+ * <li>the magic number "PTCK" and a format version (int);</li>
+ * <li>the analyzer class name and the state log path (UTF), and the
+ *   length and modification time of the state log (long);</li>
+ * <li>the number of TimeslotUpdates handled (int) and the length of the
+ *   data file at that point (long);</li>
+ * <li>the length of the analyzer state (int) and the state itself.</li>
+ * </ul>
+ * A checkpoint with zero TimeslotUpdates is written when the analyzer
+ * starts, which marks its data file as incomplete.
+ */
+class CheckpointRunner
+extends AnalyzerContext
+implements Analyzer
+{
+  static private Logger log = LogManager.getLogger(CheckpointRunner.class.getName());
+
+  static final String extension = ".ckpt";
+  static final int magic = 0x5054434b; // "PTCK"
+  static final int version = 1;
+
+  private Analyzer tool;
+  private AnalyzerContext context;
+  private Checkpointable state;
+  private int interval;
+
+  private File source;
+  private File dataFile;
+  private File checkpointFile;
+
+  // TimeslotUpdates seen so far
+  private int timeslots = 0;
+
+  // checkpoint to resume from, if resumeAt > 0
+  private int resumeAt = 0;
+  private long resumeLength = 0L;
+  private byte[] resumeState;
+  private boolean skipping = false;
+
+  // handler methods, indexed by message type
+  private HashMap<Class<?>, Method> handlers;
+  private Object lastDispatched = null;
+
+  CheckpointRunner (Analyzer tool, int interval)
+  {
+    super();
+    this.tool = tool;
+    this.context = (AnalyzerContext) tool;
+    this.state = (Checkpointable) tool;
+    this.interval = interval;
+  }
+
+  /**
+   * Reads the given state log on behalf of the analyzer.
+   */
+  void run (String sourceName)
+  {
+    source = new File(sourceName);
+    dataFile = new File(state.getDataFilename());
+    checkpointFile = new File(dataFile.getPath() + extension);
+    readCheckpoint();
+    if (resumeAt > 0) {
+      System.out.println("Resuming " + dataFile + " after timeslot update "
+                         + resumeAt);
+      skipping = true;
+      context.setResuming(true);
+    }
+    cli(sourceName, this);
+  }
+
+  @Override
+  public void setup ()
+  {
+    try {
+      tool.setup();
+    }
+    catch (Exception e) {
+      log.error("Setup failed for " + tool.getClass().getSimpleName(), e);
+      throw new IllegalStateException("Cannot set up "
+                                      + tool.getClass().getName(), e);
+    }
+    DomainObjectReader dor =
+        (DomainObjectReader) getBean("domainObjectReader");
+    handlers = new HashMap<>();
+    for (Method method: tool.getClass().getMethods()) {
+      if ("handleMessage".equals(method.getName())
+          && method.getParameterCount() == 1) {
+        Class<?> type = method.getParameterTypes()[0];
+        handlers.put(type, method);
+        if (type != TimeslotUpdate.class)
+          dor.registerNewObjectListener(new Dispatcher(type), type);
+      }
+    }
+    dor.registerNewObjectListener(new TimeslotCounter(),
+                                  TimeslotUpdate.class);
+    if (resumeAt == 0)
+      saveCheckpoint();
+  }
+
+  @Override
+  public void report ()
+  {
+    if (skipping) {
+      log.error("Log ended before timeslot update {}, keeping checkpoint {}",
+                resumeAt, checkpointFile);
+      return;
+    }
+    tool.report();
+    checkpointFile.delete();
+  }
+
+  // -----------------------------------
+  // SimStart and SimEnd may be delivered directly to the analyzer
+  // rather than through the reader
+  public void handleMessage (SimStart start)
+  {
+    dispatch(start, SimStart.class);
+  }
+
+  public void handleMessage (SimEnd end)
+  {
+    dispatch(end, SimEnd.class);
+  }
+
+  // Hands an object to the analyzer unless we are still skipping
+  private void dispatch (Object thing, Class<?> type)
+  {
+    if (skipping || thing == lastDispatched)
+      return;
+    lastDispatched = thing;
+    Method method = handlers.get(type);
+    if (null == method)
+      return;
+    try {
+      method.invoke(tool, thing);
+    }
+    catch (InvocationTargetException ite) {
+      log.error("Error in " + tool.getClass().getSimpleName()
+                + ".handleMessage(" + type.getSimpleName() + ")",
+                ite.getCause());
+    }
+    catch (IllegalAccessException iae) {
+      log.error("Cannot call " + method.toString() + ": " + iae.toString());
+    }
+  }
+
+  // Counts timeslots, restoring the analyzer when we reach the checkpoint
+  // and saving its state every interval timeslots after that
+  private void timeslotUpdate (TimeslotUpdate tu)
+  {
+    timeslots += 1;
+    if (skipping) {
+      if (timeslots == resumeAt)
+        restore();
+      return;
+    }
+    dispatch(tu, TimeslotUpdate.class);
+    if (timeslots % interval == 0)
+      saveCheckpoint();
+  }
+
+  // -----------------------------------
+  // Checkpoint files
+
+  private void saveCheckpoint ()
+  {
+    File temp = new File(checkpointFile.getPath() + ".tmp");
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      if (timeslots > 0) {
+        DataOutputStream stateOut = new DataOutputStream(bytes);
+        state.saveState(stateOut);
+        stateOut.flush();
+      }
+      try (DataOutputStream out =
+          new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+        out.writeInt(magic);
+        out.writeInt(version);
+        out.writeUTF(tool.getClass().getName());
+        out.writeUTF(source.getAbsolutePath());
+        out.writeLong(source.length());
+        out.writeLong(source.lastModified());
+        out.writeInt(timeslots);
+        out.writeLong(dataFile.length());
+        out.writeInt(bytes.size());
+        bytes.writeTo(out);
+      }
+      Files.move(temp.toPath(), checkpointFile.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException ioe) {
+      log.error("Cannot write checkpoint " + checkpointFile + ": "
+                + ioe.toString());
+    }
+  }
+
+  // Reads the checkpoint, if there is one that fits this run
+  private void readCheckpoint ()
+  {
+    if (!checkpointFile.isFile())
+      return;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+      if (in.readInt() != magic || in.readInt() != version) {
+        log.warn("Ignoring unreadable checkpoint {}", checkpointFile);
+        return;
+      }
+      if (!tool.getClass().getName().equals(in.readUTF())
+          || !source.getAbsolutePath().equals(in.readUTF())
+          || source.length() != in.readLong()
+          || source.lastModified() != in.readLong()) {
+        log.warn("Ignoring checkpoint {} from another run", checkpointFile);
+        return;
+      }
+      int count = in.readInt();
+      long length = in.readLong();
+      if (count == 0)
+        return;
+      if (dataFile.length() < length) {
+        log.warn("Ignoring checkpoint {}, data file is too short",
+                 checkpointFile);
+        return;
+      }
+      byte[] saved = new byte[in.readInt()];
+      in.readFully(saved);
+      resumeAt = count;
+      resumeLength = length;
+      resumeState = saved;
+    }
+    catch (IOException ioe) {
+      log.warn("Ignoring unreadable checkpoint {}: {}", checkpointFile,
+               ioe.toString());
+    }
+  }
+
+  // Cuts the data file back to the checkpoint and restores the analyzer
+  private void restore ()
+  {
+    try {
+      try (RandomAccessFile data = new RandomAccessFile(dataFile, "rw")) {
+        data.setLength(resumeLength);
+      }
+      state.restoreState(new DataInputStream(new ByteArrayInputStream(resumeState)));
+    }
+    catch (IOException ioe) {
+      throw new IllegalStateException("Cannot restore "
+                                      + tool.getClass().getSimpleName()
+                                      + " from " + checkpointFile, ioe);
+    }
+    resumeState = null;
+    skipping = false;
+    context.setResuming(false);
+  }
+
+  // Listener for the analyzer's message types
+  class Dispatcher implements NewObjectListener
+  {
+    Class<?> type;
+
+    Dispatcher (Class<?> type)
+    {
+      super();
+      this.type = type;
+    }
+
+    @Override
+    public void handleNewObject (Object thing)
+    {
+      dispatch(thing, type);
+    }
+  }
+
+  // Listener for TimeslotUpdates
+  class TimeslotCounter implements NewObjectListener
+  {
+    TimeslotCounter ()
+    {
+      super();
+    }
+
+    @Override
+    public void handleNewObject (Object thing)
+    {
+      timeslotUpdate((TimeslotUpdate) thing);
+    }
+  }
+}
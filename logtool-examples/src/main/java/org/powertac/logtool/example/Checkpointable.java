@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Analyzer whose accumulated state can be saved in a checkpoint and
+ * restored later, so that a run that dies partway through a long log can
+ * pick up where it left off. Checkpoints are written by CheckpointRunner
+ * right after a TimeslotUpdate has been handled.
+ *
+ * When a run is resumed, the log is read again from the start, since the
+ * logtool framework rebuilds its repositories from it, but the analyzer
+ * sees none of the messages up to the checkpoint. Instead it is set up
+ * with isResuming() true, and restoreState() is called in place of those
+ * messages. At that point the data file holds exactly the output written
+ * before the checkpoint, and the analyzer must append to it.
+ */
+public interface Checkpointable
+{
+  /**
+   * Returns the name of the output file. The checkpoint is kept next to
+   * it, in a file with ".ckpt" appended to its name.
+   */
+  public String getDataFilename ();
+
+  /**
+   * Writes the analyzer's accumulated state. Output written so far must be
+   * flushed to the data file first.
+   */
+  public void saveState (DataOutputStream out) throws IOException;
+
+  /**
+   * Restores the state written by saveState(), and reopens the data file
+   * for appending.
+   */
+  public void restoreState (DataInputStream in) throws IOException;
+}
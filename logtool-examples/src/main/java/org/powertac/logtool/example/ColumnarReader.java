@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.powertac.logtool.example.DataSink.Column;
+import org.powertac.logtool.example.DataSink.Type;
+
+/**
+ * Reads files written by ColumnarSink, one row group at a time. After
+ * each successful call to nextGroup(), the values of each column in the
+ * group are available as an array of the column's type.
+ */
+public class ColumnarReader implements Closeable
+{
+  private DataInputStream input;
+  private List<Column> columns = new ArrayList<>();
+  private int rowCount = 0;
+  private Object[] values;
+  private Inflater inflater = new Inflater();
+
+  public ColumnarReader (String filename) throws IOException
+  {
+    super();
+    input = new DataInputStream(new BufferedInputStream(new FileInputStream(filename),
+                                                        1 << 16));
+    if (input.readInt() != ColumnarSink.magic)
+      throw new IOException(filename + " is not a columnar data file");
+    int version = input.readInt();
+    if (version < 1 || version > ColumnarSink.version)
+      throw new IOException("Unsupported version " + version + " in "
+                            + filename);
+    int count = input.readInt();
+    Type[] types = Type.values();
+    for (int i = 0; i < count; i++) {
+      String name = input.readUTF();
+      int code = input.readByte();
+      if (code < 0 || code >= types.length
+          || (types[code] == Type.VECTOR && version < ColumnarSink.vectorVersion))
+        throw new IOException("Bad type code " + code + " for column " + name);
+      columns.add(new Column(name, types[code]));
+    }
+    values = new Object[count];
+  }
+
+  /**
+   * Returns the columns in file order.
+   */
+  public List<Column> getColumns ()
+  {
+    return Collections.unmodifiableList(columns);
+  }
+
+  /**
+   * Reads the next row group. Returns false at the end of the file.
+   */
+  public boolean nextGroup () throws IOException
+  {
+    try {
+      rowCount = input.readInt();
+    }
+    catch (EOFException eof) {
+      rowCount = 0;
+      return false;
+    }
+    for (int i = 0; i < columns.size(); i++) {
+      int encoding = input.readByte();
+      byte[] compressed = new byte[input.readInt()];
+      input.readFully(compressed);
+      values[i] = decode(columns.get(i).getType(), encoding,
+                         inflate(compressed));
+    }
+    return true;
+  }
+
+  /**
+   * Number of rows in the current group.
+   */
+  public int getRowCount ()
+  {
+    return rowCount;
+  }
+
+  public int[] getInts (int column)
+  {
+    return (int[]) values[column];
+  }
+
+  public long[] getLongs (int column)
+  {
+    return (long[]) values[column];
+  }
+
+  public double[] getDoubles (int column)
+  {
+    return (double[]) values[column];
+  }
+
+  public String[] getStrings (int column)
+  {
+    return (String[]) values[column];
+  }
+
+  public double[][] getVectors (int column)
+  {
+    return (double[][]) values[column];
+  }
+
+  private byte[] inflate (byte[] compressed) throws IOException
+  {
+    inflater.reset();
+    inflater.setInput(compressed);
+    ByteArrayOutputStream result =
+        new ByteArrayOutputStream(compressed.length * 4);
+    byte[] buffer = new byte[1 << 16];
+    try {
+      while (!inflater.finished()) {
+        int n = inflater.inflate(buffer);
+        if (0 == n && !inflater.finished()
+            && (inflater.needsInput() || inflater.needsDictionary()))
+          throw new IOException("Truncated column data");
+        result.write(buffer, 0, n);
+      }
+    }
+    catch (DataFormatException dfe) {
+      throw new IOException("Bad column data: " + dfe.getMessage());
+    }
+    return result.toByteArray();
+  }
+
+  private Object decode (Type type, int encoding, byte[] data)
+    throws IOException
+  {
+    if (type == Type.VECTOR && encoding == ColumnarSink.shuffledEncoding) {
+      data = ColumnarSink.unshuffleVectors(data, rowCount);
+    }
+    else if (type != Type.STRING
+             && encoding == ColumnarSink.shuffledEncoding) {
+      int width = (type == Type.INT) ? 4 : 8;
+      data = ColumnarSink.unshuffle(data, width, rowCount);
+    }
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    switch (type) {
+    case INT:
+      int[] ints = new int[rowCount];
+      for (int i = 0; i < rowCount; i++)
+        ints[i] = in.readInt();
+      return ints;
+    case LONG:
+      long[] longs = new long[rowCount];
+      for (int i = 0; i < rowCount; i++)
+        longs[i] = in.readLong();
+      return longs;
+    case DOUBLE:
+      double[] doubles = new double[rowCount];
+      for (int i = 0; i < rowCount; i++)
+        doubles[i] = in.readDouble();
+      return doubles;
+    case VECTOR:
+      double[][] vectors = new double[rowCount][];
+      for (int i = 0; i < rowCount; i++)
+        vectors[i] = new double[in.readInt()];
+      for (int i = 0; i < rowCount; i++) {
+        for (int j = 0; j < vectors[i].length; j++)
+          vectors[i][j] = in.readDouble();
+      }
+      return vectors;
+    default:
+      String[] strings = new String[rowCount];
+      for (int i = 0; i < rowCount; i++) {
+        int length = in.readInt();
+        if (length >= 0) {
+          byte[] bytes = new byte[length];
+          in.readFully(bytes);
+          strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+      }
+      return strings;
+    }
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    inflater.end();
+    input.close();
+  }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * DataSink that writes a compact, typed, columnar binary file. The layout
+ * is
+ * <ul>
+ * <li>the magic number "PTCL" and a format version (int): 1, or 2 for
+ *   files that may contain vector columns;</li>
+ * <li>the schema: the number of columns (int), then for each column its
+ *   name (as written by DataOutputStream.writeUTF()) and its type code
+ *   (byte: 0=int, 1=long, 2=double, 3=string, 4=vector);</li>
+ * <li>any number of row groups, each holding the row count (int) and then,
+ *   for each column in turn, an encoding code (byte), the length of the
+ *   compressed column data (int), and the column data compressed with
+ *   Deflate (zlib format).</li>
+ * </ul>
+ * All numbers are big-endian. Uncompressed, an int, long or double column
+ * is the array of values; with encoding 1 ("shuffled") its bytes are
+ * transposed so that the first bytes of all values come first, then the
+ * second bytes, and so on, which makes numeric data compress much better.
+ * A string column is a sequence of UTF-8 byte counts (int, -1 for null)
+ * each followed by that many bytes. A vector column is the length of each
+ * row's vector (int) followed by all the vector values (double) in row
+ * order; with encoding 1, only the values are shuffled. There is no
+ * trailer, so a file that is cut short still holds all its completed row
+ * groups.
+ *
+ * Files in this format can be read with ColumnarReader, converted to csv
+ * with ColumnarToCsv, and read into numpy arrays with
+ * python-scripts/ColumnarData.py.
+ */
+public class ColumnarSink implements DataSink
+{
+  static final String extension = ".ptcol";
+  static final int magic = 0x5054434c; // "PTCL"
+  static final int version = 2;
+  // first version with vector columns
+  static final int vectorVersion = 2;
+  static final byte plainEncoding = 0;
+  static final byte shuffledEncoding = 1;
+
+  private static final int defaultGroupSize = 4096;
+
+  private DataOutputStream output;
+  private Column[] columns;
+  private int groupSize;
+
+  // values for the current row group, one array per column
+  private Object[] values;
+  private int column = 0;
+  private int row = 0;
+
+  private Deflater deflater = new Deflater();
+  private ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+  private byte[] compressBuffer = new byte[1 << 16];
+
+  /**
+   * True just in case the filename calls for the columnar format.
+   */
+  public static boolean isColumnar (String filename)
+  {
+    return filename.endsWith(extension);
+  }
+
+  public ColumnarSink (String filename, List<Column> columns)
+    throws IOException
+  {
+    this(filename, columns, defaultGroupSize);
+  }
+
+  public ColumnarSink (String filename, List<Column> columns, int groupSize)
+    throws IOException
+  {
+    this(filename, columns, groupSize, false);
+    output.writeInt(magic);
+    output.writeInt(version);
+    output.writeInt(this.columns.length);
+    for (Column col: this.columns) {
+      output.writeUTF(col.getName());
+      output.writeByte(col.getType().ordinal());
+    }
+  }
+
+  /**
+   * Opens a sink that appends row groups to an existing file with the
+   * same columns.
+   */
+  public static ColumnarSink append (String filename, List<Column> columns)
+    throws IOException
+  {
+    return new ColumnarSink(filename, columns, defaultGroupSize, true);
+  }
+
+  private ColumnarSink (String filename, List<Column> columns, int groupSize,
+                        boolean append)
+    throws IOException
+  {
+    super();
+    this.columns = columns.toArray(new Column[0]);
+    this.groupSize = groupSize;
+    values = new Object[this.columns.length];
+    for (int i = 0; i < this.columns.length; i++) {
+      values[i] = newArray(this.columns[i].getType(), groupSize);
+    }
+    output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename, append),
+                                                           1 << 16));
+  }
+
+  private Object newArray (Type type, int size)
+  {
+    switch (type) {
+    case INT:
+      return new int[size];
+    case LONG:
+      return new long[size];
+    case DOUBLE:
+      return new double[size];
+    case VECTOR:
+      return new double[size][];
+    default:
+      return new String[size];
+    }
+  }
+
+  // Checks the type of the next column
+  private int next (Type type)
+  {
+    if (column >= columns.length)
+      throw new IllegalStateException("Too many values in row");
+    if (columns[column].getType() != type)
+      throw new IllegalStateException("Column " + columns[column].getName()
+                                      + " is " + columns[column].getType()
+                                      + ", not " + type);
+    return column++;
+  }
+
+  @Override
+  public DataSink putInt (int value)
+  {
+    ((int[]) values[next(Type.INT)])[row] = value;
+    return this;
+  }
+
+  @Override
+  public DataSink putLong (long value)
+  {
+    ((long[]) values[next(Type.LONG)])[row] = value;
+    return this;
+  }
+
+  @Override
+  public DataSink putDouble (double value)
+  {
+    ((double[]) values[next(Type.DOUBLE)])[row] = value;
+    return this;
+  }
+
+  @Override
+  public DataSink putString (String value)
+  {
+    ((String[]) values[next(Type.STRING)])[row] = value;
+    return this;
+  }
+
+  @Override
+  public DataSink putVector (double[] value)
+  {
+    ((double[][]) values[next(Type.VECTOR)])[row] = value.clone();
+    return this;
+  }
+
+  @Override
+  public void endRow ()
+  {
+    if (column != columns.length)
+      throw new IllegalStateException("Row has " + column + " values, expected "
+                                      + columns.length);
+    column = 0;
+    row += 1;
+    if (row == groupSize)
+      writeGroup();
+  }
+
+  /**
+   * Writes out the rows so far as a row group, which may be short.
+   */
+  @Override
+  public void flush ()
+  {
+    if (row > 0)
+      writeGroup();
+    try {
+      output.flush();
+    }
+    catch (IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+  }
+
+  @Override
+  public void close ()
+  {
+    if (row > 0)
+      writeGroup();
+    deflater.end();
+    try {
+      output.close();
+    }
+    catch (IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+  }
+
+  // Writes out the current row group
+  private void writeGroup ()
+  {
+    try {
+      output.writeInt(row);
+      for (int i = 0; i < columns.length; i++) {
+        chunk.reset();
+        int width = encode(columns[i].getType(), values[i], row);
+        byte[] data = chunk.toByteArray();
+        if (columns[i].getType() == Type.VECTOR) {
+          output.writeByte(shuffledEncoding);
+          data = shuffleVectors(data, row);
+        }
+        else if (width > 0) {
+          output.writeByte(shuffledEncoding);
+          data = shuffle(data, width, row);
+        }
+        else {
+          output.writeByte(plainEncoding);
+        }
+        compress(data);
+      }
+      row = 0;
+    }
+    catch (IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+  }
+
+  // Serializes a column into the chunk buffer. Returns the width of
+  // numeric values, or zero for strings.
+  private int encode (Type type, Object data, int count)
+    throws IOException
+  {
+    DataOutputStream out = new DataOutputStream(chunk);
+    int width = 0;
+    switch (type) {
+    case INT:
+      int[] ints = (int[]) data;
+      for (int i = 0; i < count; i++)
+        out.writeInt(ints[i]);
+      width = 4;
+      break;
+    case LONG:
+      long[] longs = (long[]) data;
+      for (int i = 0; i < count; i++)
+        out.writeLong(longs[i]);
+      width = 8;
+      break;
+    case DOUBLE:
+      double[] doubles = (double[]) data;
+      for (int i = 0; i < count; i++)
+        out.writeDouble(doubles[i]);
+      width = 8;
+      break;
+    case VECTOR:
+      double[][] vectors = (double[][]) data;
+      for (int i = 0; i < count; i++)
+        out.writeInt(vectors[i].length);
+      for (int i = 0; i < count; i++) {
+        for (double value: vectors[i])
+          out.writeDouble(value);
+      }
+      width = 8;
+      break;
+    default:
+      String[] strings = (String[]) data;
+      for (int i = 0; i < count; i++) {
+        if (null == strings[i]) {
+          out.writeInt(-1);
+        }
+        else {
+          byte[] bytes = strings[i].getBytes(StandardCharsets.UTF_8);
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+      }
+    }
+    out.flush();
+    return width;
+  }
+
+  // Compresses a column and writes it with its length
+  private void compress (byte[] data) throws IOException
+  {
+    deflater.reset();
+    deflater.setInput(data);
+    deflater.finish();
+    ByteArrayOutputStream compressed =
+        new ByteArrayOutputStream(data.length / 2 + 64);
+    while (!deflater.finished()) {
+      int n = deflater.deflate(compressBuffer);
+      compressed.write(compressBuffer, 0, n);
+    }
+    output.writeInt(compressed.size());
+    compressed.writeTo(output);
+  }
+
+  // Transposes count values of the given width into byte planes
+  static byte[] shuffle (byte[] data, int width, int count)
+  {
+    byte[] result = new byte[data.length];
+    for (int i = 0; i < count; i++) {
+      for (int b = 0; b < width; b++) {
+        result[b * count + i] = data[i * width + b];
+      }
+    }
+    return result;
+  }
+
+  // Shuffles the values of a vector column, leaving the row lengths
+  // at the start as they are
+  static byte[] shuffleVectors (byte[] data, int rows)
+  {
+    int offset = rows * 4;
+    byte[] values = new byte[data.length - offset];
+    System.arraycopy(data, offset, values, 0, values.length);
+    byte[] result = new byte[data.length];
+    System.arraycopy(data, 0, result, 0, offset);
+    System.arraycopy(shuffle(values, 8, values.length / 8), 0,
+                     result, offset, values.length);
+    return result;
+  }
+
+  // Reverses shuffleVectors()
+  static byte[] unshuffleVectors (byte[] data, int rows)
+  {
+    int offset = rows * 4;
+    byte[] values = new byte[data.length - offset];
+    System.arraycopy(data, offset, values, 0, values.length);
+    byte[] result = new byte[data.length];
+    System.arraycopy(data, 0, result, 0, offset);
+    System.arraycopy(unshuffle(values, 8, values.length / 8), 0,
+                     result, offset, values.length);
+    return result;
+  }
+
+  // Reverses shuffle()
+  static byte[] unshuffle (byte[] data, int width, int count)
+  {
+    byte[] result = new byte[data.length];
+    for (int i = 0; i < count; i++) {
+      for (int b = 0; b < width; b++) {
+        result[i * width + b] = data[b * count + i];
+      }
+    }
+    return result;
+  }
+}
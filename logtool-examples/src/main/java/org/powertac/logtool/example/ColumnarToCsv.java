@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.List;
+import java.util.Locale;
+
+import org.powertac.logtool.example.DataSink.Column;
+
+/**
+ * Converts a columnar data file written by ColumnarSink to csv, for tools
+ * that expect the text output of the analyzers. The first line gives the
+ * column names unless --no-headers is given. Doubles are written in the US
+ * locale with at most four fraction digits, or as many as given by --digits.
+ *
+ * Usage: ColumnarToCsv [--no-headers] [--digits n] input-file output-file
+ */
+public class ColumnarToCsv
+{
+  private boolean header = true;
+  private int digits = 4;
+
+  /**
+   * Main method just creates an instance and passes command-line args to
+   * its cli() method.
+   */
+  public static void main (String[] args)
+  {
+    new ColumnarToCsv().cli(args);
+  }
+
+  private void cli (String[] args)
+  {
+    int offset = 0;
+    while (offset < args.length && args[offset].startsWith("--")) {
+      if ("--no-headers".equals(args[offset])) {
+        header = false;
+        offset += 1;
+      }
+      else if ("--digits".equals(args[offset]) && offset + 1 < args.length) {
+        digits = Integer.parseInt(args[offset + 1]);
+        offset += 2;
+      }
+      else {
+        break;
+      }
+    }
+    if (args.length - offset != 2) {
+      System.out.println("Usage: ColumnarToCsv [--no-headers] [--digits n] input-file output-file");
+      return;
+    }
+    try {
+      convert(args[offset], args[offset + 1]);
+    }
+    catch (IOException ioe) {
+      System.out.println("Cannot convert " + args[offset] + ": "
+                         + ioe.toString());
+    }
+  }
+
+  private void convert (String inputFile, String outputFile)
+    throws IOException
+  {
+    DecimalFormat format =
+        (DecimalFormat) NumberFormat.getNumberInstance(Locale.US);
+    format.setGroupingUsed(false);
+    format.setMaximumFractionDigits(digits);
+    try (ColumnarReader reader = new ColumnarReader(inputFile)) {
+      List<Column> columns = reader.getColumns();
+      DataSink output = new CsvSink(outputFile, columns, format, header);
+      while (reader.nextGroup()) {
+        for (int row = 0; row < reader.getRowCount(); row++) {
+          for (int col = 0; col < columns.size(); col++) {
+            switch (columns.get(col).getType()) {
+            case INT:
+              output.putInt(reader.getInts(col)[row]);
+              break;
+            case LONG:
+              output.putLong(reader.getLongs(col)[row]);
+              break;
+            case DOUBLE:
+              output.putDouble(reader.getDoubles(col)[row]);
+              break;
+            case VECTOR:
+              output.putVector(reader.getVectors(col)[row]);
+              break;
+            default:
+              output.putString(reader.getStrings(col)[row]);
+            }
+          }
+          output.endRow();
+        }
+      }
+      output.close();
+    }
+  }
+}
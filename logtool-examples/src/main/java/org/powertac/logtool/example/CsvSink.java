@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.List;
+
+/**
+ * DataSink that writes comma-separated text, one line per row. Doubles
+ * are formatted by a RowWriter. A vector is written in square brackets,
+ * with its values separated by spaces.
+ */
+public class CsvSink implements DataSink
+{
+  private RowWriter output;
+  private int columnCount;
+  private int column = 0;
+
+  public CsvSink (String filename, List<Column> columns,
+                  NumberFormat format, boolean header)
+    throws IOException
+  {
+    this(new RowWriter(filename, format), columns, header);
+  }
+
+  /**
+   * Opens a sink that appends rows to an existing file.
+   */
+  public static CsvSink append (String filename, List<Column> columns,
+                                NumberFormat format)
+    throws IOException
+  {
+    return new CsvSink(RowWriter.append(filename, format), columns, false);
+  }
+
+  private CsvSink (RowWriter output, List<Column> columns, boolean header)
+  {
+    super();
+    this.output = output;
+    this.columnCount = columns.size();
+    if (header) {
+      String delim = "";
+      for (Column col: columns) {
+        output.print(delim);
+        output.print(col.getName());
+        delim = ",";
+      }
+      output.println();
+    }
+  }
+
+  private void delimit ()
+  {
+    if (column++ > 0)
+      output.print(',');
+  }
+
+  @Override
+  public DataSink putInt (int value)
+  {
+    delimit();
+    output.print(value);
+    return this;
+  }
+
+  @Override
+  public DataSink putLong (long value)
+  {
+    delimit();
+    output.print(value);
+    return this;
+  }
+
+  @Override
+  public DataSink putDouble (double value)
+  {
+    delimit();
+    output.print(value);
+    return this;
+  }
+
+  @Override
+  public DataSink putString (String value)
+  {
+    delimit();
+    output.print(value);
+    return this;
+  }
+
+  @Override
+  public DataSink putVector (double[] value)
+  {
+    delimit();
+    output.print('[');
+    for (int i = 0; i < value.length; i++) {
+      if (i > 0)
+        output.print(' ');
+      output.print(value[i]);
+    }
+    output.print(']');
+    return this;
+  }
+
+  @Override
+  public void endRow ()
+  {
+    if (column != columnCount)
+      throw new IllegalStateException("Row has " + column + " values, expected "
+                                      + columnCount);
+    output.println();
+    column = 0;
+  }
+
+  @Override
+  public void flush ()
+  {
+    output.flush();
+  }
+
+  @Override
+  public void close ()
+  {
+    output.close();
+  }
+}
@@ -41,7 +41,6 @@ import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.TariffRepo;
 //import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -72,7 +71,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class CustomerBalancingCapacity
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(CustomerBalancingCapacity.class.getName());
@@ -15,13 +15,10 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 //import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.time.ZonedDateTime;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -40,7 +37,6 @@ import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.CustomerRepo;
 //import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -51,6 +47,8 @@ import org.powertac.logtool.ifc.Analyzer;
  *     followed by seven fields for each tariff the customer has subscribed to:
  *       tariffId, population, production, consumption,
  *       production-consumption cost, regulation, and regulation cost.
+ * Tariffs appear in the order of their first non-regulation transaction
+ * in the timeslot.
  * 
  * NOTE: Numeric data is formatted using the US locale in order to avoid confusion over
  * the meaning of the comma character when used in other locales.
@@ -60,7 +58,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class CustomerPCR
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   //static private Logger log = LogManager.getLogger(CustomerProductionConsumption.class.getName());
@@ -70,21 +68,12 @@ implements Analyzer
   private String customerName = "";
   private CustomerInfo customer = null;
 
-  // data collectors for current timeslot, indexed by tariff Id
+  // data collectors for current timeslot, by tariff Id
   private int timeslot;
-  private Map<Long, Integer> population;
-  private Map<Long, Double> used;
-  private Map<Long, Double> produced;
-  private Map<Long, Double> pcCost;
-  private Map<Long, Double> regulation;
-  private Map<Long, Double> regCost;
-
-  // stored transactions for the current timeslot, indexed by tariff ID,
-  // that may be modified by regulation
-  private Map<Long, TariffTransaction> currentTx;
+  private TariffTable tariffs;
 
   // data output file
-  private PrintWriter data = null;
+  private RowWriter data = null;
   private String dataFilename = "data.txt";
   private boolean started = false; // wait for SimStart
 
@@ -128,17 +117,11 @@ implements Analyzer
   @Override
   public void setup ()
   {
-    currentTx = new HashMap<>();
-    population = new HashMap<>();
-    used = new HashMap<>();
-    produced = new HashMap<>();
-    pcCost = new HashMap<>();
-    regulation = new HashMap<>();
-    regCost = new HashMap<>();
+    tariffs = new TariffTable();
     try {
-      data = new PrintWriter(new File(dataFilename));
+      data = new RowWriter(dataFilename, df);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       e.printStackTrace();
     }
   }
@@ -156,7 +139,8 @@ implements Analyzer
     List<CustomerInfo> customers = repo.findByName(customerName);
     // for now, assume the first entry for the customer name is the correct one
     customer = customers.get(0);
-    data.println("ts, dow, hod, tid, pop, prod, cons, pc-cost, reg, reg-cost");
+    data.print("ts, dow, hod, tid, pop, prod, cons, pc-cost, reg, reg-cost")
+        .println();
   }
   
   // Called on timeslotUpdate. Note that there are two of these before
@@ -171,34 +155,23 @@ implements Analyzer
 
     // print timeslot, dow, hod, production, consumption
     ZonedDateTime dt = instant.atZone(ZoneId.of("UTC+00:00"));
-    data.print(String.format("%d, %d, %d",
-                             timeslot,
-                             dt.getDayOfWeek().getValue(),
-                             dt.getHour()));
+    data.print(timeslot).print(", ")
+        .print(dt.getDayOfWeek().getValue()).print(", ")
+        .print(dt.getHour());
     // print customer usage, production
-    for (Long key : pcCost.keySet()) {
-      data.print(String.format(", %d, %d, %s, %s, %s, %s, %s",
-                               key, getInteger(population, key),
-                               df.format(getDouble(produced, key)),
-                               df.format(getDouble(used, key)),
-                               df.format(getDouble(pcCost, key)),
-                               df.format(getDouble(regulation, key)),
-                               df.format(getDouble(regCost, key))));
-      
+    for (int i = 0; i < tariffs.listed; i++) {
+      int slot = tariffs.order[i];
+      data.print(", ").print(tariffs.ids.getKey(slot))
+          .print(", ").print(tariffs.population[slot])
+          .print(", ").print(tariffs.produced[slot])
+          .print(", ").print(tariffs.used[slot])
+          .print(", ").print(tariffs.pcCost[slot])
+          .print(", ").print(tariffs.regulation[slot])
+          .print(", ").print(tariffs.regCost[slot]);
     }
     data.println();
   }
 
-  private void clearCustomerData ()
-  {
-    produced.clear();
-    used.clear();
-    pcCost.clear();
-    regulation.clear();
-    regCost.clear();
-    currentTx.clear();
-  }
-
   private int skip = 1;
   // catch TimeslotUpdate events
   public void handleMessage (TimeslotUpdate msg)
@@ -214,7 +187,7 @@ implements Analyzer
         summarizeTimeslot(java.time.Instant.ofEpochMilli(msg.getPostedTime().getMillis()));
       }
     }
-    clearCustomerData();
+    tariffs.clear();
   }
 
   // catch TariffTransactions
@@ -226,61 +199,41 @@ implements Analyzer
             || tx.getTxType() == TariffTransaction.Type.PRODUCE)) {
       return;
     }
-    Long key = tx.getTariffSpec().getId();
+    int slot = tariffs.slot(tx.getTariffSpec().getId());
     if (! tx.isRegulation()) {
       // non-regulation transaction
       // if this is an update to an original tx, we need to update info
-      TariffTransaction originalTx = currentTx.get(key); 
-      if (null != originalTx) {
+      if (tariffs.hasOriginal[slot]) {
         System.out.println("Tx " + tx.getId() + " update");
         if (tx.getTxType() == Type.CONSUME) {
-          used.put(key, getDouble(used, key) - originalTx.getKWh());
+          tariffs.used[slot] -= tariffs.originalKWh[slot];
         }
         else if (tx.getTxType() == Type.PRODUCE) {
-          produced.put(key, getDouble(produced, key) - originalTx.getKWh());
+          tariffs.produced[slot] -= tariffs.originalKWh[slot];
         }
-        pcCost.put(key, getDouble(pcCost, key) - originalTx.getCharge());
+        tariffs.pcCost[slot] -= tariffs.originalCharge[slot];
       }
       else {
-        currentTx.put(key, tx);
-        population.put(key, tx.getCustomerCount());
+        tariffs.setOriginal(slot, tx);
       }
       // accumulate kWh and cost
       if (tx.getTxType() == Type.CONSUME) {
-        used.put(key, getDouble(used, key) + tx.getKWh());
+        tariffs.used[slot] += tx.getKWh();
       }
       else if (tx.getTxType() == Type.PRODUCE) {
-        produced.put(key, getDouble(produced, key) + tx.getKWh());
+        tariffs.produced[slot] += tx.getKWh();
       }
-      pcCost.put(key, getDouble(pcCost, key) + tx.getCharge());
+      tariffs.pcCost[slot] += tx.getCharge();
     }
     else {
       // regulation transaction
       if (!(tx.getTxType() == Type.CONSUME || tx.getTxType() == Type.PRODUCE))
         return;
-      regulation.put(key, getDouble(regulation, key) + tx.getKWh());
-      regCost.put(key, getDouble(regCost, key) + tx.getCharge());
+      tariffs.regulation[slot] += tx.getKWh();
+      tariffs.regCost[slot] += tx.getCharge();
     }
   }
 
-  // Converts null Double values to 0.0
-  private double getDouble(Map<Long, Double> map, Long key)
-  {
-    Double result = (Double) map.get(key);
-    if (null == result)
-      result = 0.0;
-    return result;
-  }
-
-  // Converts null Integer values to 0
-  private int getInteger(Map<Long, Integer> map, Long key)
-  {
-    Integer result = (Integer) map.get(key);
-    if (null == result)
-      result = 0;
-    return result;
-  }
-
   // catch SimStart and SimEnd messages
   public void handleMessage (SimStart ss)
   {
@@ -293,5 +246,91 @@ implements Analyzer
   {
     System.out.println("Sim end");
     report();
+    started = false;
+  }
+
+  // -----------------------------------
+  // Per-tariff values for the current timeslot, in primitive arrays by
+  // LongIndex slot. Tariffs keep their slots for the whole game; clear()
+  // starts a new timeslot by bumping the generation, and a slot's values
+  // are zeroed when it is first used in a generation, so nothing is
+  // reallocated or cleared for tariffs that are not used.
+  class TariffTable
+  {
+    LongIndex ids = new LongIndex(16);
+    int[] population = new int[16];
+    double[] used = new double[16];
+    double[] produced = new double[16];
+    double[] pcCost = new double[16];
+    double[] regulation = new double[16];
+    double[] regCost = new double[16];
+
+    // first non-regulation transaction in the timeslot
+    boolean[] hasOriginal = new boolean[16];
+    double[] originalKWh = new double[16];
+    double[] originalCharge = new double[16];
+
+    // slots with a non-regulation transaction, in order of arrival
+    int[] order = new int[16];
+    int listed = 0;
+
+    private int[] generation = new int[16];
+    private int current = 1;
+
+    TariffTable ()
+    {
+      super();
+    }
+
+    // Returns the slot for a tariff, zeroing its values if it has not
+    // been used in this timeslot
+    int slot (long tariffId)
+    {
+      int slot = ids.add(tariffId);
+      if (slot >= generation.length)
+        grow();
+      if (generation[slot] != current) {
+        generation[slot] = current;
+        population[slot] = 0;
+        used[slot] = 0.0;
+        produced[slot] = 0.0;
+        pcCost[slot] = 0.0;
+        regulation[slot] = 0.0;
+        regCost[slot] = 0.0;
+        hasOriginal[slot] = false;
+      }
+      return slot;
+    }
+
+    void setOriginal (int slot, TariffTransaction tx)
+    {
+      hasOriginal[slot] = true;
+      originalKWh[slot] = tx.getKWh();
+      originalCharge[slot] = tx.getCharge();
+      population[slot] = tx.getCustomerCount();
+      order[listed++] = slot;
+    }
+
+    void clear ()
+    {
+      current += 1;
+      listed = 0;
+    }
+
+    private void grow ()
+    {
+      int size = generation.length * 2;
+      population = Arrays.copyOf(population, size);
+      used = Arrays.copyOf(used, size);
+      produced = Arrays.copyOf(produced, size);
+      pcCost = Arrays.copyOf(pcCost, size);
+      regulation = Arrays.copyOf(regulation, size);
+      regCost = Arrays.copyOf(regCost, size);
+      hasOriginal = Arrays.copyOf(hasOriginal, size);
+      originalKWh = Arrays.copyOf(originalKWh, size);
+      originalCharge = Arrays.copyOf(originalCharge, size);
+      order = Arrays.copyOf(order, size);
+      generation = Arrays.copyOf(generation, size);
+    }
   }
 }
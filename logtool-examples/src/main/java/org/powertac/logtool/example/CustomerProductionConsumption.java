@@ -15,27 +15,19 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 import org.joda.time.DateTimeFieldType;
 import org.joda.time.Instant;
 import org.powertac.common.CustomerInfo;
-import org.powertac.common.TariffTransaction;
-import org.powertac.common.TariffTransaction.Type;
 import org.powertac.common.msg.SimEnd;
 import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.CustomerRepo;
 //import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -46,6 +38,10 @@ import org.powertac.logtool.ifc.Analyzer;
  * Otherwise, output starts with a list of customer names, followed by one
  * row/timeslot giving the timeslot index followed by net (production - consumption)
  * for each customer.
+ *
+ * Sums by customer come from the shared DemandIndex, in which each
+ * customer has a dense slot from the time its CustomerInfo is read, so a
+ * row is written straight from the index's arrays for the timeslot.
  * 
  * NOTE: Numeric data is formatted using the US locale in order to avoid confusion over
  * the meaning of the comma character when used in other locales.
@@ -55,7 +51,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class CustomerProductionConsumption
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(CustomerProductionConsumption.class.getName());
@@ -63,18 +59,19 @@ implements Analyzer
   // customer data
   private boolean single = false;
   private String customerName = "";
-  private CustomerInfo customer = null;
+  private int customerSlot = -1;
 
-  // data collectors for current timeslot
+  // production and consumption come from the demand index
   private int timeslot;
-  private double used = 0.0;
-  private double produced = 0.0;
-  private List<CustomerInfo> customers;
-  private Map<CustomerInfo, Double> customerNet;
-  private Map<CustomerInfo, Double> customerCost;
+  private DemandIndex demand;
+
+  // DemandIndex slots of the output columns, and the text that starts
+  // each column's entry
+  private int[] columns;
+  private String[] columnPrefix;
 
   // data output file
-  private PrintWriter data = null;
+  private RowWriter data = null;
   private String dataFilename = "data.txt";
   private boolean started = false; // wait for SimStart
 
@@ -131,10 +128,11 @@ implements Analyzer
   @Override
   public void setup ()
   {
+    demand = getDemandIndex();
     try {
-      data = new PrintWriter(new File(dataFilename));
+      data = new RowWriter(dataFilename, df);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       e.printStackTrace();
     }
   }
@@ -150,22 +148,20 @@ implements Analyzer
   {
     if (single) {
       // one customer
-      data.println("ts, dow, hod, prod, cons");
+      data.print("ts, dow, hod, prod, cons").println();
     }
     else {
-      customers = new ArrayList<>();
-      customerNet = new HashMap<>();
-      customerCost = new HashMap<>();
       CustomerRepo repo = (CustomerRepo) this.getBean("customerRepo");
-      for (CustomerInfo cust: repo.list()) {
-        customers.add(cust);
-        customerNet.put(cust, 0.0);
-        customerCost.put(cust, 0.0);
-      }
-      for (CustomerInfo cust: customers) {
-        data.format("{'name':%s,'type':%s,'pop':%d}, ",
-                    cust.getName(), cust.getPowerType().toString(),
-                    cust.getPopulation());
+      List<CustomerInfo> customers = repo.list();
+      columns = new int[customers.size()];
+      columnPrefix = new String[customers.size()];
+      for (int i = 0; i < columns.length; i++) {
+        CustomerInfo cust = customers.get(i);
+        columns[i] = demand.getCustomerSlot(cust);
+        columnPrefix[i] = "{'name':" + cust.getName() + ",'net':";
+        data.print("{'name':").print(cust.getName())
+            .print(",'type':").print(cust.getPowerType().toString())
+            .print(",'pop':").print(cust.getPopulation()).print("}, ");
       }
       data.println();
     }
@@ -176,75 +172,49 @@ implements Analyzer
   // the second timeslot (the third call to this method), and so customer
   // consumption against non-default broker tariffs first occurs after
   // four calls.
-  private void summarizeTimeslot (Instant instant)
+  private void summarizeTimeslot (Instant instant, DemandIndex.Period period)
   {
     if (!started)
       return;
 
     if (single) {
       // print timeslot, dow, hod, production, consumption
-      data.print(String.format("%d, %d, %d, ",
-                               timeslot,
-                               instant.get(DateTimeFieldType.dayOfWeek()),
-                               instant.get(DateTimeFieldType.hourOfDay())));
+      data.print(timeslot).print(", ")
+          .print(instant.get(DateTimeFieldType.dayOfWeek())).print(", ")
+          .print(instant.get(DateTimeFieldType.hourOfDay())).print(", ");
       // print customer usage, production
-      data.println(String.format("%s, %s", df.format(produced), df.format(used)));
-      produced = 0.0;
-      used = 0.0;
+      double produced = 0.0;
+      double used = 0.0;
+      if (customerSlot >= 0) {
+        produced = period.getCustomer(customerSlot, DemandIndex.produced);
+        used = period.getCustomer(customerSlot, DemandIndex.consumed);
+      }
+      data.print(produced).print(", ").print(used).println();
     }
     else {
-      // iterate through the map
-      for (CustomerInfo cust: customers) {
-        data.format("{'name':%s,'net':%s,'cost':%s},",
-                    cust.getName(),
-                    df.format(customerNet.get(cust)),
-                    df.format(customerCost.get(cust)));
+      // one entry per column
+      for (int i = 0; i < columns.length; i++) {
+        int slot = columns[i];
+        double net = period.getCustomer(slot, DemandIndex.produced)
+            + period.getCustomer(slot, DemandIndex.consumed);
+        double cost = period.getCustomer(slot, DemandIndex.productionCharge)
+            + period.getCustomer(slot, DemandIndex.consumptionCharge);
+        data.print(columnPrefix[i]).print(net)
+            .print(",'cost':").print(cost).print("},");
       }
       data.println();
-      clearCustomerData();
     }
   }
 
-  private void clearCustomerData ()
-  {
-    customerNet.replaceAll((k, v) -> 0.0);
-    customerCost.replaceAll((k, v) -> 0.0);
-  }
-
   private int skip = 1;
   // catch TimeslotUpdate events
   public void handleMessage (TimeslotUpdate msg)
   {
     if (started)
-      if (skip > 0) {
+      if (skip > 0)
         skip -= 1;
-        clearCustomerData();
-      }
       else
-        summarizeTimeslot(msg.getPostedTime());
-  }
-
-  // catch TariffTransactions
-  public void handleMessage (TariffTransaction tx)
-  {
-    if (single) {
-      if (tx.getCustomerInfo() != customer)
-        return;
-      if (tx.getTxType() == Type.CONSUME) {
-        used += tx.getKWh();
-      }
-      else if (tx.getTxType() == Type.PRODUCE) {
-        produced += tx.getKWh();
-      }      
-    }
-    else {
-      if (!(tx.getTxType() == Type.CONSUME || tx.getTxType() == Type.PRODUCE))
-        return;
-      CustomerInfo cust = tx.getCustomerInfo();
-      customerNet.put(cust, customerNet.get(cust) + tx.getKWh());
-      customerCost.put(cust, customerCost.get(cust) + tx.getCharge());
-    }
-
+        summarizeTimeslot(msg.getPostedTime(), demand.getPeriod(msg));
   }
 
   // catch SimStart and SimEnd messages
@@ -259,14 +229,16 @@ implements Analyzer
   {
     System.out.println("Sim end");
     report();
+    started = false;
   }
 
-  // find our customer
+  // give each customer its column as it arrives, and find our customer
   public void handleMessage (CustomerInfo ci)
   {
+    int slot = demand.getCustomerSlot(ci);
     if (single && customerName.equals(ci.getName())) {
       //System.out.println("Found " + customerName);
-      customer = ci;
+      customerSlot = slot;
     }
   }
 }
@@ -27,7 +27,6 @@ import org.apache.logging.log4j.LogManager;
 import org.powertac.common.CustomerInfo;
 import org.powertac.common.enumerations.PowerType;
 import org.powertac.common.repo.CustomerRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -39,7 +38,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class CustomerStats
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(CustomerStats.class.getName());
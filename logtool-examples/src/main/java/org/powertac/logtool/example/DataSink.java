@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.IOException;
+import java.text.NumberFormat;
+import java.util.List;
+
+/**
+ * Destination for the rows of data produced by an analyzer. The columns
+ * are declared when the sink is opened, and each row is written by putting
+ * one value per column, in order, followed by endRow().
+ *
+ * Whether the data is written as csv text or in the compact columnar format
+ * read by ColumnarReader depends on the name of the output file: names
+ * ending in ".ptcol" get the columnar format, and anything else gets csv.
+ */
+public interface DataSink
+{
+  /**
+   * Column data types. A VECTOR value is an array of doubles, whose
+   * length may differ from row to row.
+   */
+  public enum Type
+  {
+    INT, LONG, DOUBLE, STRING, VECTOR
+  }
+
+  /**
+   * A named, typed column.
+   */
+  public static class Column
+  {
+    private String name;
+    private Type type;
+
+    public Column (String name, Type type)
+    {
+      super();
+      this.name = name;
+      this.type = type;
+    }
+
+    public String getName ()
+    {
+      return name;
+    }
+
+    public Type getType ()
+    {
+      return type;
+    }
+  }
+
+  /**
+   * Opens a sink for the given file. For csv output, doubles are formatted
+   * with the given format, and the column names are written as the first
+   * line unless header is false.
+   */
+  public static DataSink open (String filename, List<Column> columns,
+                               NumberFormat format, boolean header)
+    throws IOException
+  {
+    if (ColumnarSink.isColumnar(filename))
+      return new ColumnarSink(filename, columns);
+    return new CsvSink(filename, columns, format, header);
+  }
+
+  /**
+   * Opens a sink that appends rows to an existing file written by a sink
+   * with the same columns. No header is written.
+   */
+  public static DataSink append (String filename, List<Column> columns,
+                                 NumberFormat format)
+    throws IOException
+  {
+    if (ColumnarSink.isColumnar(filename))
+      return ColumnarSink.append(filename, columns);
+    return CsvSink.append(filename, columns, format);
+  }
+
+  public DataSink putInt (int value);
+
+  public DataSink putLong (long value);
+
+  public DataSink putDouble (double value);
+
+  public DataSink putString (String value);
+
+  /**
+   * Puts an array of doubles. The sink keeps its own copy.
+   */
+  public DataSink putVector (double[] value);
+
+  /**
+   * Ends the current row. Every column must have been given a value.
+   */
+  public void endRow ();
+
+  /**
+   * Writes out all the completed rows, so that the file can be read or
+   * copied as it stands.
+   */
+  public void flush ();
+
+  /**
+   * Writes out anything still buffered and closes the file.
+   */
+  public void close ();
+}
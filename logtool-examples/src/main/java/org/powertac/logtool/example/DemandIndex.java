@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.powertac.common.CustomerInfo;
+import org.powertac.common.TariffTransaction;
+import org.powertac.common.enumerations.PowerType;
+import org.powertac.common.msg.TimeslotUpdate;
+import org.powertac.logtool.common.DomainObjectReader;
+import org.powertac.logtool.common.NewObjectListener;
+
+/**
+ * Adds up the CONSUME and PRODUCE tariff transactions of each period
+ * between two TimeslotUpdates, in total, by retail broker, by customer
+ * and by power type, so that analyzers of production and consumption do
+ * not each have to keep their own maps. Each transaction is classified
+ * once, and the sums are kept in arrays by BrokerIndex index, customer
+ * slot (in the order customers are first seen) and power type slot.
+ *
+ * For each entry there are four values: consumption and production in
+ * kWh, and the charges for them, with the signs of the transactions.
+ * An analyzer gets the sums for the period that has just ended by passing
+ * the TimeslotUpdate it is handling to getPeriod(); this works whether or
+ * not the index has seen the update yet. Only the period that has just
+ * ended and the one in progress are kept.
+ *
+ * Get one with AnalyzerContext.getDemandIndex() in setup(), so that
+ * analyzers run together by MultiAnalyzer share a single index.
+ */
+public class DemandIndex
+{
+  public static final int consumed = 0;
+  public static final int produced = 1;
+  public static final int consumptionCharge = 2;
+  public static final int productionCharge = 3;
+  static final int width = 4;
+
+  private BrokerIndex brokerIndex;
+
+  // customers by slot
+  private LongIndex customerIds = new LongIndex(256);
+  private List<CustomerInfo> customers = new ArrayList<>();
+
+  // power types by slot
+  private List<PowerType> powerTypes = new ArrayList<>();
+
+  private Period open = new Period();
+  private Period closed = new Period();
+
+  public DemandIndex (BrokerIndex brokerIndex, DomainObjectReader dor)
+  {
+    super();
+    this.brokerIndex = brokerIndex;
+    dor.registerNewObjectListener(new TariffTxHandler(),
+                                  TariffTransaction.class);
+    dor.registerNewObjectListener(new TimeslotUpdateHandler(),
+                                  TimeslotUpdate.class);
+  }
+
+  public BrokerIndex getBrokerIndex ()
+  {
+    return brokerIndex;
+  }
+
+  /**
+   * Number of customers seen so far, which is also one more than the
+   * highest customer slot.
+   */
+  public int getCustomerCount ()
+  {
+    return customers.size();
+  }
+
+  public CustomerInfo getCustomer (int slot)
+  {
+    return customers.get(slot);
+  }
+
+  /**
+   * Returns the slot of the given customer, giving it one if it has none.
+   */
+  public int getCustomerSlot (CustomerInfo customer)
+  {
+    int known = customerIds.size();
+    int slot = customerIds.add(customer.getId());
+    if (slot == known)
+      customers.add(customer);
+    return slot;
+  }
+
+  /**
+   * Returns the sums for the period ended by the given update.
+   */
+  public Period getPeriod (TimeslotUpdate update)
+  {
+    if (closed.endedBy == update)
+      return closed;
+    return open;
+  }
+
+  private int getPowerTypeSlot (PowerType type)
+  {
+    int slot = powerTypes.indexOf(type);
+    if (slot < 0) {
+      slot = powerTypes.size();
+      powerTypes.add(type);
+    }
+    return slot;
+  }
+
+  // -----------------------------------
+  // catch TariffTransactions
+  class TariffTxHandler implements NewObjectListener
+  {
+    @Override
+    public void handleNewObject (Object thing)
+    {
+      TariffTransaction tx = (TariffTransaction) thing;
+      int qty;
+      int charge;
+      if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
+        qty = consumed;
+        charge = consumptionCharge;
+      }
+      else if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
+        qty = produced;
+        charge = productionCharge;
+      }
+      else {
+        return;
+      }
+      int customerSlot = -1;
+      int typeSlot = -1;
+      CustomerInfo customer = tx.getCustomerInfo();
+      if (null != customer) {
+        customerSlot = getCustomerSlot(customer);
+        typeSlot = getPowerTypeSlot(customer.getPowerType());
+      }
+      open.add(brokerIndex.indexOf(tx.getBroker()), customerSlot, typeSlot,
+               qty, tx.getKWh(), charge, tx.getCharge());
+    }
+  }
+
+  // -----------------------------------
+  // close the period in progress
+  class TimeslotUpdateHandler implements NewObjectListener
+  {
+    @Override
+    public void handleNewObject (Object thing)
+    {
+      Period done = open;
+      done.endedBy = thing;
+      open = closed;
+      open.clear();
+      closed = done;
+    }
+  }
+
+  /**
+   * Sums for one period. Values for a broker, customer or power type that
+   * had no transactions in the period are zero.
+   */
+  public class Period
+  {
+    private Object endedBy = null;
+    private double[] total = new double[width];
+    private double[] brokerValues = new double[width * 8];
+    private double[] customerValues = new double[width * 256];
+    private double[] typeValues = new double[width * 16];
+
+    Period ()
+    {
+      super();
+    }
+
+    public double getTotal (int field)
+    {
+      return total[field];
+    }
+
+    /**
+     * Value for the broker with the given BrokerIndex index.
+     */
+    public double getBroker (int index, int field)
+    {
+      return get(brokerValues, index, field);
+    }
+
+    /**
+     * Value for the customer in the given slot.
+     */
+    public double getCustomer (int slot, int field)
+    {
+      return get(customerValues, slot, field);
+    }
+
+    public double getPowerType (PowerType type, int field)
+    {
+      int slot = powerTypes.indexOf(type);
+      if (slot < 0)
+        return 0.0;
+      return get(typeValues, slot, field);
+    }
+
+    private double get (double[] values, int slot, int field)
+    {
+      int offset = slot * width + field;
+      if (offset >= values.length)
+        return 0.0;
+      return values[offset];
+    }
+
+    // Adds a transaction to the total and to the values for its broker,
+    // customer and power type; slots of -1 are skipped
+    private void add (int broker, int customer, int type,
+                      int qty, double kWh, int charge, double money)
+    {
+      total[qty] += kWh;
+      total[charge] += money;
+      if (broker >= 0) {
+        brokerValues = grow(brokerValues, broker);
+        brokerValues[broker * width + qty] += kWh;
+        brokerValues[broker * width + charge] += money;
+      }
+      if (customer >= 0) {
+        customerValues = grow(customerValues, customer);
+        customerValues[customer * width + qty] += kWh;
+        customerValues[customer * width + charge] += money;
+      }
+      if (type >= 0) {
+        typeValues = grow(typeValues, type);
+        typeValues[type * width + qty] += kWh;
+        typeValues[type * width + charge] += money;
+      }
+    }
+
+    private double[] grow (double[] values, int slot)
+    {
+      int end = (slot + 1) * width;
+      if (end <= values.length)
+        return values;
+      return Arrays.copyOf(values, Math.max(values.length * 2, end));
+    }
+
+    private void clear ()
+    {
+      endedBy = null;
+      Arrays.fill(total, 0.0);
+      Arrays.fill(brokerValues, 0.0);
+      Arrays.fill(customerValues, 0.0);
+      Arrays.fill(typeValues, 0.0);
+    }
+  }
+}
@@ -29,7 +29,6 @@ import org.powertac.common.msg.SimEnd;
 import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 //import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -47,7 +46,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class DemandResponseStats
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   //static private Logger log = LogManager.getLogger(DemandResponseStats.class.getName());
@@ -15,9 +15,7 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.HashMap;
 
 import org.apache.logging.log4j.Logger;
@@ -30,7 +28,6 @@ import org.powertac.common.TariffTransaction;
 import org.powertac.common.msg.BalanceReport;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.common.DomainObjectReader;
 import org.powertac.logtool.common.NewObjectListener;
 import org.powertac.logtool.ifc.Analyzer;
@@ -74,7 +71,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class EnergyMixStats
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(EnergyMixStats.class.getName());
@@ -103,7 +100,7 @@ implements Analyzer
   private QtyCost totalImbalance;
 
   // data output file
-  private PrintWriter data = null;
+  private RowWriter data = null;
   private String dataFilename = "data.txt";
   private boolean dataInit = false;
 
@@ -158,9 +155,9 @@ implements Analyzer
   {
     mktTxSummary = new HashMap<Integer, QtyCost>();
     try {
-      data = new PrintWriter(new File(dataFilename));
+      data = new RowWriter(dataFilename, df);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       // TODO Auto-generated catch block
       e.printStackTrace();
     }
@@ -173,21 +170,14 @@ implements Analyzer
   {
     System.out.println("Game " + Competition.currentCompetition().getName()
                        + ", " + timeslot + " timeslots");
-    data.print("Summary, ");
-    data.println(String
-                 .format("%s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s, %s",
-                         df.format(totalImports.quantity),
-                         df.format(totalImports.cost),
-                         df.format(totalUsed.quantity),
-                         df.format(totalUsed.cost),
-                         df.format(totalProduced.quantity),
-                         df.format(totalProduced.cost),
-                         df.format(totalUp.quantity),
-                         df.format(totalUp.cost),
-                         df.format(totalDown.quantity),
-                         df.format(totalDown.cost),
-                         df.format(totalImbalance.quantity),
-                         df.format(totalImbalance.cost)));
+    data.print("Summary");
+    printQtyCost(totalImports);
+    printQtyCost(totalUsed);
+    printQtyCost(totalProduced);
+    printQtyCost(totalUp);
+    printQtyCost(totalDown);
+    printQtyCost(totalImbalance);
+    data.println();
     data.close();
   }
 
@@ -205,8 +195,9 @@ implements Analyzer
         data.print("game, ");
         game = Competition.currentCompetition().getName();
       }
-      data.println("slot, import, cost, cons, revenue, prod, cost, "
-                   + "up-reg, cost, down-reg, revenue, imbalance, cost");
+      data.print("slot, import, cost, cons, revenue, prod, cost, "
+                 + "up-reg, cost, down-reg, revenue, imbalance, cost")
+          .println();
       initSummaryData();
       dataInit = true;
       return;
@@ -219,44 +210,42 @@ implements Analyzer
 
     // optionally print game id
     if (printGameid) {
-      data.print(game + ", ");
+      data.print(game).print(", ");
     }
     // print timeslot index
-    data.print(timeslot + ", ");
+    data.print(timeslot);
     // print market data
     QtyCost mktData = mktTxSummary.get(timeslot);
     if (null != mktData) {
-      data.print(String.format("%s, %s, ",
-                               df.format(mktData.quantity),
-                               df.format(mktData.cost)));
+      printQtyCost(mktData);
       totalImports.add(mktData);
     }
     else {
-      data.print("0.0, 0.0, ");
+      data.print(", 0.0, 0.0");
     }
     // print customer usage, production
-    data.print(String.format("%s, %s, %s, %s, ",
-                             df.format(used.quantity),
-                             df.format(used.cost),
-                             df.format(produced.quantity),
-                             df.format(produced.cost)));
+    printQtyCost(used);
+    printQtyCost(produced);
     totalUsed.add(used);
     totalProduced.add(produced);
     // print regulation usage, production
-    data.print(String.format("%s, %s, %s, %s, ",
-                             df.format(upRegulation.quantity),
-                             df.format(upRegulation.cost),
-                             df.format(downRegulation.quantity),
-                             df.format(downRegulation.cost)));
+    printQtyCost(upRegulation);
+    printQtyCost(downRegulation);
     totalUp.add(upRegulation);
     totalDown.add(downRegulation);
     // print balance volume, cost
-    data.println(String.format("%s, %s",
-                               df.format(balanceEnergy.quantity),
-                               df.format(balanceEnergy.cost)));
+    printQtyCost(balanceEnergy);
+    data.println();
     totalImbalance.add(balanceEnergy);
   }
 
+  // Prints ", quantity, cost"
+  private void printQtyCost (QtyCost qc)
+  {
+    data.print(", ").print(qc.quantity)
+        .print(", ").print(qc.cost);
+  }
+
   private void initSummaryData ()
   {
     totalImports = new QtyCost();
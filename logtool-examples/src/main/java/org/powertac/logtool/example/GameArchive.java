@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+/**
+ * Streams the logs of a game directly out of the compressed tar archive
+ * written by the tournament scripts, such as game-3-sim-logs.tar.gz, without
+ * unpacking it. Such an archive contains log/powertac-sim-3.state and
+ * log/powertac-sim-3.trace, along with the boot logs, which are ignored.
+ */
+public class GameArchive
+{
+  private static final int bufferSize = 1 << 16;
+
+  /**
+   * True just in case the given file name looks like a compressed
+   * tar archive.
+   */
+  public static boolean isArchive (String filename)
+  {
+    return filename.endsWith(".tar.gz") || filename.endsWith(".tgz");
+  }
+
+  /**
+   * Opens the sim state log in the given archive.
+   */
+  public static InputStream openStateLog (String archive) throws IOException
+  {
+    return openLog(archive, ".state");
+  }
+
+  /**
+   * Opens the sim trace log in the given archive.
+   */
+  public static InputStream openTraceLog (String archive) throws IOException
+  {
+    return openLog(archive, ".trace");
+  }
+
+  // Returns the archive stream positioned at the start of the first sim log
+  // entry with the given suffix. Closing the result closes the archive.
+  private static InputStream openLog (String archive, String suffix)
+    throws IOException
+  {
+    TarArchiveInputStream tar =
+        new TarArchiveInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(archive),
+                                                                              bufferSize),
+                                                      bufferSize));
+    try {
+      TarArchiveEntry entry;
+      while (null != (entry = tar.getNextEntry())) {
+        if (entry.isFile() && isSimLog(entry.getName(), suffix))
+          return tar;
+      }
+    }
+    catch (IOException ioe) {
+      tar.close();
+      throw ioe;
+    }
+    tar.close();
+    throw new FileNotFoundException("No " + suffix + " log in " + archive);
+  }
+
+  // Sim logs are in the log directory, not in boot-log, and the
+  // init.state log is not a sim log
+  private static boolean isSimLog (String name, String suffix)
+  {
+    if (!name.endsWith(suffix) || name.endsWith("init" + suffix))
+      return false;
+    return name.startsWith("log/") || name.contains("/log/");
+  }
+}
@@ -23,7 +23,6 @@ import java.util.HashMap;
 import org.powertac.common.Broker;
 import org.powertac.common.Competition;
 import org.powertac.common.msg.TimeslotUpdate;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -40,7 +39,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class GameBrokerInfo
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   //static private Logger log = Logger.getLogger(GameBrokerInfo.class.getName());
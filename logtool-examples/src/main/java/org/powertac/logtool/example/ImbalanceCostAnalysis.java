@@ -38,7 +38,6 @@ import org.powertac.common.msg.SimEnd;
 import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BootstrapDataRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -64,7 +63,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class ImbalanceCostAnalysis
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log =
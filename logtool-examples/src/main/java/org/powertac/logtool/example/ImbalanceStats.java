@@ -18,8 +18,7 @@ package org.powertac.logtool.example;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -30,9 +29,7 @@ import org.powertac.common.Competition;
 import org.powertac.common.TariffTransaction;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BrokerRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
-import org.powertac.util.Pair;
 
 /**
  * Example analysis class.
@@ -49,31 +46,38 @@ import org.powertac.util.Pair;
  * 
  * The data file contains per-timeslot imbalance for each broker, along with
  * aggregate imbalance and overall consumption.
+ *
+ * Summary statistics are accumulated as each timeslot is written, so
+ * nothing is kept from one timeslot to the next except the running totals.
  * 
  * @author John Collins
  */
 public class ImbalanceStats
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(ImbalanceStats.class.getName());
 
   private BrokerRepo brokerRepo;
+  private BrokerIndex brokerIndex;
+  private int brokerCount = -1;
 
-  // list of BalancingTransactions for current timeslot
-  private HashMap<Broker, BalancingTransaction> btx;
-  private HashMap<Broker, ArrayList<TariffTransaction>> ttx;
+  // balancing and consumption for the current timeslot, by broker index
+  private double[] balancingQty;
+  private double[] balancingCharge;
+  private double[] consumptionQty;
 
-  // daily total imbalances, indexed by timeslot
+  // per-timeslot total imbalance
   private int timeslot = 0;
   private int tsIndex = 0; // actual timeslot index 
-  private ArrayList<Double> dailyImbalance;
-
-  // daily per-broker imbalance, cost
-  private HashMap<Broker, ArrayList<Pair<Double, Double>>> dailyBrokerImbalance;
+  private RunningStats totalStats = new RunningStats();
 
-  // daily tariff transactions
-  private HashMap<Broker, ArrayList<ArrayList<TariffTransaction>>> dailyTraffic;
+  // per-timeslot broker imbalance, and totals of cost, contribution to
+  // total imbalance and consumption, by broker index
+  private RunningStats[] brokerStats;
+  private double[] brokerCost;
+  private double[] brokerContribution;
+  private double[] brokerDelivered;
 
   // data output file
   private PrintWriter data = null;
@@ -129,11 +133,7 @@ implements Analyzer
   public void setup ()
   {
     brokerRepo = (BrokerRepo) getBean("brokerRepo");
-    btx = new HashMap<Broker, BalancingTransaction>();
-    ttx = new HashMap<Broker, ArrayList<TariffTransaction>>();
-    dailyImbalance = new ArrayList<Double>();
-    dailyBrokerImbalance = new HashMap<Broker, ArrayList<Pair<Double, Double>>>();
-    dailyTraffic = new HashMap<Broker, ArrayList<ArrayList<TariffTransaction>>>();
+    brokerIndex = getBrokerIndex();
 
     try {
       data = new PrintWriter(new File(dataFilename));
@@ -148,20 +148,12 @@ implements Analyzer
   public void report ()
   {
     data.close();
-    // compute RMS imbalance
-    double sum = 0.0;
-    double sumsq = 0.0;
-    for (Double imbalance : dailyImbalance) {
-      sum += imbalance;
-      sumsq += imbalance * imbalance;
-    }
     System.out.println("Game " + Competition.currentCompetition().getName()
                        + ", " + timeslot + " timeslots");
-    System.out.println("Total imbalance = " + sum);
-    System.out.println("RMS imbalance = "
-                       + Math.sqrt(sumsq / dailyImbalance.size()));
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      reportBrokerImbalance(broker);
+    System.out.println("Total imbalance = " + totalStats.getSum());
+    System.out.println("RMS imbalance = " + totalStats.getRms());
+    for (int i = 0; i < brokerCount; i++) {
+      reportBrokerImbalance(i);
     }
   }
   
@@ -169,34 +161,19 @@ implements Analyzer
   // Results include RMS imbalance, average imbalance,
   // total imbalance cost, and mean contribution to total
   // imbalance
-  private void reportBrokerImbalance (Broker broker)
+  private void reportBrokerImbalance (int index)
   {
-    double sumsq = 0.0;
-    double imbalanceSum = 0.0;
-    double deliveredSum = 0.0;
-    double contributionSum = 0.0;
-    double cost = 0.0;
-    ArrayList<Pair<Double, Double>> brokerRecord =
-            dailyBrokerImbalance.get(broker);
-    ArrayList<ArrayList<TariffTransaction>> deliveries =
-            dailyTraffic.get(broker);
-    for (int i = 0; i < dailyImbalance.size(); i++) {
-      double total = dailyImbalance.get(i);
-      double individual = brokerRecord.get(i).car();
-      sumsq += individual * individual;
-      imbalanceSum += individual;
-      double sgn = Math.signum(individual) * Math.signum(total);
-      contributionSum += Math.abs(individual) * sgn;
-      cost += brokerRecord.get(i).cdr();
-      for (TariffTransaction tx : deliveries.get(i))
-        deliveredSum += tx.getKWh();
-    }
-    int count = dailyImbalance.size();
-    System.out.println("Broker " + broker.getUsername()
-                       + "\n  RMS imbalance = " + Math.sqrt(sumsq / count)
+    RunningStats stats = brokerStats[index];
+    double imbalanceSum = stats.getSum();
+    double cost = brokerCost[index];
+    long count = stats.getCount();
+    System.out.println("Broker " + brokerIndex.get(index).getUsername()
+                       + "\n  RMS imbalance = " + stats.getRms()
                        + "\n  mean imbalance = " + imbalanceSum / count
-                       + "\n  imbalance ratio = " + imbalanceSum / deliveredSum
-                       + "\n  mean contribution = " + contributionSum / count
+                       + "\n  imbalance ratio = "
+                       + imbalanceSum / brokerDelivered[index]
+                       + "\n  mean contribution = "
+                       + brokerContribution[index] / count
                        + "\n  mean cost = " + cost / count
                        + "(" + cost / imbalanceSum + "/kwh)");
   }
@@ -209,15 +186,9 @@ implements Analyzer
   private void summarizeTimeslot ()
   {
     // skip initial timeslot(s) without data, initialize data structures
-    if (0 == btx.size() && 0 == dailyImbalance.size()) {
-      initTxList();
+    if (brokerCount < 0) {
+      initBrokers();
       initData();
-      for (Broker broker : brokerRepo.findRetailBrokers()) {
-        dailyBrokerImbalance.put(broker,
-                                 new ArrayList<Pair<Double, Double>>());
-        dailyTraffic.put(broker,
-                         new ArrayList<ArrayList<TariffTransaction>>());
-      }
       return;
     }
 
@@ -226,59 +197,56 @@ implements Analyzer
     double totalConsumption = 0.0;
     // start with game ID and timeslot
     data.printf("%s,%d", competition.getName(), tsIndex);
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      // capture summary data for printout
-      double balancingQty = 0.0;
-      double consumptionQty = 0.0;
-      // balancing tx first
-      BalancingTransaction bx = btx.get(broker);
-      ArrayList<Pair<Double, Double>> entries = dailyBrokerImbalance.get(broker);
-      if (null == bx) {
-        // zero entries
-        entries.add(new Pair<Double, Double>(0.0, 0.0));
-        data.print("," + "0.0");
-      }
-      else {
-        entries.add(new Pair<Double, Double>(bx.getKWh(), bx.getCharge()));
-        balancingQty = bx.getKWh();
-        data.print("," + balancingQty);
-        totalImbalance += bx.getKWh();
-      }
-      // tariff tx next
-      ArrayList<TariffTransaction> txs = ttx.get(broker);
-      ArrayList<ArrayList<TariffTransaction>> dailyTxs = 
-              dailyTraffic.get(broker);
-      if (null == txs) {
-        dailyTxs.add(new ArrayList<TariffTransaction>());
-      }
-      else {
-        for (TariffTransaction consumption : txs)
-          consumptionQty += consumption.getKWh();
-        totalConsumption += consumptionQty;
-        dailyTxs.add(txs);
-        ttx.put(broker, null);
-      }
-      //log.info("ts " + timeslot + ", broker " + broker.getUsername()
-      //         + ": consumption = " + consumptionQty
-      //         + ", balance qty = " + balancingQty);
+    for (int i = 0; i < brokerCount; i++) {
+      data.print("," + balancingQty[i]);
+      totalImbalance += balancingQty[i];
+      brokerStats[i].add(balancingQty[i]);
+      brokerCost[i] += balancingCharge[i];
+      totalConsumption += consumptionQty[i];
+      brokerDelivered[i] += consumptionQty[i];
     }
-    dailyImbalance.add(totalImbalance);
+    // contribution to total depends on the sign of the total
+    for (int i = 0; i < brokerCount; i++) {
+      double sgn = Math.signum(balancingQty[i]) * Math.signum(totalImbalance);
+      brokerContribution[i] += Math.abs(balancingQty[i]) * sgn;
+    }
+    totalStats.add(totalImbalance);
     data.println("," + totalImbalance + "," + totalConsumption);
     timeslot += 1;
-    initTxList();
+    clearTimeslot();
   }
 
-  private void initTxList ()
+  // Sets up the per-broker data for the brokers known at the start
+  private void initBrokers ()
   {
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      btx.put(broker, null);
-      ArrayList<TariffTransaction> txList = ttx.get(broker);
-      if (null == txList) {
-        txList = new ArrayList<TariffTransaction>();
-        ttx.put(broker, txList);
-      }
-      txList.clear();
-    }
+    brokerCount = brokerIndex.size();
+    balancingQty = new double[brokerCount];
+    balancingCharge = new double[brokerCount];
+    consumptionQty = new double[brokerCount];
+    brokerStats = new RunningStats[brokerCount];
+    for (int i = 0; i < brokerCount; i++)
+      brokerStats[i] = new RunningStats();
+    brokerCost = new double[brokerCount];
+    brokerContribution = new double[brokerCount];
+    brokerDelivered = new double[brokerCount];
+  }
+
+  private void clearTimeslot ()
+  {
+    Arrays.fill(balancingQty, 0.0);
+    Arrays.fill(balancingCharge, 0.0);
+    Arrays.fill(consumptionQty, 0.0);
+  }
+
+  // Returns the index of a broker in the per-broker arrays, or -1
+  private int getIndex (Broker broker)
+  {
+    if (brokerCount < 0)
+      return -1;
+    int index = brokerIndex.indexOf(broker);
+    if (index >= brokerCount)
+      return -1;
+    return index;
   }
   
   private void initData ()
@@ -286,8 +254,8 @@ implements Analyzer
     if (dataInit || null == data)
       return;
     data.print("game-id,timeslot");
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      data.print("," + broker.getUsername());
+    for (int i = 0; i < brokerCount; i++) {
+      data.print("," + brokerIndex.get(i).getUsername());
     }
     data.println(",imbalance,consumption");
     dataInit = true;
@@ -297,7 +265,11 @@ implements Analyzer
   // catch BalancingTransactions
   public void handleMessage (BalancingTransaction tx)
   {
-    btx.put(tx.getBroker(), tx);
+    int index = getIndex(tx.getBroker());
+    if (index < 0)
+      return;
+    balancingQty[index] = tx.getKWh();
+    balancingCharge[index] = tx.getCharge();
   } 
 
   // -----------------------------------
@@ -307,12 +279,9 @@ implements Analyzer
     // only include consumption
     if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
       //|| tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-      ArrayList<TariffTransaction> txList = ttx.get(tx.getBroker());
-      if (null == txList) {
-        txList = new ArrayList<TariffTransaction>();
-        ttx.put(tx.getBroker(), txList);
-      }
-      txList.add(tx);
+      int index = getIndex(tx.getBroker());
+      if (index >= 0)
+        consumptionQty[index] += tx.getKWh();
     }
   }
 
@@ -15,15 +15,17 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
+import org.joda.time.DateTime;
 import org.powertac.common.BalancingTransaction;
 import org.powertac.common.Broker;
 import org.powertac.common.Competition;
@@ -32,7 +34,7 @@ import org.powertac.common.msg.SimEnd;
 import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BrokerRepo;
-import org.powertac.logtool.LogtoolContext;
+import org.powertac.common.repo.TimeslotRepo;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -58,31 +60,64 @@ import org.powertac.logtool.ifc.Analyzer;
  *  broker-name,c_broker,cr_broker,p_broker,pr_broker,i_broker,i_rms-broker,ir_broker
  * where the fields are per-broker versions of the aggregate data.
  * 
+ * With --windows w1,w2,..., the same figures are also broken down by the
+ * windows given, each written to the output file name followed by '.' and
+ * the window name. The windows are
+ *   hod: by hour of day, with rows game-id,broker,hod,c,... for each hour
+ *   dow: by day of week (1 is Monday), with rows game-id,broker,dow,c,...
+ *   rollingN: over the last N timeslots, with rows game-id,broker,ts,c,...
+ *     for each timeslot ts, written as the log is read
+ * where the remaining fields are as in the per-broker section, and the
+ * broker field is empty in the row for all brokers together. As in the
+ * first section, the rms imbalance for all brokers together is taken
+ * over broker-timeslots. All windows are computed in the same pass. Each
+ * window may be given once, and at most one rollingN window is allowed.
+ * 
  * NOTE: Numeric data is formatted using the US locale in order to avoid confusion over
  * the meaning of the comma character when used in other locales.
  * 
  * @author John Collins
  */
 public class ImbalanceSummary
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(ImbalanceSummary.class.getName());
 
   private BrokerRepo brokerRepo;
+  private TimeslotRepo timeslotRepo;
+  private BrokerIndex brokerIndex;
+
+  // per-timeslot values, width per broker
+  private static final int consumption = 0;
+  private static final int income = 1;
+  private static final int production = 2;
+  private static final int expense = 3;
+  private static final int imbalance = 4;
+  private static final int imbalanceSumSq = 5;
+  private static final int imbalanceCost = 6;
+  static final int width = 7;
 
-  // Transactions for current timeslot
-  private HashMap<Broker, BalancingTransaction> btx = null;
-  private HashMap<Broker, ArrayList<TariffTransaction>> ttx = null;
+  // values for the current timeslot, by broker index; null until the
+  // brokers are known
+  private int brokerCount = 0;
+  private double[] current = null;
 
-  // hourly data, indexed by timeslot
+  // rollups have a row for each broker, and one for all brokers together
   private int timeslot = 0;
-  private ArrayList<TimeslotData> aggregateData;
-  private HashMap<Broker, ArrayList<TimeslotData>> hourlyData;
+  private int tsIndex = 0;
+  private Rollup game;
+  private List<Rollup> rollups = new ArrayList<>();
+  private List<String> windows = new ArrayList<>();
   private int skip = 1;
 
+  // rolling window over the last rollingLength timeslots
+  private int rollingLength = 0;
+  private TimeslotRing rolling;
+  private RowWriter rollingData = null;
+
   // data output file
-  private PrintWriter data = null;
+  private RowWriter data = null;
   private String dataFilename = "data.txt";
 
   /**
@@ -104,16 +139,55 @@ implements Analyzer
   }
   
   /**
-   * Takes two args, input filename and output filename
+   * Takes two args, input filename and output filename, optionally
+   * preceded by --windows and a list of windows
    */
   private void cli (String[] args)
   {
-    if (args.length != 2) {
-      System.out.println("Usage: <analyzer> input-file output-file");
+    int offset = 0;
+    if (args.length == 4 && "--windows".equals(args[0])) {
+      windows.addAll(Arrays.asList(args[1].split(",")));
+      offset = 2;
+    }
+    else if (args.length != 2) {
+      System.out.println("Usage: <analyzer> [--windows hod,dow,rollingN] input-file output-file");
       return;
     }
-    dataFilename = args[1];
-    super.cli(args[0], this);
+    // each window writes its own file, and there is one rolling window
+    Set<String> seen = new HashSet<>();
+    int rollingCount = 0;
+    for (String window: windows) {
+      if (null == Rollup.Window.forLabel(window)
+          && parseRolling(window) < 1) {
+        System.out.println("Unknown window " + window);
+        return;
+      }
+      if (!seen.add(window)) {
+        System.out.println("Duplicate window " + window);
+        return;
+      }
+      if (parseRolling(window) > 0)
+        rollingCount += 1;
+    }
+    if (rollingCount > 1) {
+      System.out.println("At most one rollingN window is allowed");
+      return;
+    }
+    dataFilename = args[1 + offset];
+    super.cli(args[offset], this);
+  }
+
+  // Returns N for rollingN, or 0
+  private int parseRolling (String window)
+  {
+    if (!window.startsWith("rolling"))
+      return 0;
+    try {
+      return Integer.parseInt(window.substring("rolling".length()));
+    }
+    catch (NumberFormatException nfe) {
+      return 0;
+    }
   }
 
   /**
@@ -125,10 +199,12 @@ implements Analyzer
   public void setup ()
   {
     brokerRepo = (BrokerRepo) getBean("brokerRepo");
+    timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
+    brokerIndex = getBrokerIndex();
     try {
-      data = new PrintWriter(new File(dataFilename));
+      data = new RowWriter(dataFilename, df);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       log.error("Cannot open file " + dataFilename);
     }
   }
@@ -136,43 +212,74 @@ implements Analyzer
   @Override
   public void report ()
   {
-    TimeslotData totals = new TimeslotData();
-    for (TimeslotData tsData: aggregateData) {
-      totals.add(tsData);
-    }
-    double rms = Math.sqrt(totals.imbalanceSumSq / aggregateData.size());
+    int total = brokerCount;
+    double rms = Math.sqrt(game.get(total, 0, imbalanceSumSq)
+                           / game.getCount(total, 0));
     System.out.println("Game " + Competition.currentCompetition().getName()
                        + ", " + timeslot + " timeslots");
-    System.out.println("Total imbalance = " + totals.imbalance);
+    System.out.println("Total imbalance = " + game.get(total, 0, imbalance));
     System.out.println("RMS imbalance = " + rms);
-    data.println("game-id,n_brokers,c_total,cr_total,p_total,pr_total,i_total,i_rms,ir_total");
-    data.print(String.format("%s,%d,",
-                             Competition.currentCompetition().getName(),
-                             hourlyData.size() - 1));
-    data.println(totals.formatWithRms(rms));
+    data.print("game-id,n_brokers,c_total,cr_total,p_total,pr_total,i_total,i_rms,ir_total")
+        .println();
+    data.print(Competition.currentCompetition().getName()).print(',')
+        .print(brokerCount - 1).print(',');
+    printWithRms(data, game, total, 0);
     data.println();
 
-    data.println("broker,c,c_revenue,p,p_revenue,imb,imb_rms,imb_revenue");
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      reportByBroker(broker);
+    data.print("broker,c,c_revenue,p,p_revenue,imb,imb_rms,imb_revenue")
+        .println();
+    for (int i = 0; i < brokerCount; i++) {
+      data.print(brokerIndex.get(i).getUsername()).print(',');
+      printWithRms(data, game, i, 0);
     }
     data.close();
+
+    for (Rollup rollup: rollups)
+      reportRollup(rollup);
+    if (null != rollingData)
+      rollingData.close();
   }
 
-  // Reports individual broker imbalance stats
-  // Results include RMS imbalance, average imbalance,
-  // total imbalance cost, and mean contribution to total
-  // imbalance
-  private void reportByBroker (Broker broker)
+  // Writes the table for one window
+  private void reportRollup (Rollup rollup)
   {
-    TimeslotData total = new TimeslotData();
-    ArrayList<TimeslotData> brokerData = hourlyData.get(broker);
-    for (TimeslotData tsData: brokerData) {
-      total.add(tsData);
+    String label = rollup.getWindow().getLabel();
+    String filename = dataFilename + "." + label;
+    String gameId = Competition.currentCompetition().getName();
+    try (RowWriter out = new RowWriter(filename, df)) {
+      out.print("game-id,broker," + label
+                + ",c,c_revenue,p,p_revenue,imb,imb_rms,imb_revenue")
+          .println();
+      int first = (rollup.getWindow() == Rollup.Window.DAY_OF_WEEK) ? 1 : 0;
+      for (int bin = 0; bin < rollup.getWindow().getBins(); bin++) {
+        for (int i = 0; i <= brokerCount; i++) {
+          // all brokers first
+          int row = (i + brokerCount) % (brokerCount + 1);
+          out.print(gameId).print(',')
+              .print(row == brokerCount ? ""
+                     : brokerIndex.get(row).getUsername())
+              .print(',').print(bin + first).print(',');
+          printWithRms(out, rollup, row, bin);
+        }
+      }
+    }
+    catch (IOException e) {
+      log.error("Cannot write file " + filename);
     }
-    double rms = Math.sqrt(total.imbalanceSumSq / brokerData.size());
-    data.print(broker.getUsername() + ",");
-    data.println(total.formatWithRms(rms));
+  }
+
+  // Prints the sums for one row and bin of a rollup
+  private void printWithRms (RowWriter out, Rollup rollup, int row, int bin)
+  {
+    double rms = Math.sqrt(rollup.get(row, bin, imbalanceSumSq)
+                           / rollup.getCount(row, bin));
+    out.print(rollup.get(row, bin, consumption)).print(',')
+        .print(rollup.get(row, bin, income)).print(',')
+        .print(rollup.get(row, bin, production)).print(',')
+        .print(rollup.get(row, bin, expense)).print(',')
+        .print(rollup.get(row, bin, imbalance)).print(',')
+        .print(rms).print(',')
+        .print(rollup.get(row, bin, imbalanceCost)).println();
   }
 
   // Called on timeslotUpdate. Note that there are two of these before
@@ -183,9 +290,8 @@ implements Analyzer
   private void summarizeTimeslot ()
   {
     // skip initial timeslot(s) without data, initialize data structures
-    if (null == btx) {
+    if (null == current) {
       initData();
-      initTxList();
       return;
     }
     else if (skip > 0) {
@@ -193,62 +299,110 @@ implements Analyzer
       return;
     }
 
-    // iterate through the balancing and tariff transactions for each broker
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      TimeslotData tsData = new TimeslotData();
-      hourlyData.get(broker).add(tsData);
-      TimeslotData aggregate = new TimeslotData();
-      aggregateData.add(aggregate);
-      // balancing tx first
-      BalancingTransaction bx = btx.get(broker);
-      if (null != bx) {
-        tsData.imbalance = bx.getKWh();
-        aggregate.imbalance += bx.getKWh();
-        tsData.imbalanceCost = bx.getCharge();
-        aggregate.imbalanceCost += bx.getCharge();
-      }
-      for (TariffTransaction tx: ttx.get(broker)) {
-        if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
-          tsData.consumption += tx.getKWh();
-          aggregate.consumption += tx.getKWh();
-          tsData.income += tx.getCharge();
-          aggregate.income += tx.getCharge();
-        }
-        else if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-          tsData.production += tx.getKWh();
-          aggregate.production += tx.getKWh();
-          tsData.expense += tx.getCharge();
-          aggregate.expense += tx.getCharge();
-        }
+    // fold the values for each broker into the rollups, and add them up
+    // for all brokers together
+    DateTime start = timeslotRepo.getDateTimeForIndex(tsIndex);
+    for (int i = 0; i < brokerCount; i++) {
+      int base = i * width;
+      current[base + imbalanceSumSq] =
+          current[base + imbalance] * current[base + imbalance];
+      game.add(i, start, current, base);
+      game.add(brokerCount, start, current, base);
+      for (Rollup rollup: rollups) {
+        rollup.add(i, start, current, base);
+        rollup.add(brokerCount, start, current, base);
       }
     }
+    if (null != rolling)
+      writeRolling();
     timeslot += 1;
-    initTxList();
+    Arrays.fill(current, 0.0);
   }
 
-  private void initTxList ()
+  // Adds the current timeslot to the rolling window, and writes the sums
+  // over the window
+  private void writeRolling ()
   {
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      btx.put(broker, null);
-      ArrayList<TariffTransaction> txList = ttx.get(broker);
-      if (null == txList) {
-        txList = new ArrayList<TariffTransaction>();
-        ttx.put(broker, txList);
+    for (int i = 0; i < current.length; i++)
+      rolling.set(tsIndex, i, current[i]);
+    String gameId = Competition.currentCompetition().getName();
+    double[] sums = new double[width];
+    for (int r = 0; r <= brokerCount; r++) {
+      // all brokers first
+      int row = (r + brokerCount) % (brokerCount + 1);
+      int count = sumRolling(rolling, tsIndex - rollingLength + 1, tsIndex,
+                             (row == brokerCount) ? 0 : row,
+                             (row == brokerCount) ? brokerCount - 1 : row,
+                             sums);
+      rollingData.print(gameId).print(',')
+          .print(row == brokerCount ? "" : brokerIndex.get(row).getUsername())
+          .print(',').print(tsIndex).print(',')
+          .print(sums[consumption]).print(',')
+          .print(sums[income]).print(',')
+          .print(sums[production]).print(',')
+          .print(sums[expense]).print(',')
+          .print(sums[imbalance]).print(',')
+          .print(Math.sqrt(sums[imbalanceSumSq] / count)).print(',')
+          .print(sums[imbalanceCost]).println();
+    }
+    rolling.release(tsIndex - rollingLength + 2);
+  }
+
+  // Sums the values of brokers first to last over the timeslots from
+  // start to end that are still in the ring, and returns the number of
+  // broker-timeslots added
+  static int sumRolling (TimeslotRing ring, int start, int end,
+                         int first, int last, double[] sums)
+  {
+    Arrays.fill(sums, 0.0);
+    int count = 0;
+    for (int ts = start; ts <= end; ts++) {
+      if (!ring.contains(ts))
+        continue;
+      for (int b = first; b <= last; b++) {
+        for (int i = 0; i < width; i++)
+          sums[i] += ring.get(ts, b * width + i);
+        count += 1;
       }
-      txList.clear();
     }
+    return count;
   }
-  
+
   private void initData ()
   {
-    btx = new HashMap<Broker, BalancingTransaction>();
-    ttx = new HashMap<Broker, ArrayList<TariffTransaction>>();
-    initTxList();
-    hourlyData = new HashMap<Broker, ArrayList<TimeslotData>>();
-    for (Broker broker : brokerRepo.findRetailBrokers()) {
-      hourlyData.put(broker, new ArrayList<TimeslotData>());
+    brokerCount = brokerIndex.size();
+    current = new double[brokerCount * width];
+    game = new Rollup(Rollup.Window.GAME, brokerCount + 1, width);
+    for (String window: windows) {
+      Rollup.Window rw = Rollup.Window.forLabel(window);
+      if (null != rw) {
+        rollups.add(new Rollup(rw, brokerCount + 1, width));
+        continue;
+      }
+      rollingLength = parseRolling(window);
+      rolling = new TimeslotRing(rollingLength + 1, current.length, 0.0);
+      String filename = dataFilename + "." + window;
+      try {
+        rollingData = new RowWriter(filename, df);
+        rollingData.print("game-id,broker,ts,c,c_revenue,p,p_revenue,imb,imb_rms,imb_revenue")
+            .println();
+      }
+      catch (IOException e) {
+        log.error("Cannot open file " + filename);
+        rolling = null;
+      }
     }
-    aggregateData = new ArrayList<TimeslotData>();
+  }
+
+  // Returns the offset of a broker's values in current, or -1
+  private int getBase (Broker broker)
+  {
+    if (null == current)
+      return -1;
+    int index = brokerIndex.indexOf(broker);
+    if (index < 0 || index >= brokerCount)
+      return -1;
+    return index * width;
   }
 
   // catch SimStart and SimEnd messages
@@ -267,21 +421,27 @@ implements Analyzer
   // We assume there is at most one balancing tx per broker in each timeslot.
   public void handleMessage (BalancingTransaction tx)
   {
-    btx.put(tx.getBroker(), tx);
+    int base = getBase(tx.getBroker());
+    if (base < 0)
+      return;
+    current[base + imbalance] = tx.getKWh();
+    current[base + imbalanceCost] = tx.getCharge();
   } 
 
   // -----------------------------------
   // catch TariffTransactions
   public void handleMessage (TariffTransaction tx)
   {
-    // only include consumption
-    if (tx.getTxType() == TariffTransaction.Type.CONSUME
-        || tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-      ArrayList<TariffTransaction> txList = ttx.get(tx.getBroker());
-      if (null == txList) {
-        System.err.println("Error: null txList");
-      }
-      txList.add(tx);
+    int base = getBase(tx.getBroker());
+    if (base < 0)
+      return;
+    if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
+      current[base + consumption] += tx.getKWh();
+      current[base + income] += tx.getCharge();
+    }
+    else if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
+      current[base + production] += tx.getKWh();
+      current[base + expense] += tx.getCharge();
     }
   } 
 
@@ -290,47 +450,6 @@ implements Analyzer
   public void handleMessage (TimeslotUpdate upd)
   {
     summarizeTimeslot();
-  }
-
-  // --------------------------------------
-  // data holder
-  class TimeslotData
-  {
-    double production = 0.0;
-    double expense = 0.0;
-    double consumption = 0.0;
-    double income = 0.0;
-    double imbalance = 0.0;
-    double imbalanceSumSq = 0.0;
-    double imbalanceCost = 0.0;
-
-    TimeslotData ()
-    {
-      super();
-    }
-
-    // Aggregates another item with this one
-    void add (TimeslotData data)
-    {
-      production += data.production;
-      expense += data.expense;
-      consumption += data.consumption;
-      income += data.income;
-      imbalance += data.imbalance;
-      imbalanceSumSq += data.imbalance * data.imbalance;
-      imbalanceCost += data.imbalanceCost;
-    }
-
-    public String formatWithRms (double rms)
-    {
-      return String.format("%s,%s,%s,%s,%s,%s,%s",
-                           df.format(consumption),
-                           df.format(income),
-                           df.format(production),
-                           df.format(expense),
-                           df.format(imbalance),
-                           df.format(rms),
-                           df.format(imbalanceCost));
-    }
+    tsIndex = upd.getFirstEnabled() - 1;
   }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.Arrays;
+
+/**
+ * Maps long ids, such as tariff or customer ids, to dense int slots
+ * 0, 1, 2, ... in the order the ids are added, so per-id data can be kept
+ * in plain arrays indexed by slot. Lookups use an open-addressing table
+ * with linear probing and do not box the id or allocate anything.
+ *
+ * Ids cannot be removed.
+ */
+public class LongIndex
+{
+  // keys by slot
+  private long[] keys;
+  private int size = 0;
+
+  // hash table of slot + 1, zero for an empty entry
+  private int[] table;
+  private int mask;
+
+  public LongIndex ()
+  {
+    this(64);
+  }
+
+  /**
+   * Creates an index with room for the given number of ids before it
+   * needs to grow.
+   */
+  public LongIndex (int expected)
+  {
+    super();
+    int capacity = 16;
+    while (capacity < expected * 2)
+      capacity <<= 1;
+    table = new int[capacity];
+    mask = capacity - 1;
+    keys = new long[Math.max(expected, 8)];
+  }
+
+  /**
+   * Number of ids in the index, which is also one more than the highest
+   * slot.
+   */
+  public int size ()
+  {
+    return size;
+  }
+
+  /**
+   * Returns the slot for the given id, or -1 if it is not in the index.
+   */
+  public int get (long key)
+  {
+    int i = hash(key) & mask;
+    while (true) {
+      int entry = table[i];
+      if (entry == 0)
+        return -1;
+      if (keys[entry - 1] == key)
+        return entry - 1;
+      i = (i + 1) & mask;
+    }
+  }
+
+  /**
+   * Returns the slot for the given id, adding the id with the next free
+   * slot if it is not already in the index.
+   */
+  public int add (long key)
+  {
+    int i = hash(key) & mask;
+    while (true) {
+      int entry = table[i];
+      if (entry == 0)
+        break;
+      if (keys[entry - 1] == key)
+        return entry - 1;
+      i = (i + 1) & mask;
+    }
+    if (size == keys.length)
+      keys = Arrays.copyOf(keys, size * 2);
+    int slot = size++;
+    keys[slot] = key;
+    table[i] = slot + 1;
+    if (size * 2 > table.length)
+      rehash(table.length * 2);
+    return slot;
+  }
+
+  /**
+   * Returns the id in the given slot.
+   */
+  public long getKey (int slot)
+  {
+    if (slot < 0 || slot >= size)
+      throw new IndexOutOfBoundsException("No slot " + slot);
+    return keys[slot];
+  }
+
+  private void rehash (int capacity)
+  {
+    table = new int[capacity];
+    mask = capacity - 1;
+    for (int slot = 0; slot < size; slot++) {
+      int i = hash(keys[slot]) & mask;
+      while (table[i] != 0)
+        i = (i + 1) & mask;
+      table[i] = slot + 1;
+    }
+  }
+
+  // Spreads the bits of the id, since ids are often allocated in
+  // sequence and differ mostly in their low bits
+  static int hash (long key)
+  {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+}
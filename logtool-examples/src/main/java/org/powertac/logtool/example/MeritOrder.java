@@ -29,7 +29,6 @@ import org.powertac.common.Competition;
 import org.powertac.common.Order;
 import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -50,7 +49,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class MeritOrder
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(MeritOrder.class.getName());
@@ -15,11 +15,9 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.util.Map;
-import java.util.TreeMap;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
@@ -31,7 +29,6 @@ import org.powertac.common.TimeService;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.TimeslotRepo;
 import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.common.DomainObjectReader;
 import org.powertac.logtool.common.NewObjectListener;
 import org.powertac.logtool.ifc.Analyzer;
@@ -43,10 +40,15 @@ import org.powertac.logtool.ifc.Analyzer;
  * line/timeslot formatted as<br>
  * timeslot,day-of-week,hour-of-day,[mwh price],[mwh price] ...<br>
  * Each line has 24 entries, assuming that each timeslot is open for trading
- * 24 times.
+ * 24 times. Lines are written as soon as their timeslots are closed for
+ * trading, so only the timeslots that are still open are kept in memory.
  * 
  * If the option '--no-headers' is given, the first three fields are omitted.
  * 
+ * If the output filename ends in ".ptcol", the data is written in the
+ * columnar binary format described in ColumnarSink, with the mwh and price
+ * for each leadtime in separate columns mwh-0, price-0, ... mwh-23, price-23.
+ * 
  * NOTE: Numeric data is formatted using the US locale in order to avoid confusion over
  * the meaning of the comma character when used in other locales.
  * 
@@ -55,7 +57,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class MktPriceStats
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(MktPriceStats.class.getName());
@@ -65,13 +67,15 @@ implements Analyzer
   private TimeService timeService;
 
   // Data
-  private TreeMap<Integer, ClearedTrade[]> data;
+  // mwh and price for each leadtime, by target timeslot
+  private TimeslotRing data;
   private int ignoreInitial = 5; // timeslots to ignore at the beginning
   private int ignoreCount = 0;
   private int indexOffset = 0; // should be Competition.deactivateTimeslotsAhead - 1
 
   private boolean omitHeaders = false;
-  private PrintWriter output = null;
+  private RowWriter output = null;
+  private DataSink sink = null;
   private String dataFilename = "clearedTrades.data";
   
   /**
@@ -111,11 +115,14 @@ implements Analyzer
     timeslotRepo = (TimeslotRepo) getBean("timeslotRepo");
     timeService = (TimeService) getBean("timeService");
     ignoreCount = ignoreInitial;
-    data = new TreeMap<Integer, ClearedTrade[]>();
+    data = new TimeslotRing(32, 48, Double.NaN);
     try {
-      output = new PrintWriter(new File(dataFilename));
+      if (ColumnarSink.isColumnar(dataFilename))
+        sink = DataSink.open(dataFilename, getColumns(), df, true);
+      else
+        output = new RowWriter(dataFilename, df);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       log.error("Cannot open file " + dataFilename);
     }
   }
@@ -126,32 +133,89 @@ implements Analyzer
   @Override
   public void report ()
   {
-    for (Map.Entry<Integer, ClearedTrade[]> entry : data.entrySet()) {
-      String delim = "";
-      if (!omitHeaders) {
-        // add ts,dow,hod,
-        DateTime dt = timeslotRepo.getDateTimeForIndex(entry.getKey());
-        output.format("%d,%d,%d,", entry.getKey(),
-                      dt.get(DateTimeFieldType.dayOfWeek()),
-                      dt.get(DateTimeFieldType.hourOfDay()));
+    emitRows(Integer.MAX_VALUE);
+    if (null != sink)
+      sink.close();
+    if (null != output)
+      output.close();
+  }
+
+  // Writes out and forgets the rows for all timeslots before the given
+  // one, in timeslot order
+  private void emitRows (int before)
+  {
+    if (!data.isEmpty()) {
+      for (int ts = data.getLow(); ts <= data.getHigh() && ts < before; ts++) {
+        if (!data.contains(ts))
+          continue;
+        if (null != sink)
+          writeColumnarRow(ts);
+        else if (null != output)
+          writeRow(ts);
+      }
+    }
+    data.release(before);
+  }
+
+  private void writeRow (int timeslot)
+  {
+    String delim = "";
+    if (!omitHeaders) {
+      // add ts,dow,hod,
+      DateTime dt = timeslotRepo.getDateTimeForIndex(timeslot);
+      output.print(timeslot).print(',')
+          .print(dt.get(DateTimeFieldType.dayOfWeek())).print(',')
+          .print(dt.get(DateTimeFieldType.hourOfDay())).print(',');
+    }
+    for (int i = 0; i < 24; i++) {
+      double mwh = data.get(timeslot, 2 * i);
+      if (Double.isNaN(mwh)) {
+        output.print(delim).print("[0.0 0.0]");
+      }
+      else {
+        output.print(delim).print('[')
+            .print(mwh).print(' ')
+            .print(data.get(timeslot, 2 * i + 1)).print(']');
+      }
+      delim = ",";
+    }
+    output.println();
+  }
+
+  // Columnar output has one column per value
+  private List<DataSink.Column> getColumns ()
+  {
+    List<DataSink.Column> columns = new ArrayList<>();
+    if (!omitHeaders) {
+      columns.add(new DataSink.Column("ts", DataSink.Type.INT));
+      columns.add(new DataSink.Column("dow", DataSink.Type.INT));
+      columns.add(new DataSink.Column("hod", DataSink.Type.INT));
+    }
+    for (int i = 0; i < 24; i++) {
+      columns.add(new DataSink.Column("mwh-" + i, DataSink.Type.DOUBLE));
+      columns.add(new DataSink.Column("price-" + i, DataSink.Type.DOUBLE));
+    }
+    return columns;
+  }
+
+  private void writeColumnarRow (int timeslot)
+  {
+    if (!omitHeaders) {
+      DateTime dt = timeslotRepo.getDateTimeForIndex(timeslot);
+      sink.putInt(timeslot)
+          .putInt(dt.get(DateTimeFieldType.dayOfWeek()))
+          .putInt(dt.get(DateTimeFieldType.hourOfDay()));
+    }
+    for (int i = 0; i < 24; i++) {
+      double mwh = data.get(timeslot, 2 * i);
+      if (Double.isNaN(mwh)) {
+        sink.putDouble(0.0).putDouble(0.0);
       }
-      ClearedTrade[] trades = entry.getValue();
-      if (trades.length != 24)
-        log.error("short array " + trades.length);
-      for (int i = 0; i < trades.length; i++) {
-        if (null == trades[i]) {
-          output.print(delim + "[0.0 0.0]");
-        }
-        else {
-          output.format("%s[%s %s]", delim,
-                        df.format(trades[i].getExecutionMWh()),
-                        df.format(trades[i].getExecutionPrice()));
-        }
-        delim = ",";
+      else {
+        sink.putDouble(mwh).putDouble(data.get(timeslot, 2 * i + 1));
       }
-      output.println();
     }
-    output.close();
+    sink.endRow();
   }
 
   // -----------------------------------
@@ -169,12 +233,8 @@ implements Analyzer
       log.error("ClearedTrade index error: " + offset);
     }
     else {
-      ClearedTrade[] targetArray = data.get(target);
-      if (null == targetArray) {
-        targetArray = new ClearedTrade[24];
-        data.put(target, targetArray);
-      }
-      targetArray[offset] = ct;
+      data.set(target, 2 * offset, ct.getExecutionMWh());
+      data.set(target, 2 * offset + 1, ct.getExecutionPrice());
     }
   }
   
@@ -185,9 +245,10 @@ implements Analyzer
   {
     if (ignoreCount-- <= 0) {
       int timeslotSerial = timeslotRepo.currentSerialNumber();
-      if (null == data.get(timeslotSerial)) {
-        data.put(timeslotSerial, new ClearedTrade[24]);
-      }
+      data.open(timeslotSerial);
+      // Timeslots before the current one can no longer be traded,
+      // so their rows are complete
+      emitRows(timeslotSerial + indexOffset);
     }
   }
 }
@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+import org.powertac.common.msg.SimEnd;
+import org.powertac.common.msg.SimStart;
+import org.powertac.logtool.common.DomainObjectReader;
+import org.powertac.logtool.common.NewObjectListener;
+import org.powertac.logtool.ifc.Analyzer;
+
+/**
+ * Runs several analyzers in a single pass through a state log. Each
+ * analyzer is given exactly the arguments it would take on its own
+ * command line, and the argument groups are separated by "--". All of
+ * the analyzers must name the same state log. The log is read once, and
+ * each object reconstructed by the DomainObjectReader is handed to the
+ * handleMessage() methods of every analyzer that declares one for its type.
+ *
+ * Analyzers that get a BrokerIndex or DemandIndex from AnalyzerContext
+ * in their setup() share a single instance of each. An exception from any
+ * analyzer's setup() or handleMessage() ends the run.
+ *
+ * Analyzer class names without a package prefix are taken from
+ * org.powertac.logtool.example. For example,<br>
+ *   MultiAnalyzer BrokerAccounting --per-broker game.state ba.csv
+ *     -- MktPriceStats game.state mkt.csv
+ *
+ * Usage: MultiAnalyzer analyzer [args ...] [-- analyzer [args ...]] ...
+ */
+public class MultiAnalyzer
+extends AnalyzerContext
+implements Analyzer
+{
+  static private Logger log = LogManager.getLogger(MultiAnalyzer.class.getName());
+
+  private static final String separator = "--";
+
+  // the analyzers we are driving, in command-line order
+  private List<Analyzer> tools = new ArrayList<>();
+
+  // handler methods, indexed by message type
+  private HashMap<Class<?>, List<Handler>> handlers;
+
+  // last object dispatched, to avoid handing the same object to the
+  // analyzers twice when it arrives both through the reader and through
+  // our own handleMessage() methods
+  private Object lastDispatched = null;
+
+  /**
+   * Main method just creates an instance and passes command-line args to
+   * its inherited cli() method.
+   */
+  public static void main (String[] args)
+  {
+    new MultiAnalyzer().cli(args);
+  }
+
+  /**
+   * Configures each analyzer from its own argument group, then reads the
+   * state log once on behalf of all of them.
+   */
+  private void cli (String[] args)
+  {
+    String source = null;
+    List<List<String>> groups = splitArgs(args);
+    if (groups.isEmpty()) {
+      System.out.println("Usage: <analyzer> analyzer [args ...] [-- analyzer [args ...]] ...");
+      return;
+    }
+    for (List<String> group: groups) {
+      Class<? extends AnalyzerContext> analyzerClass =
+          findAnalyzer(group.get(0));
+      if (null == analyzerClass)
+        return;
+      String[] analyzerArgs =
+          group.subList(1, group.size()).toArray(new String[0]);
+      PendingRun run = null;
+      try {
+        run = configure(analyzerClass, analyzerArgs);
+      }
+      catch (ReflectiveOperationException e) {
+        System.out.println("Cannot run " + analyzerClass.getName()
+                           + ": " + e.toString());
+        return;
+      }
+      if (null == run) {
+        System.out.println("Bad arguments for " + analyzerClass.getName());
+        return;
+      }
+      if (null == source) {
+        source = run.source;
+      }
+      else if (!source.equals(run.source)) {
+        System.out.println("All analyzers must read the same state log: "
+                           + source + ", " + run.source);
+        return;
+      }
+      tools.add(run.tool);
+    }
+    super.cli(source, this);
+  }
+
+  // Splits the command line into per-analyzer groups
+  private List<List<String>> splitArgs (String[] args)
+  {
+    List<List<String>> result = new ArrayList<>();
+    List<String> group = new ArrayList<>();
+    for (String arg: args) {
+      if (separator.equals(arg)) {
+        if (!group.isEmpty())
+          result.add(group);
+        group = new ArrayList<>();
+      }
+      else {
+        group.add(arg);
+      }
+    }
+    if (!group.isEmpty())
+      result.add(group);
+    return result;
+  }
+
+  // Finds an analyzer class by name, defaulting to this package
+  @SuppressWarnings("unchecked")
+  private Class<? extends AnalyzerContext> findAnalyzer (String name)
+  {
+    String className = name;
+    if (-1 == name.indexOf('.'))
+      className = getClass().getPackage().getName() + "." + name;
+    Class<?> result = null;
+    try {
+      result = Class.forName(className);
+    }
+    catch (ClassNotFoundException e) {
+      System.out.println("Cannot find analyzer class " + className);
+      return null;
+    }
+    if (!AnalyzerContext.class.isAssignableFrom(result)
+        || !Analyzer.class.isAssignableFrom(result)) {
+      System.out.println(className + " cannot be run by MultiAnalyzer");
+      return null;
+    }
+    return (Class<? extends AnalyzerContext>) result;
+  }
+
+  /**
+   * Sets up each analyzer in turn, then registers a listener with the
+   * DomainObjectReader for each message type handled by any of them.
+   */
+  @Override
+  public void setup ()
+  {
+    DomainObjectReader dor =
+        (DomainObjectReader) getBean("domainObjectReader");
+    handlers = new HashMap<>();
+    beginSharing();
+    try {
+      for (Analyzer tool: tools)
+        setupTool(tool, dor);
+    }
+    finally {
+      endSharing();
+    }
+    log.info("Running {} analyzers over {} message types",
+             tools.size(), handlers.size());
+  }
+
+  // Sets up one analyzer, and registers its handleMessage() methods
+  private void setupTool (Analyzer tool, DomainObjectReader dor)
+  {
+    try {
+      tool.setup();
+    }
+    catch (Exception e) {
+      log.error("Setup failed for " + tool.getClass().getSimpleName(), e);
+      throw new IllegalStateException("Cannot set up "
+                                      + tool.getClass().getName(), e);
+    }
+    for (Method method: tool.getClass().getMethods()) {
+      if (!"handleMessage".equals(method.getName())
+          || method.getParameterCount() != 1)
+        continue;
+      Class<?> type = method.getParameterTypes()[0];
+      List<Handler> list = handlers.get(type);
+      if (null == list) {
+        list = new ArrayList<>();
+        handlers.put(type, list);
+        dor.registerNewObjectListener(new Dispatcher(list), type);
+      }
+      list.add(new Handler(tool, method));
+    }
+  }
+
+  @Override
+  public void report ()
+  {
+    for (Analyzer tool: tools) {
+      tool.report();
+    }
+  }
+
+  // Hands an object to every analyzer on the given list
+  private void dispatch (Object thing, List<Handler> list)
+  {
+    if (null == list || thing == lastDispatched)
+      return;
+    lastDispatched = thing;
+    for (Handler handler: list) {
+      handler.invoke(thing);
+    }
+  }
+
+  // -----------------------------------
+  // SimStart and SimEnd may be delivered directly to the analyzer
+  // rather than through the reader
+  public void handleMessage (SimStart start)
+  {
+    dispatch(start, handlers.get(SimStart.class));
+  }
+
+  public void handleMessage (SimEnd end)
+  {
+    dispatch(end, handlers.get(SimEnd.class));
+  }
+
+  // Listener registered with the DomainObjectReader
+  class Dispatcher implements NewObjectListener
+  {
+    List<Handler> list;
+
+    Dispatcher (List<Handler> list)
+    {
+      super();
+      this.list = list;
+    }
+
+    @Override
+    public void handleNewObject (Object thing)
+    {
+      dispatch(thing, list);
+    }
+  }
+
+  // A single handleMessage() method on a single analyzer
+  class Handler
+  {
+    Analyzer tool;
+    Method method;
+
+    Handler (Analyzer tool, Method method)
+    {
+      super();
+      this.tool = tool;
+      this.method = method;
+    }
+
+    void invoke (Object thing)
+    {
+      try {
+        method.invoke(tool, thing);
+      }
+      catch (InvocationTargetException ite) {
+        // an analyzer that misses a message would write wrong output,
+        // so end the run as the analyzer would on its own
+        Throwable cause = ite.getCause();
+        log.error("Error in " + tool.getClass().getSimpleName()
+                  + ".handleMessage(" + thing.getClass().getSimpleName()
+                  + ")", cause);
+        if (cause instanceof RuntimeException)
+          throw (RuntimeException) cause;
+        if (cause instanceof Error)
+          throw (Error) cause;
+        throw new IllegalStateException("Error in "
+                                        + tool.getClass().getName(), cause);
+      }
+      catch (IllegalAccessException iae) {
+        log.error("Cannot call " + method.toString() + ": " + iae.toString());
+        throw new IllegalStateException("Cannot call " + method, iae);
+      }
+    }
+  }
+}
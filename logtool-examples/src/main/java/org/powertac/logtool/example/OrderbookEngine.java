@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.Arrays;
+import java.util.SortedSet;
+
+import org.powertac.common.Orderbook;
+import org.powertac.common.OrderbookOrder;
+
+/**
+ * Keeps the orderbooks of all open timeslots, one per target timeslot and
+ * lead time, and answers what it would have cost to buy or sell a given
+ * quantity in a timeslot at a given lead time, walking up the asks or down
+ * the bids left in the orderbook. Each side of an orderbook is kept as
+ * arrays of prices and running totals of quantity and cost, so a query is
+ * a binary search rather than a scan of the orders.
+ *
+ * Quantities are in MWh and prices per MWh, as in the orderbook. Market
+ * orders, which have no limit price, are taken at the clearing price, or
+ * at the first limit price if the timeslot did not clear. Quantities
+ * beyond the depth of the orderbook are taken at the last price.
+ *
+ * Orderbooks are kept in a ring like TimeslotRing, and are dropped by
+ * release().
+ */
+public class OrderbookEngine
+{
+  private static final int noTimeslot = Integer.MIN_VALUE;
+
+  private int leads;
+  private int mask;
+  private int[] tags;
+  // books at slot * leads + lead
+  private Book[] books;
+  private int floor = noTimeslot + 1;
+
+  /**
+   * Creates an engine for lead times 0 to maxLead, and a window of the
+   * given number of timeslots.
+   */
+  public OrderbookEngine (int window, int maxLead)
+  {
+    super();
+    leads = maxLead + 1;
+    int capacity = 1;
+    while (capacity < window)
+      capacity <<= 1;
+    mask = capacity - 1;
+    tags = new int[capacity];
+    Arrays.fill(tags, noTimeslot);
+    books = new Book[capacity * leads];
+  }
+
+  public int getMaxLead ()
+  {
+    return leads - 1;
+  }
+
+  /**
+   * Adds an orderbook received the given number of timeslots ahead of its
+   * own timeslot, replacing any earlier one for the same lead time.
+   * Returns false if the lead time is out of range, the timeslot has been
+   * released, or the timeslot is too far from the others in the window.
+   */
+  public boolean add (Orderbook orderbook, int lead)
+  {
+    if (lead < 0 || lead >= leads)
+      return false;
+    int timeslot = orderbook.getTimeslotIndex();
+    if (timeslot < floor)
+      return false;
+    int slot = timeslot & mask;
+    if (tags[slot] != timeslot) {
+      if (tags[slot] != noTimeslot)
+        return false;
+      tags[slot] = timeslot;
+    }
+    books[slot * leads + lead] = new Book(orderbook);
+    return true;
+  }
+
+  /**
+   * True if there is an orderbook for the given timeslot and lead time.
+   */
+  public boolean contains (int timeslot, int lead)
+  {
+    return null != find(timeslot, lead);
+  }
+
+  /**
+   * Returns the cost of buying mWh in the given timeslot at the given lead
+   * time, or of selling -mWh if mWh is negative, in which case the cost is
+   * negative. Returns NaN if there is no orderbook, or there are no orders
+   * on the side needed.
+   */
+  public double getCost (int timeslot, int lead, double mWh)
+  {
+    Book book = find(timeslot, lead);
+    if (null == book)
+      return Double.NaN;
+    if (mWh >= 0.0)
+      return book.asks.cost(mWh);
+    return -book.bids.cost(-mWh);
+  }
+
+  /**
+   * Returns the price of the last MWh bought (mWh positive) or sold
+   * (mWh negative) in the given timeslot at the given lead time, or NaN
+   * if there is no orderbook or no orders on the side needed.
+   */
+  public double getMarginalPrice (int timeslot, int lead, double mWh)
+  {
+    Book book = find(timeslot, lead);
+    if (null == book)
+      return Double.NaN;
+    if (mWh >= 0.0)
+      return book.asks.price(mWh);
+    return book.bids.price(-mWh);
+  }
+
+  /**
+   * Drops the orderbooks for all timeslots before the given one.
+   */
+  public void release (int before)
+  {
+    if (before <= floor)
+      return;
+    floor = before;
+    for (int slot = 0; slot < tags.length; slot++) {
+      if (tags[slot] != noTimeslot && tags[slot] < before) {
+        tags[slot] = noTimeslot;
+        Arrays.fill(books, slot * leads, (slot + 1) * leads, null);
+      }
+    }
+  }
+
+  private Book find (int timeslot, int lead)
+  {
+    if (lead < 0 || lead >= leads)
+      return null;
+    int slot = timeslot & mask;
+    if (tags[slot] != timeslot)
+      return null;
+    return books[slot * leads + lead];
+  }
+
+  // -----------------------------------
+  // both sides of one orderbook
+  static class Book
+  {
+    Side asks;
+    Side bids;
+
+    Book (Orderbook orderbook)
+    {
+      super();
+      asks = new Side(orderbook.getAsks(), orderbook.getClearingPrice());
+      bids = new Side(orderbook.getBids(), orderbook.getClearingPrice());
+    }
+  }
+
+  // One side of an orderbook, in the order the orders would be taken,
+  // with prices and quantities as positive numbers
+  static class Side
+  {
+    double[] price;
+    // totals over orders 0..i
+    double[] qty;
+    double[] cost;
+
+    Side (SortedSet<OrderbookOrder> orders, Double clearingPrice)
+    {
+      super();
+      int count = (null == orders) ? 0 : orders.size();
+      price = new double[count];
+      qty = new double[count];
+      cost = new double[count];
+      if (0 == count)
+        return;
+      double marketPrice = Double.NaN;
+      if (null != clearingPrice) {
+        marketPrice = Math.abs(clearingPrice);
+      }
+      else {
+        for (OrderbookOrder order: orders) {
+          if (null != order.getLimitPrice()) {
+            marketPrice = Math.abs(order.getLimitPrice());
+            break;
+          }
+        }
+      }
+      int n = 0;
+      double totalQty = 0.0;
+      double totalCost = 0.0;
+      for (OrderbookOrder order: orders) {
+        double p = (null == order.getLimitPrice()) ? marketPrice
+            : Math.abs(order.getLimitPrice());
+        double q = Math.abs(order.getMWh());
+        if (Double.isNaN(p) || q == 0.0)
+          continue;
+        totalQty += q;
+        totalCost += p * q;
+        price[n] = p;
+        qty[n] = totalQty;
+        cost[n] = totalCost;
+        n += 1;
+      }
+      if (n < count) {
+        price = Arrays.copyOf(price, n);
+        qty = Arrays.copyOf(qty, n);
+        cost = Arrays.copyOf(cost, n);
+      }
+    }
+
+    // Cost of taking mWh from this side
+    double cost (double mWh)
+    {
+      int n = price.length;
+      if (0 == n)
+        return Double.NaN;
+      int k = find(mWh);
+      double before = (0 == k) ? 0.0 : qty[k - 1];
+      double costBefore = (0 == k) ? 0.0 : cost[k - 1];
+      return costBefore + (mWh - before) * price[k];
+    }
+
+    // Price of the last of mWh taken from this side
+    double price (double mWh)
+    {
+      if (0 == price.length)
+        return Double.NaN;
+      return price[find(mWh)];
+    }
+
+    // Index of the first order whose running total reaches mWh, or the
+    // last order if none does
+    private int find (double mWh)
+    {
+      int n = qty.length;
+      if (mWh >= qty[n - 1])
+        return n - 1;
+      int index = Arrays.binarySearch(qty, mWh);
+      if (index < 0)
+        index = -index - 1;
+      return index;
+    }
+  }
+}
@@ -18,20 +18,15 @@ package org.powertac.logtool.example;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.HashMap;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import org.joda.time.DateTimeFieldType;
 import org.joda.time.Instant;
-import org.powertac.common.Broker;
-import org.powertac.common.repo.BrokerRepo;
 import org.powertac.common.Competition;
-import org.powertac.common.TariffTransaction;
 import org.powertac.common.msg.TimeslotUpdate;
 //import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -49,7 +44,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class ProductionConsumption
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(ProductionConsumption.class.getName());
@@ -58,12 +53,10 @@ implements Analyzer
   private boolean byBroker = false;
   private String gameId = null;
 
-  // data collectors for current timeslot
+  // production and consumption come from the demand index
   private int timeslot;
-  private double used = 0.0;
-  private double produced = 0.0;
-  private HashMap<Broker, Double> brokerUsed;
-  private HashMap<Broker, Double> brokerProduced;
+  private DemandIndex demand;
+  private int brokerCount = 0;
 
   // data output file
   private PrintWriter data = null;
@@ -115,6 +108,7 @@ implements Analyzer
   @Override
   public void setup ()
   {
+    demand = getDemandIndex();
     try {
       data = new PrintWriter(new File(dataFilename));
     }
@@ -135,20 +129,14 @@ implements Analyzer
   // the second timeslot (the third call to this method), and so customer
   // consumption against non-default broker tariffs first occurs after
   // four calls.
-  private void summarizeTimeslot (Instant instant)
+  private void summarizeTimeslot (Instant instant, DemandIndex.Period period)
   {
     if (!dataInit) {
       // first time through nothing to but print header
       //data.println("slot, dow, hour, production, consumption");
       if (byBroker) {
         gameId = Competition.currentCompetition().getName();
-        brokerUsed = new HashMap<Broker, Double>();
-        brokerProduced = new HashMap<Broker, Double>();
-        BrokerRepo brokerRepo = (BrokerRepo)getBean("brokerRepo");
-        for (Broker broker: brokerRepo.findRetailBrokers()) {
-          brokerUsed.put(broker, 0.0);
-          brokerProduced.put(broker, 0.0);
-        }
+        brokerCount = demand.getBrokerIndex().size();
       }
       dataInit = true;
       return;
@@ -157,15 +145,13 @@ implements Analyzer
     // output format depends on options
     if (byBroker) {
       // print game-id, timeslot, broker-name, production, consumption
-      for (Broker broker: brokerUsed.keySet()) {
+      for (int i = 0; i < brokerCount; i++) {
         data.print(String.format("%s, %d, %s, ",
                                  gameId, timeslot,
-                                 broker.getUsername()));
+                                 demand.getBrokerIndex().get(i).getUsername()));
         data.println(String.format("%s, %s", 
-                                   df.format(brokerProduced.get(broker)),
-                                   df.format(brokerUsed.get(broker))));
-        brokerProduced.put(broker, 0.0);
-        brokerUsed.put(broker, 0.0);
+                                   df.format(period.getBroker(i, DemandIndex.produced) / 1000.0),
+                                   df.format(period.getBroker(i, DemandIndex.consumed) / 1000.0)));
       }
     }
     else {
@@ -175,9 +161,9 @@ implements Analyzer
                                instant.get(DateTimeFieldType.dayOfWeek()),
                                instant.get(DateTimeFieldType.hourOfDay())));
       // print customer usage, production
-      data.println(String.format("%s, %s", df.format(produced), df.format(used)));
-      produced = 0.0;
-      used = 0.0;
+      data.println(String.format("%s, %s",
+                                 df.format(period.getTotal(DemandIndex.produced) / 1000.0),
+                                 df.format(period.getTotal(DemandIndex.consumed) / 1000.0)));
     }
   }
 
@@ -187,28 +173,6 @@ implements Analyzer
   {
     timeslot = msg.getFirstEnabled() - 1;
     log.info("Timeslot " + timeslot);
-    summarizeTimeslot(msg.getPostedTime());
-  }
-
-  // -----------------------------------
-  // catch TariffTransactions
-  public void handleMessage (TariffTransaction tx)
-  {
-    Broker broker = tx.getBroker();
-
-    if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
-      if (byBroker)
-        brokerUsed.put(broker,
-                       brokerUsed.get(broker) + tx.getKWh() / 1000.0);
-      else
-        used += tx.getKWh() / 1000.0;
-    }
-    else if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-      if (byBroker)
-        brokerProduced.put(broker,
-                           brokerProduced.get(broker) + tx.getKWh() / 1000.0);
-      else
-        produced += tx.getKWh() / 1000.0;
-    }
+    summarizeTimeslot(msg.getPostedTime(), demand.getPeriod(msg));
   }
 }
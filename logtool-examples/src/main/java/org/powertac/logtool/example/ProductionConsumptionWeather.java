@@ -24,11 +24,9 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.joda.time.DateTimeFieldType;
 import org.joda.time.Instant;
-import org.powertac.common.TariffTransaction;
 import org.powertac.common.WeatherReport;
 import org.powertac.common.msg.TimeslotUpdate;
 //import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.common.DomainObjectReader;
 import org.powertac.logtool.common.NewObjectListener;
 import org.powertac.logtool.ifc.Analyzer;
@@ -47,7 +45,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class ProductionConsumptionWeather
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(ProductionConsumptionWeather.class.getName());
@@ -58,10 +56,10 @@ implements Analyzer
   //private boolean byBroker = false;
   //private String gameId = null;
 
-  // data collectors for current timeslot
+  // data collectors for current timeslot; production and consumption
+  // come from the demand index
   private int timeslot;
-  private double used = 0.0;
-  private double produced = 0.0;
+  private DemandIndex demand;
   private HashMap<Integer, WeatherReport> weatherReports;
 
   // data output file
@@ -112,10 +110,9 @@ implements Analyzer
   public void setup ()
   {
     dor = (DomainObjectReader)getBean("domainObjectReader");
+    demand = getDemandIndex();
     dor.registerNewObjectListener(new TimeslotUpdateHandler(),
                                   TimeslotUpdate.class);
-    dor.registerNewObjectListener(new TariffTxHandler(),
-                                  TariffTransaction.class);
     dor.registerNewObjectListener(new WeatherReportHandler(),
                                   WeatherReport.class);
     try {
@@ -141,7 +138,7 @@ implements Analyzer
   // the second timeslot (the third call to this method), and so customer
   // consumption against non-default broker tariffs first occurs after
   // four calls.
-  private void summarizeTimeslot (Instant instant)
+  private void summarizeTimeslot (Instant instant, DemandIndex.Period period)
   {
     if (!dataInit) {
       // first time through nothing to but print header
@@ -152,6 +149,8 @@ implements Analyzer
     }
 
     // reject rows with zero prod, cons
+    double produced = period.getTotal(DemandIndex.produced) / 1000.0;
+    double used = period.getTotal(DemandIndex.consumed) / 1000.0;
     if (0.0 == produced && 0.0 == used)
       return;
 
@@ -170,8 +169,6 @@ implements Analyzer
                                df.format(wr.getWindSpeed()),
                                df.format(wr.getCloudCover())));
     weatherReports.remove(timeslot);
-    produced = 0.0;
-    used = 0.0;
   }
 
   // -----------------------------------
@@ -184,26 +181,7 @@ implements Analyzer
       TimeslotUpdate msg = (TimeslotUpdate) thing;
       timeslot = msg.getFirstEnabled() - 1;
       log.info("Timeslot " + timeslot);
-      summarizeTimeslot(msg.getPostedTime());
-    }
-  }
-
-  // -----------------------------------
-  // catch TariffTransactions
-  class TariffTxHandler implements NewObjectListener
-  {
-    @Override
-    public void handleNewObject (Object thing)
-    {
-      TariffTransaction tx = (TariffTransaction)thing;
-      //Broker broker = tx.getBroker();
-
-      if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
-        used += tx.getKWh() / 1000.0;
-      }
-      else if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-        produced += tx.getKWh() / 1000.0;
-      }
+      summarizeTimeslot(msg.getPostedTime(), demand.getPeriod(msg));
     }
   }
 
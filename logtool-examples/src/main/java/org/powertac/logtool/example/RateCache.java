@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.Arrays;
+
+import org.powertac.common.Tariff;
+import org.powertac.common.TimeService;
+import org.joda.time.Instant;
+
+/**
+ * Price vectors of tariffs, worked out once per tariff specification and
+ * kept by spec id. The vector holds one price for a tariff that is not
+ * time-of-use, 24 hourly prices for a daily time-of-use tariff, and 168
+ * for a weekly one, starting at midnight on a Monday. Working them out
+ * takes one Tariff.getUsageCharge() call, and so one pass over the rates,
+ * for every hour; after that the vector is shared by everyone who asks,
+ * and must not be modified.
+ */
+public class RateCache
+{
+  private LongIndex index = new LongIndex();
+  private double[][] prices = new double[64][];
+
+  public RateCache ()
+  {
+    super();
+  }
+
+  /**
+   * Returns the price vector of the given tariff. The first call for a
+   * tariff works it out from the given Monday midnight, later calls
+   * ignore start.
+   */
+  public double[] getPrices (Tariff tariff, Instant start)
+  {
+    int slot = index.add(tariff.getSpecId());
+    if (slot == prices.length)
+      prices = Arrays.copyOf(prices, slot * 2);
+    if (null == prices[slot])
+      prices[slot] = expand(tariff, start);
+    return prices[slot];
+  }
+
+  private double[] expand (Tariff tariff, Instant start)
+  {
+    double[] result;
+    if (tariff.isTimeOfUse()) {
+      int hrs = 24;
+      if (tariff.isWeekly())
+        hrs = 168;
+      result = new double[hrs];
+      for (int hr = 0; hr < result.length; hr++) {
+        result[hr] =
+                tariff.getUsageCharge(start.plus(hr * TimeService.HOUR), 1.0);
+      }
+    }
+    else {
+      result = new double[1];
+      result[0] = tariff.getTariffSpecification().getRates().get(0).getValue();
+    }
+    return result;
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeFieldType;
+
+/**
+ * Sums of per-timeslot values over a fixed set of bins, such as the hours
+ * of the day or the days of the week, for each of a number of rows
+ * (typically brokers). Each timeslot's values are added to the bin its
+ * start time falls in as the log is read, so the totals for all bins come
+ * out of a single pass without keeping the timeslots. The values of a
+ * row are kept as width doubles per bin in one array, along with the
+ * number of timeslots added to each bin.
+ */
+public class Rollup
+{
+  /**
+   * Ways of assigning timeslots to bins.
+   */
+  public enum Window
+  {
+    GAME ("game", 1),
+    HOUR_OF_DAY ("hod", 24),
+    DAY_OF_WEEK ("dow", 7);
+
+    private final String label;
+    private final int bins;
+
+    Window (String label, int bins)
+    {
+      this.label = label;
+      this.bins = bins;
+    }
+
+    public String getLabel ()
+    {
+      return label;
+    }
+
+    public int getBins ()
+    {
+      return bins;
+    }
+
+    /**
+     * Returns the bin of the timeslot starting at the given time.
+     */
+    public int getBin (DateTime start)
+    {
+      switch (this) {
+      case HOUR_OF_DAY:
+        return start.get(DateTimeFieldType.hourOfDay());
+      case DAY_OF_WEEK:
+        return start.get(DateTimeFieldType.dayOfWeek()) - 1;
+      default:
+        return 0;
+      }
+    }
+
+    /**
+     * Returns the window with the given label, or null.
+     */
+    public static Window forLabel (String label)
+    {
+      for (Window window: values()) {
+        if (window.label.equals(label))
+          return window;
+      }
+      return null;
+    }
+  }
+
+  private Window window;
+  private int rows;
+  private int width;
+  private double[] values;
+  private int[] counts;
+
+  public Rollup (Window window, int rows, int width)
+  {
+    super();
+    this.window = window;
+    this.rows = rows;
+    this.width = width;
+    values = new double[rows * window.getBins() * width];
+    counts = new int[rows * window.getBins()];
+  }
+
+  public Window getWindow ()
+  {
+    return window;
+  }
+
+  public int getRows ()
+  {
+    return rows;
+  }
+
+  public int getWidth ()
+  {
+    return width;
+  }
+
+  /**
+   * Adds one timeslot's values for a row, taken from width entries of
+   * source starting at offset.
+   */
+  public void add (int row, DateTime start, double[] source, int offset)
+  {
+    int cell = row * window.getBins() + window.getBin(start);
+    counts[cell] += 1;
+    int base = cell * width;
+    for (int i = 0; i < width; i++)
+      values[base + i] += source[offset + i];
+  }
+
+  /**
+   * Returns the sum of a value over the timeslots in a bin.
+   */
+  public double get (int row, int bin, int index)
+  {
+    return values[(row * window.getBins() + bin) * width + index];
+  }
+
+  /**
+   * Returns the number of timeslots added to a bin.
+   */
+  public int getCount (int row, int bin)
+  {
+    return counts[row * window.getBins() + bin];
+  }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Text output for analyzer data files, used in place of a PrintWriter
+ * and String.format(). Strings and numbers are appended to a reusable
+ * char buffer, which is encoded as UTF-8 into a byte buffer and written
+ * to a FileChannel when full, so writing a row does not create any
+ * objects.
+ *
+ * Doubles printed with print(double) look exactly as the NumberFormat
+ * given to the constructor would format them, normally the analyzer's df.
+ * The common case of a DecimalFormat with US-locale symbols, no prefixes
+ * or exponent and half-even rounding is done here directly; any other
+ * format, and values that are too large or too close to a rounding tie to
+ * be sure of the result, are passed to the NumberFormat itself. The format
+ * is inspected when the writer is created, and should not be changed
+ * after that. Doubles printed with a width and precision look exactly
+ * as String.format(Locale.US, "%w.pf") would print them.
+ *
+ * Like PrintWriter, println() writes the platform line separator. Errors
+ * are thrown as UncheckedIOException.
+ */
+public class RowWriter implements Closeable
+{
+  private static final String lineSeparator = System.lineSeparator();
+
+  // largest scaled value formatted directly; beyond this the
+  // product v * 10^d is not accurate enough to round
+  private static final double maxScaled = 1e15;
+  private static final int maxDigits = 9;
+  private static final long[] pow10 = new long[maxDigits + 1];
+  static {
+    pow10[0] = 1L;
+    for (int i = 1; i < pow10.length; i++)
+      pow10[i] = pow10[i - 1] * 10L;
+  }
+
+  private FileChannel channel;
+  private char[] chars;
+  private int count = 0;
+  private ByteBuffer bytes;
+  private CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+  // number format and its fast-path settings
+  private NumberFormat format;
+  private boolean fast = false;
+  private int maxFraction = 0;
+  private int minFraction = 0;
+  private int groupingSize = 0;
+  private char groupingSeparator = ',';
+
+  // scratch space for digits, filled from the right
+  private char[] digits = new char[48];
+
+  public RowWriter (String filename, NumberFormat format) throws IOException
+  {
+    this(filename, format, 8192);
+  }
+
+  public RowWriter (String filename, NumberFormat format, int bufferSize)
+    throws IOException
+  {
+    this(FileChannel.open(Paths.get(filename),
+                          StandardOpenOption.CREATE,
+                          StandardOpenOption.WRITE,
+                          StandardOpenOption.TRUNCATE_EXISTING),
+         format, bufferSize);
+  }
+
+  /**
+   * Opens an existing file and appends to it.
+   */
+  public static RowWriter append (String filename, NumberFormat format)
+    throws IOException
+  {
+    return new RowWriter(FileChannel.open(Paths.get(filename),
+                                          StandardOpenOption.CREATE,
+                                          StandardOpenOption.WRITE,
+                                          StandardOpenOption.APPEND),
+                         format, 8192);
+  }
+
+  private RowWriter (FileChannel channel, NumberFormat format,
+                     int bufferSize)
+  {
+    super();
+    this.channel = channel;
+    chars = new char[Math.max(bufferSize, 2 * digits.length)];
+    bytes = ByteBuffer.allocate(chars.length * 3 + 16);
+    this.format = format;
+    inspectFormat();
+  }
+
+  // Decides whether the format can be reproduced by the fast path
+  private void inspectFormat ()
+  {
+    if (!(format instanceof DecimalFormat))
+      return;
+    DecimalFormat df = (DecimalFormat) format;
+    DecimalFormatSymbols symbols = df.getDecimalFormatSymbols();
+    if (symbols.getDecimalSeparator() != '.'
+        || symbols.getMinusSign() != '-'
+        || symbols.getZeroDigit() != '0'
+        || !df.getPositivePrefix().isEmpty()
+        || !df.getPositiveSuffix().isEmpty()
+        || !"-".equals(df.getNegativePrefix())
+        || !df.getNegativeSuffix().isEmpty()
+        || df.getMultiplier() != 1
+        || df.getRoundingMode() != RoundingMode.HALF_EVEN
+        || df.isDecimalSeparatorAlwaysShown()
+        || df.toPattern().indexOf('E') >= 0
+        || df.getMinimumIntegerDigits() != 1
+        || df.getMaximumIntegerDigits() < 16
+        || df.getMaximumFractionDigits() > maxDigits)
+      return;
+    maxFraction = df.getMaximumFractionDigits();
+    minFraction = Math.min(df.getMinimumFractionDigits(), maxFraction);
+    if (df.isGroupingUsed() && df.getGroupingSize() > 0) {
+      groupingSize = df.getGroupingSize();
+      groupingSeparator = symbols.getGroupingSeparator();
+    }
+    fast = true;
+  }
+
+  // -----------------------------------
+  // Text
+
+  public RowWriter print (String value)
+  {
+    if (null == value)
+      value = "null";
+    int length = value.length();
+    int offset = 0;
+    while (offset < length) {
+      if (count == chars.length)
+        drain();
+      int n = Math.min(length - offset, chars.length - count);
+      value.getChars(offset, offset + n, chars, count);
+      count += n;
+      offset += n;
+    }
+    return this;
+  }
+
+  public RowWriter print (char value)
+  {
+    if (count == chars.length)
+      drain();
+    chars[count++] = value;
+    return this;
+  }
+
+  /**
+   * Prints value right-justified in a field of the given width, or
+   * left-justified if width is negative, as "%ws" and "%-ws" would.
+   */
+  public RowWriter print (String value, int width)
+  {
+    int pad = Math.abs(width) - value.length();
+    if (width > 0)
+      pad(pad);
+    print(value);
+    if (width < 0)
+      pad(pad);
+    return this;
+  }
+
+  public RowWriter println ()
+  {
+    return print(lineSeparator);
+  }
+
+  private void pad (int n)
+  {
+    for (int i = 0; i < n; i++)
+      print(' ');
+  }
+
+  // -----------------------------------
+  // Integers
+
+  public RowWriter print (int value)
+  {
+    return print((long) value);
+  }
+
+  public RowWriter print (long value)
+  {
+    int start = longDigits(value);
+    return append(start);
+  }
+
+  /**
+   * Prints value right-justified in a field of the given width, as "%wd"
+   * would.
+   */
+  public RowWriter print (long value, int width)
+  {
+    int start = longDigits(value);
+    pad(width - (digits.length - start));
+    return append(start);
+  }
+
+  // Fills the right end of digits with the decimal form of value,
+  // returns the index of the first char
+  private int longDigits (long value)
+  {
+    int pos = digits.length;
+    if (value == Long.MIN_VALUE) {
+      String s = Long.toString(value);
+      pos -= s.length();
+      s.getChars(0, s.length(), digits, pos);
+      return pos;
+    }
+    boolean negative = value < 0;
+    long rest = negative ? -value : value;
+    do {
+      digits[--pos] = (char) ('0' + (int) (rest % 10));
+      rest /= 10;
+    } while (rest != 0);
+    if (negative)
+      digits[--pos] = '-';
+    return pos;
+  }
+
+  // -----------------------------------
+  // Doubles
+
+  /**
+   * Prints value as the NumberFormat given to the constructor would.
+   */
+  public RowWriter print (double value)
+  {
+    if (fast) {
+      int start = decimalDigits(value, maxFraction, minFraction, groupingSize);
+      if (start >= 0)
+        return append(start);
+    }
+    return print(format.format(value));
+  }
+
+  /**
+   * Prints value with exactly the given number of decimal places,
+   * right-justified in a field of the given width, as
+   * String.format(Locale.US, "%w.pf", value) would.
+   */
+  public RowWriter print (double value, int width, int precision)
+  {
+    int start = -1;
+    if (precision <= maxDigits)
+      start = decimalDigits(value, precision, precision, 0);
+    if (start < 0) {
+      String s = String.format(Locale.US, "%." + precision + "f", value);
+      return print(s, width);
+    }
+    pad(width - (digits.length - start));
+    return append(start);
+  }
+
+  // Fills the right end of digits with value rounded to at most
+  // maxFrac and at least minFrac decimal places, with grouping of
+  // the integer part if group > 0. Returns the index of the first
+  // char, or -1 if the value must be left to the general formatter.
+  private int decimalDigits (double value, int maxFrac, int minFrac,
+                             int group)
+  {
+    if (Double.isNaN(value) || Double.isInfinite(value))
+      return -1;
+    boolean negative = (Double.doubleToRawLongBits(value) < 0);
+    double scaled = Math.abs(value) * pow10[maxFrac];
+    if (scaled >= maxScaled)
+      return -1;
+    double floor = Math.floor(scaled);
+    // The product is within half an ulp of the exact value, so only
+    // values this close to a tie could round either way
+    if (Math.abs(scaled - floor - 0.5) <= Math.ulp(scaled))
+      return -1;
+    long rounded = (long) Math.rint(scaled);
+    if (negative && rounded == 0)
+      // both formatters print a sign here, but they disagree on digits
+      return -1;
+    long intPart = rounded / pow10[maxFrac];
+    long fraction = rounded % pow10[maxFrac];
+    int fracDigits = maxFrac;
+    while (fracDigits > minFrac && fraction % 10 == 0) {
+      fraction /= 10;
+      fracDigits -= 1;
+    }
+    int pos = digits.length;
+    if (fracDigits > 0) {
+      for (int i = 0; i < fracDigits; i++) {
+        digits[--pos] = (char) ('0' + (int) (fraction % 10));
+        fraction /= 10;
+      }
+      digits[--pos] = '.';
+    }
+    int n = 0;
+    do {
+      if (group > 0 && n > 0 && n % group == 0)
+        digits[--pos] = groupingSeparator;
+      digits[--pos] = (char) ('0' + (int) (intPart % 10));
+      intPart /= 10;
+      n += 1;
+    } while (intPart != 0);
+    if (negative)
+      digits[--pos] = '-';
+    return pos;
+  }
+
+  private RowWriter append (int start)
+  {
+    int n = digits.length - start;
+    if (count + n > chars.length)
+      drain();
+    System.arraycopy(digits, start, chars, count, n);
+    count += n;
+    return this;
+  }
+
+  // -----------------------------------
+  // Output
+
+  // Encodes the char buffer and writes it out. A surrogate pair split
+  // across the end of the buffer stays behind for the next round.
+  private void drain ()
+  {
+    CharBuffer in = CharBuffer.wrap(chars, 0, count);
+    while (true) {
+      CoderResult result = encoder.encode(in, bytes, false);
+      writeBytes();
+      if (result.isUnderflow())
+        break;
+      if (result.isError())
+        throw new UncheckedIOException(new IOException("Cannot encode output: "
+                                                       + result));
+    }
+    int left = in.remaining();
+    System.arraycopy(chars, in.position(), chars, 0, left);
+    count = left;
+  }
+
+  private void writeBytes ()
+  {
+    bytes.flip();
+    try {
+      while (bytes.hasRemaining())
+        channel.write(bytes);
+    }
+    catch (IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+    bytes.clear();
+  }
+
+  /**
+   * Writes out everything printed so far.
+   */
+  public void flush ()
+  {
+    drain();
+  }
+
+  /**
+   * Writes out everything printed so far, followed by the contents of
+   * the given file.
+   */
+  public void copy (Path path)
+  {
+    drain();
+    try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = in.size();
+      long position = 0L;
+      while (position < size)
+        position += in.transferTo(position, size - position, channel);
+    }
+    catch (IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+  }
+
+  @Override
+  public void close ()
+  {
+    if (null == channel)
+      return;
+    try {
+      drain();
+      encoder.encode(CharBuffer.wrap(chars, 0, count), bytes, true);
+      encoder.flush(bytes);
+      writeBytes();
+      channel.close();
+    }
+    catch (IOException ioe) {
+      throw new UncheckedIOException(ioe);
+    }
+    finally {
+      channel = null;
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+/**
+ * Count, sum, mean and variance of a series of values, updated as each
+ * value arrives (Welford's method), so the values themselves need not be
+ * kept. The mean and variance are NaN until a value has been added.
+ */
+public class RunningStats
+{
+  private long count = 0;
+  private double sum = 0.0;
+  private double mean = 0.0;
+  // sum of squared differences from the mean
+  private double m2 = 0.0;
+
+  public RunningStats ()
+  {
+    super();
+  }
+
+  public void add (double value)
+  {
+    count += 1;
+    sum += value;
+    double delta = value - mean;
+    mean += delta / count;
+    m2 += delta * (value - mean);
+  }
+
+  /**
+   * Adds in the values of another series.
+   */
+  public void add (RunningStats other)
+  {
+    if (0 == other.count)
+      return;
+    long total = count + other.count;
+    double delta = other.mean - mean;
+    m2 += other.m2 + delta * delta * count * other.count / total;
+    mean += delta * other.count / total;
+    sum += other.sum;
+    count = total;
+  }
+
+  public void clear ()
+  {
+    count = 0;
+    sum = 0.0;
+    mean = 0.0;
+    m2 = 0.0;
+  }
+
+  public long getCount ()
+  {
+    return count;
+  }
+
+  public double getSum ()
+  {
+    return sum;
+  }
+
+  public double getMean ()
+  {
+    if (0 == count)
+      return Double.NaN;
+    return mean;
+  }
+
+  /**
+   * Population variance of the values.
+   */
+  public double getVariance ()
+  {
+    if (0 == count)
+      return Double.NaN;
+    return m2 / count;
+  }
+
+  /**
+   * Root mean square of the values.
+   */
+  public double getRms ()
+  {
+    if (0 == count)
+      return Double.NaN;
+    return Math.sqrt(m2 / count + mean * mean);
+  }
+}
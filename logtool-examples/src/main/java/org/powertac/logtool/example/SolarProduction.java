@@ -18,19 +18,14 @@ package org.powertac.logtool.example;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.HashSet;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.LogManager;
 
 import org.joda.time.DateTimeFieldType;
 import org.joda.time.Instant;
-import org.powertac.common.CustomerInfo;
-import org.powertac.common.TariffTransaction;
 import org.powertac.common.enumerations.PowerType;
 import org.powertac.common.msg.TimeslotUpdate;
-import org.powertac.common.repo.CustomerRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -45,18 +40,15 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class SolarProduction
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(SolarProduction.class.getName());
 
-  // access to customer info
-  private CustomerRepo customerRepo;
-  private HashSet<CustomerInfo> solarCustomers;
+  // production by power type comes from the demand index
+  private DemandIndex demand;
 
-  // data collectors for current timeslot
   private int timeslot;
-  private double produced = 0.0;
 
   // data output file
   private PrintWriter data = null;
@@ -102,8 +94,7 @@ implements Analyzer
   @Override
   public void setup ()
   {
-    customerRepo = (CustomerRepo)this.getBean("customerRepo");
-    solarCustomers = new HashSet<CustomerInfo>();
+    demand = getDemandIndex();
     try {
       data = new PrintWriter(new File(dataFilename));
     }
@@ -125,14 +116,9 @@ implements Analyzer
   // the second timeslot (the third call to this method), and so customer
   // consumption against non-default broker tariffs first occurs after
   // four calls.
-  private void summarizeTimeslot (Instant instant)
+  private void summarizeTimeslot (Instant instant, DemandIndex.Period period)
   {
     if (!dataInit) {
-      // first time through -- extract the list of solar customers
-      for (CustomerInfo info : customerRepo.list()) {
-        if (info.getPowerType() == PowerType.SOLAR_PRODUCTION)
-          solarCustomers.add(info);
-      }
       dataInit = true;
       return;
     }
@@ -143,8 +129,10 @@ implements Analyzer
                              instant.get(DateTimeFieldType.dayOfWeek()),
                              instant.get(DateTimeFieldType.hourOfDay())));
     // print customer usage, production
-    data.println(String.format("%s, %s", df.format(produced), df.format(0.0)));
-    produced = 0.0;
+    double produced =
+        period.getPowerType(PowerType.SOLAR_PRODUCTION, DemandIndex.produced);
+    data.println(String.format("%s, %s", df.format(produced / 1000.0),
+                               df.format(0.0)));
   }
 
   // -----------------------------------
@@ -153,16 +141,6 @@ implements Analyzer
   {
     timeslot = msg.getFirstEnabled() - 1;
     log.info("Timeslot " + timeslot);
-    summarizeTimeslot(msg.getPostedTime());
-  }
-
-  // -----------------------------------
-  // catch TariffTransactions
-  public void handleMessage (TariffTransaction tx)
-  {
-    if (tx.getTxType() == TariffTransaction.Type.PRODUCE
-        && solarCustomers.contains(tx.getCustomerInfo())) {
-      produced += tx.getKWh() / 1000.0;
-    }
+    summarizeTimeslot(msg.getPostedTime(), demand.getPeriod(msg));
   }
 }
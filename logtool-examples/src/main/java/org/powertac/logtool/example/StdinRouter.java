@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Replacement for System.in that lets each thread read its own stream.
+ * The logtool framework reads the state log from standard input when the
+ * input file is given as "-"; routing standard input to an archive stream
+ * lets it read a log straight out of a compressed archive. Threads that have
+ * nothing routed read whatever System.in was before this was installed.
+ *
+ * Analyzers loaded through different class loaders each install their own
+ * router, wrapping the previous one, so routing still works when
+ * TournamentProcessor runs several games at once.
+ */
+class StdinRouter extends InputStream
+{
+  private static StdinRouter instance = null;
+
+  private InputStream original;
+  private ThreadLocal<InputStream> routed = new ThreadLocal<>();
+
+  private StdinRouter (InputStream original)
+  {
+    super();
+    this.original = original;
+  }
+
+  /**
+   * Routes standard input on the current thread to the given stream,
+   * or back to the original standard input if the stream is null.
+   */
+  static void route (InputStream stream)
+  {
+    synchronized (System.class) {
+      if (null == instance) {
+        instance = new StdinRouter(System.in);
+        System.setIn(instance);
+      }
+    }
+    if (null == stream)
+      instance.routed.remove();
+    else
+      instance.routed.set(stream);
+  }
+
+  private InputStream current ()
+  {
+    InputStream result = routed.get();
+    if (null == result)
+      return original;
+    return result;
+  }
+
+  @Override
+  public int read () throws IOException
+  {
+    return current().read();
+  }
+
+  @Override
+  public int read (byte[] buffer, int offset, int length) throws IOException
+  {
+    return current().read(buffer, offset, length);
+  }
+
+  @Override
+  public long skip (long n) throws IOException
+  {
+    return current().skip(n);
+  }
+
+  @Override
+  public int available () throws IOException
+  {
+    return current().available();
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    current().close();
+  }
+}
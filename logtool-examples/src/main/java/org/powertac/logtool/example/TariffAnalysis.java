@@ -15,17 +15,19 @@
  */
 package org.powertac.logtool.example;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.time.DayOfWeek;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
-import java.util.stream.IntStream;
 
 import org.apache.logging.log4j.Logger;
 import org.joda.time.Instant;
@@ -44,7 +46,6 @@ import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.repo.BrokerRepo;
 import org.powertac.common.repo.TariffRepo;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -59,6 +60,10 @@ import org.powertac.logtool.ifc.Analyzer;
  *   periodic:p,tiered:tf,variable:tf,rate:rrr,upReg:u,downReg:d}
  * where the rate is a list of one element for fixed price, or 24 or 168 elements for
  * a TOU rate. The rate field is blank for a variable-rate tariff.
+ * If the output file name ends in ".ptcol", the same fields are written
+ * instead as rows of a columnar data file (see ColumnarSink), with the
+ * rate as a vector column; TariffProfileExport collects these files
+ * for a whole tournament.
  * 
  * Without an option, output is in three parts. Part 1 is a list of
  * tariffs in the order they appear in the log. For each tariff, fields are:
@@ -74,16 +79,24 @@ import org.powertac.logtool.ifc.Analyzer;
  * second section. The subscription-count is given as the mean value over the entire
  * game, the rest are sums.
  * 
+ * The rows of the subscription-change table are written as each timeslot
+ * ends, to a file next to the output with ".subs" appended to its name,
+ * and copied to the end of the output by report(). That way only one
+ * timeslot of subscription changes is ever kept in memory.
+ * 
  * NOTE: Numeric data is formatted using the US locale in order to avoid confusion over
  * the meaning of the comma character when used in other locales.
  * 
+ * The analyzer is Checkpointable, so a long run can be resumed if it is
+ * interrupted; see CheckpointRunner.
+ * 
  * Usage: TariffAnalysis [options] state-log-file output-data-file
  * 
  * @author John Collins
  */
 public class TariffAnalysis
-extends LogtoolContext
-implements Analyzer
+extends AnalyzerContext
+implements Analyzer, Checkpointable
 {
   static private Logger log = LogManager.getLogger(TariffAnalysis.class.getName());
 
@@ -96,12 +109,16 @@ implements Analyzer
   // Data
   private List<Broker> brokers;
   private HashMap<Broker, List<TariffData>> brokerTariff;
-  private TreeMap<Integer, HashMap<Broker, List<TariffActivity>>> subscriptionActivity; 
-  private HashMap<Long, TariffData> tariffData;
+  private HashMap<Broker, List<TariffData>> timeslotActivity;
   private List<Tariff> newTariffs;
   private List<Tariff> revokes;
-  private Set<Long> activeTariffs;
-  private Set<Long> activeSubs;
+
+  // TariffData by slot in tariffIndex, so transactions need no boxing
+  private LongIndex tariffIndex;
+  private TariffData[] tariffData;
+  // tariffs with subscription changes in the current timeslot
+  private long[] activeSubs;
+  private int activeSubCount = 0;
   
   // TariffData indexed by Timeslot and by tariffID
   //private HashMap<Integer, HashMap<Tariff, TariffData>> tariffData;
@@ -112,8 +129,11 @@ implements Analyzer
   //private boolean firstTx = false;
   private int timeslot = 360;
   private int summaryInterval = 24;
-  private PrintWriter output = null;
+  private RowWriter output = null;
+  private DataSink profileData = null;
+  private RateCache rateCache = new RateCache();
   private String dataFilename = "tariff-analysis.data";
+  private RowWriter subscriptions = null;
   
   /**
    * Main method just creates an instance and passes command-line args to
@@ -158,24 +178,59 @@ implements Analyzer
     timeService = (TimeService) getBean("timeService");
     brokers = new ArrayList<>();
     brokerTariff = new HashMap<>();
-    tariffData = new HashMap<>();
-    subscriptionActivity = new TreeMap<>();
+    tariffIndex = new LongIndex(1024);
+    tariffData = new TariffData[1024];
+    activeSubs = new long[64];
+    timeslotActivity = new HashMap<>();
     newTariffs = new ArrayList<>();
     revokes = new ArrayList<>();
-    activeTariffs = new TreeSet<>();
-    activeSubs = new TreeSet<>();
+    if (isResuming())
+      return;
     try {
-      output = new PrintWriter(new File(dataFilename));
+      if (profile && ColumnarSink.isColumnar(dataFilename)) {
+        profileData = DataSink.open(dataFilename, getProfileColumns(), df,
+                                    true);
+        return;
+      }
+      output = new RowWriter(dataFilename, df);
+      if (!narrative && !profile)
+        subscriptions = new RowWriter(getSubscriptionFilename(), df);
     }
-    catch (FileNotFoundException e) {
+    catch (IOException e) {
       log.error("Cannot open file " + dataFilename);
     }
   }
 
+  // Columns of the profile data file, as in the profile dicts
+  static List<DataSink.Column> getProfileColumns ()
+  {
+    List<DataSink.Column> columns = new ArrayList<>();
+    columns.add(new DataSink.Column("broker", DataSink.Type.STRING));
+    columns.add(new DataSink.Column("ts", DataSink.Type.INT));
+    columns.add(new DataSink.Column("tariffId", DataSink.Type.LONG));
+    columns.add(new DataSink.Column("powerType", DataSink.Type.STRING));
+    columns.add(new DataSink.Column("minDuration", DataSink.Type.LONG));
+    columns.add(new DataSink.Column("signup", DataSink.Type.DOUBLE));
+    columns.add(new DataSink.Column("withdraw", DataSink.Type.DOUBLE));
+    columns.add(new DataSink.Column("periodic", DataSink.Type.DOUBLE));
+    columns.add(new DataSink.Column("tiered", DataSink.Type.INT));
+    columns.add(new DataSink.Column("variable", DataSink.Type.INT));
+    columns.add(new DataSink.Column("rate", DataSink.Type.VECTOR));
+    columns.add(new DataSink.Column("upReg", DataSink.Type.DOUBLE));
+    columns.add(new DataSink.Column("downReg", DataSink.Type.DOUBLE));
+    return columns;
+  }
+
+  private String getSubscriptionFilename ()
+  {
+    return dataFilename + ".subs";
+  }
+
   private void firstLine ()
   {
     if (narrative) {
-      output.format("Game %s\n", Competition.currentCompetition().getName());
+      output.print("Game ").print(Competition.currentCompetition().getName())
+          .print('\n');
       //output.println("Tariff fields: ID, PowerType, minDuration, signup, withdraw, periodic, rates");
     }
     if (brokers.isEmpty()) {
@@ -200,10 +255,17 @@ implements Analyzer
   @Override
   public void report ()
   {
+    // called both on SimEnd and at the end of the log
+    if (null != profileData) {
+      profileData.close();
+      profileData = null;
+    }
+    if (null == output)
+      return;
     if (narrative) {
-      output.println("-------------\nGame totals\n------------");
+      output.print("-------------\nGame totals\n------------").println();
       for (Broker broker: brokers) {
-        output.println(broker.getUsername());
+        output.print(broker.getUsername()).println();
         List<TariffData> dataList = brokerTariff.get(broker);
         for (TariffData data: dataList) {
           data.printFinalSummary();
@@ -211,74 +273,49 @@ implements Analyzer
       }
     }
     else if (!profile) {
-      output.println("------------\nSubscription changes\n------------");
+      output.print("------------\nSubscription changes\n------------").println();
       // broker name header
       output.print("                ");
       for (Broker broker: brokers) {
-        output.format("%-42s", broker.getUsername());
+        output.print(broker.getUsername(), -42);
       }
       output.println();
-      // iterate through timeslots
-      for (int ts: subscriptionActivity.keySet()) {
-        HashMap<Broker, List<TariffActivity>> tsActivity =
-                subscriptionActivity.get(ts);
-        // count rows needed
-        int rows = 0;
-        for (Broker broker: brokers) {
-          if (tsActivity.containsKey(broker)) {
-            rows = Math.max(rows, tsActivity.get(broker).size());
-          }
+      // rows were written as the timeslots ended
+      if (null != subscriptions) {
+        subscriptions.close();
+        subscriptions = null;
+        output.copy(Paths.get(getSubscriptionFilename()));
+        try {
+          Files.delete(Paths.get(getSubscriptionFilename()));
+        }
+        catch (IOException ioe) {
+          log.warn("Cannot delete " + getSubscriptionFilename());
         }
-        if (rows == 0)
-          continue;
-        IntStream.range(0, rows).forEach
-        (r -> {
-          if (r == 0)
-            output.format("%4d", ts);
-          else
-            output.print("    ");
-          for (Broker broker: brokers) {
-            if (!tsActivity.containsKey(broker)) {
-              output.format("%42s", " ");
-              continue;
-            }
-            List<TariffActivity> acts = tsActivity.get(broker);
-            if (acts.size() <= r) {
-              output.format("%42s", "");
-              continue;
-            }
-            TariffActivity ta = acts.get(r);
-            // [subscription count, tariff-payment, rate-payment, regulation-payment]
-            output.format("  %9d [%6d %10.3f %10.3f]",
-                          ta.getTariffid(),
-                          ta.getSubCount(), ta.getTariffPmt(),
-                          ta.getRatePmt());
-          }
-          output.println();
-        });
-        output.println();
       }
     }
     output.close();
+    output = null;
   }
 
   // Dump collected data to output. Format depends on perBroker setting.
   private void narrativeSummary (int timeslot)
   {
     if (narrative) {
-      output.format("--- Tariff summary ts %d, %s:\n", timeslot,
-                    timeService.getCurrentDateTime().toString("MM-dd-hh"));
+      output.print("--- Tariff summary ts ").print(timeslot).print(", ")
+          .print(timeService.getCurrentDateTime().toString("MM-dd-hh"))
+          .print(":\n");
       for (Broker broker: brokers) {
         List<TariffData> dataList = brokerTariff.get(broker);
         if (dataList.isEmpty())
           log.error("Empty data list for {}", broker.getUsername());
         for (TariffData data: dataList) {
-          if (activeTariffs.contains(data.tariff.getId())) {
+          if (data.active) {
             data.printSummary(timeslot);
           }
         }
       }
-      activeTariffs.clear();
+      for (int slot = 0; slot < tariffIndex.size(); slot++)
+        tariffData[slot].active = false;
     }
     else {
       // not narrative
@@ -292,20 +329,19 @@ implements Analyzer
   {
     if (narrative) {
       if (newTariffs.size() > 0) {
-        output.format("--- New tariffs ts %d:\n", timeslot);
+        output.print("--- New tariffs ts ").print(timeslot).print(":\n");
         for (Tariff tariff: newTariffs)
           dumpTariff(tariff);
         newTariffs.clear();
       }
       if (revokes.size() > 0) {
-        output.format("--- Revoked tariffs ts %d:\n", timeslot);
+        output.print("--- Revoked tariffs ts ").print(timeslot).print(":\n");
         for (Tariff tariff: revokes) {
-          output.format(" %s:%d",
-                        tariff.getBroker().getUsername(),
-                        tariff.getSpecId());
+          output.print(' ').print(tariff.getBroker().getUsername())
+              .print(':').print(tariff.getSpecId());
           Tariff sup = tariff.getIsSupersededBy();
           if (null != sup) {
-            output.format(" replaced by %d", sup.getSpecId());
+            output.print(" replaced by ").print(sup.getSpecId());
           }
           output.println();
         }
@@ -325,7 +361,7 @@ implements Analyzer
       if (newTariffs.size() == 0 && revokes.size() == 0)
         return;
       // not narrative mode, get here every ts
-      output.format("--- ts %d\n", timeslot);
+      output.print("--- ts ").print(timeslot).print('\n');
       if (newTariffs.size() > 0) {
         for (Tariff tariff: newTariffs) {
           output.print("offer ");
@@ -335,12 +371,13 @@ implements Analyzer
       }
       if (revokes.size() > 0) {
         for (Tariff tariff: revokes) {
-          output.format("kill %d %s %d %s",
-                        timeslot, tariff.getBroker().getUsername(),
-                        tariff.getSpecId(), tariff.getPowerType().toString());
+          output.print("kill ").print(timeslot)
+              .print(' ').print(tariff.getBroker().getUsername())
+              .print(' ').print(tariff.getSpecId())
+              .print(' ').print(tariff.getPowerType().toString());
           Tariff sup = tariff.getIsSupersededBy();
           if (null != sup) {
-            output.format(" replaced by %d", sup.getSpecId());
+            output.print(" replaced by ").print(sup.getSpecId());
           }
           output.println();
         }
@@ -349,23 +386,52 @@ implements Analyzer
     }
   }
 
+  // Writes the subscription-change rows for the current timeslot
   private void recordSubscriptionChanges ()
   {
-    if (!subscriptionActivity.containsKey(timeslot))
-      subscriptionActivity.put(timeslot, new HashMap<>());
-    HashMap<Broker, List<TariffActivity>> timeslotActivity =
-            subscriptionActivity.get(timeslot);
-    for (long tid: activeSubs) {
-      // find the TariffData for this tariff and make a TariffActivity snapshot of it
-      TariffData td = tariffData.get(tid);
-      TariffActivity ta = new TariffActivity(td);
+    for (List<TariffData> activities: timeslotActivity.values())
+      activities.clear();
+    // in order of tariff id
+    Arrays.sort(activeSubs, 0, activeSubCount);
+    for (int i = 0; i < activeSubCount; i++) {
+      TariffData td = findData(activeSubs[i]);
+      td.subscriptionActive = false;
       Broker broker = td.getBroker();
       if (!timeslotActivity.containsKey(broker))
         timeslotActivity.put(broker, new ArrayList<>());
-      List<TariffActivity> activities = timeslotActivity.get(broker);
-      activities.add(ta);
+      timeslotActivity.get(broker).add(td);
+    }
+    activeSubCount = 0;
+    // count rows needed
+    int rows = 0;
+    for (Broker broker: brokers) {
+      if (timeslotActivity.containsKey(broker)) {
+        rows = Math.max(rows, timeslotActivity.get(broker).size());
+      }
+    }
+    if (rows == 0 || null == subscriptions)
+      return;
+    for (int r = 0; r < rows; r++) {
+      if (r == 0)
+        subscriptions.print(timeslot, 4);
+      else
+        subscriptions.print("    ");
+      for (Broker broker: brokers) {
+        List<TariffData> acts = timeslotActivity.get(broker);
+        if (null == acts || acts.size() <= r) {
+          subscriptions.print("", 42);
+          continue;
+        }
+        TariffData td = acts.get(r);
+        // [subscription count, tariff-payment, rate-payment, regulation-payment]
+        subscriptions.print("  ").print(td.getTariffId(), 9)
+            .print(" [").print(td.getSubscribers(), 6)
+            .print(' ').print(td.getStaticEarnings(), 10, 3)
+            .print(' ').print(td.getRateEarnings(), 10, 3).print(']');
+      }
+      subscriptions.println();
     }
-    activeSubs.clear();
+    subscriptions.println();
   }
 
   //   Broker, ID, PowerType, intro TS, minDuration, signup, withdraw, periodic pmt,
@@ -377,36 +443,35 @@ implements Analyzer
     //if (tariff.getId() == 501428079) {
     //  System.out.println("rr tariff");
     //}
-    output.format("%s %d %s:",
-                  tariff.getBroker().getUsername(), tariff.getId(),
-                  tariff.getPowerType().toString());
+    output.print(tariff.getBroker().getUsername())
+        .print(' ').print(tariff.getId())
+        .print(' ').print(tariff.getPowerType().toString()).print(':');
     if (tariff.getMinDuration() > 0) {
-      output.format(" minDur=%dh", tariff.getMinDuration()/3600000);
+      output.print(" minDur=").print(tariff.getMinDuration()/3600000).print('h');
     }
     if (tariff.getSignupPayment() != 0.0) {
-      output.format(" sgnup=%s", df.format(tariff.getSignupPayment()));
+      output.print(" sgnup=").print(tariff.getSignupPayment());
     }
     if (tariff.getEarlyWithdrawPayment() != 0.0) {
-      output.format(" wthdrw=%s", df.format(tariff.getEarlyWithdrawPayment()));
+      output.print(" wthdrw=").print(tariff.getEarlyWithdrawPayment());
     }
     if (tariff.getPeriodicPayment() != 0.0) {
-      output.format(" pp=%s", df.format(tariff.getPeriodicPayment()));
+      output.print(" pp=").print(tariff.getPeriodicPayment());
     }
 
     List<Rate> rates = tariff.getTariffSpecification().getRates();
     List<RegulationRate> rrs = tariff.getTariffSpecification().getRegulationRates();
     if (rates.size() == 1) {
       // Simple tariff, single rate
-      output.format(" fxp=%s", df.format(rates.get(0).getValue()));
+      output.print(" fxp=").print(rates.get(0).getValue());
     }
     else {
       dumpComplexRates(tariff);
     }
     if (rrs.size() > 0) {
       RegulationRate rr = rrs.get(0);
-      output.format(" upreg=%s dwnreg=%s",
-                    df.format(rr.getUpRegulationPayment()),
-                    df.format(rr.getDownRegulationPayment()));
+      output.print(" upreg=").print(rr.getUpRegulationPayment())
+          .print(" dwnreg=").print(rr.getDownRegulationPayment());
     }
     output.println();
   }
@@ -419,20 +484,18 @@ implements Analyzer
       return;
     }
     if (tariff.isVariableRate()) {
-      output.format(" Variable: mean=%s, realized=%s",
-                    df.format(tariff.getMeanConsumptionPrice()),
-                    df.format(tariff.getRealizedPrice()));
+      output.print(" Variable: mean=").print(tariff.getMeanConsumptionPrice())
+          .print(", realized=").print(tariff.getRealizedPrice());
       return;
     }
     if (tariff.isWeekly()) {
       output.print(" tou=[");
       //start at midnight next Monday
-      Instant start = mondayMidnight();
+      double[] prices = getRateArray(tariff);
       TreeMap<Integer, TreeMap<Integer, Double>> dayPrices = new TreeMap<>();
       int lastDay = 0;
       for (int d = 0; d < 7; d++) {
-        TreeMap<Integer, Double> dp =
-                gatherHourlyPrices(tariff, start.plus(d * TimeService.DAY));
+        TreeMap<Integer, Double> dp = gatherHourlyPrices(prices, d * 24);
         if (d == 0) {
           dayPrices.put(d, dp);
         }
@@ -444,7 +507,7 @@ implements Analyzer
       }
       String delimiter = "";
       for (int d : dayPrices.keySet()) {
-        output.format("%s%s", delimiter, DayOfWeek.of(d + 1));
+        output.print(delimiter).print(DayOfWeek.of(d + 1).toString());
         printHourlyPrices(dayPrices.get(d));
         delimiter = " ";
       }
@@ -453,9 +516,9 @@ implements Analyzer
     }
     if (tariff.isTimeOfUse()) {
       output.print(" tou=");
-      Instant now = timeService.getCurrentTime();
-      Instant midnight = now.minus(timeService.getHourOfDay() * TimeService.HOUR);
-      TreeMap<Integer, Double> hrPrices = gatherHourlyPrices(tariff, midnight);
+      // the same every day
+      TreeMap<Integer, Double> hrPrices =
+          gatherHourlyPrices(getRateArray(tariff), 0);
       printHourlyPrices(hrPrices);
     }
   }
@@ -471,26 +534,7 @@ implements Analyzer
 
   private void dumpTariffProfile (Tariff tariff)
   {
-    //{broker:b,ts:ts,tariffId:id,powerType:pt,minDuration:md,signup:p,withdraw:w,
-    // periodic:p,tiered:tf,variable:tf,rate:rrr,upReg:u,downReg:d}
-    output.format("{'broker':'%s','ts':%d,'tariffId':%d,'powerType':'%s',",
-                  tariff.getBroker().getUsername(), timeslot, tariff.getId(),
-                  tariff.getPowerType().toString());
-    output.format("'minDuration':%d,'signup':%s,'withdraw':%s,'periodic':%s,",
-                  tariff.getMinDuration(),
-                  df.format(tariff.getSignupPayment()),
-                  df.format(tariff.getEarlyWithdrawPayment()),
-                  df.format(tariff.getPeriodicPayment()));
-    output.format("'tiered':%s,", tariff.isTiered()?"True":"False");
-    output.format("'variable':%s,", tariff.isVariableRate()?"True":"False");
     double[] prices = getRateArray(tariff);
-    output.print("'rate':");
-    String delim = "[";
-    for (double price: prices) {
-      output.format("%s%s", delim, df.format(price));
-      delim = ",";
-    }
-    output.print("],");
     double upreg = 0.0;
     double downreg = 0.0;
     if (tariff.getTariffSpecification().hasRegulationRate()) {
@@ -498,47 +542,72 @@ implements Analyzer
       upreg = rr.getUpRegulationPayment();
       downreg = rr.getDownRegulationPayment();
     }
-    output.format("'upReg':%s,'downReg':%s}\n",
-                  df.format(upreg), df.format(downreg));
+    if (null != profileData) {
+      profileData.putString(tariff.getBroker().getUsername())
+          .putInt(timeslot)
+          .putLong(tariff.getId())
+          .putString(tariff.getPowerType().toString())
+          .putLong(tariff.getMinDuration())
+          .putDouble(tariff.getSignupPayment())
+          .putDouble(tariff.getEarlyWithdrawPayment())
+          .putDouble(tariff.getPeriodicPayment())
+          .putInt(tariff.isTiered() ? 1 : 0)
+          .putInt(tariff.isVariableRate() ? 1 : 0)
+          .putVector(prices)
+          .putDouble(upreg)
+          .putDouble(downreg)
+          .endRow();
+      return;
+    }
+    //{broker:b,ts:ts,tariffId:id,powerType:pt,minDuration:md,signup:p,withdraw:w,
+    // periodic:p,tiered:tf,variable:tf,rate:rrr,upReg:u,downReg:d}
+    output.print("{'broker':'").print(tariff.getBroker().getUsername())
+        .print("','ts':").print(timeslot)
+        .print(",'tariffId':").print(tariff.getId())
+        .print(",'powerType':'").print(tariff.getPowerType().toString())
+        .print("',");
+    output.print("'minDuration':").print(tariff.getMinDuration())
+        .print(",'signup':").print(tariff.getSignupPayment())
+        .print(",'withdraw':").print(tariff.getEarlyWithdrawPayment())
+        .print(",'periodic':").print(tariff.getPeriodicPayment())
+        .print(',');
+    output.print("'tiered':").print(tariff.isTiered()?"True":"False")
+        .print(',');
+    output.print("'variable':").print(tariff.isVariableRate()?"True":"False")
+        .print(',');
+    output.print("'rate':");
+    String delim = "[";
+    for (double price: prices) {
+      output.print(delim).print(price);
+      delim = ",";
+    }
+    output.print("],");
+    output.print("'upReg':").print(upreg)
+        .print(",'downReg':").print(downreg).print("}\n");
   }
 
+  // Prices by hour from midnight next Monday, from the cache
   private double[] getRateArray (Tariff tariff)
   {
-    double[] prices;
-    Instant start = mondayMidnight();
-    if (tariff.isTimeOfUse()) {
-      int hrs = 24;
-      if (tariff.isWeekly())
-        hrs = 168;
-      prices = new double[hrs];
-      for (int hr = 0; hr < prices.length; hr++) {
-        prices[hr] =
-                tariff.getUsageCharge(start.plus(hr * TimeService.HOUR), 1.0);
-      }
-    }
-    else {
-      prices = new double[1];
-      prices[0] = tariff.getTariffSpecification().getRates().get(0).getValue();
-    }
-    return prices;
+    return rateCache.getPrices(tariff, mondayMidnight());
   }
 
-  private TreeMap<Integer, Double> gatherHourlyPrices (Tariff tariff,
-                                                       Instant midnight)
+  // Prices that differ from the previous hour, in the 24 hours from
+  // the given hour of the price vector
+  private TreeMap<Integer, Double> gatherHourlyPrices (double[] prices,
+                                                       int start)
   {
-    double[] prices = new double[24];
     TreeMap<Integer, Double> hrPrices = new TreeMap<>();
     double lastPrice = 0.0;
-    for (int hr = 0; hr < prices.length; hr++) {
-      prices[hr] =
-              tariff.getUsageCharge(midnight.plus(hr * TimeService.HOUR), 1.0);
+    for (int hr = 0; hr < 24; hr++) {
+      double price = prices[(start + hr) % prices.length];
       if (hr == 0) {
-        lastPrice = prices[0];
-        hrPrices.put(0, prices[0]);
+        lastPrice = price;
+        hrPrices.put(0, price);
       }
-      else if (prices[hr] != lastPrice) {
-        lastPrice = prices[hr];
-        hrPrices.put(hr, prices[hr]);
+      else if (price != lastPrice) {
+        lastPrice = price;
+        hrPrices.put(hr, price);
       }
     }
     return hrPrices;
@@ -549,7 +618,7 @@ implements Analyzer
     output.print("[");
     String delim = "";
     for (int hr: hrPrices.keySet()) {
-      output.format("%s%d:%s", delim, hr, df.format(hrPrices.get(hr)));
+      output.print(delim).print(hr).print(':').print(hrPrices.get(hr));
       delim = " ";
     }      
     output.print("]");
@@ -577,7 +646,7 @@ implements Analyzer
   public void handleMessage (TariffSpecification spec)
   {
     long tid = spec.getId();
-    if (tariffData.containsKey(tid)) {
+    if (tariffIndex.get(tid) >= 0) {
       System.out.println("Duplicate tariff " + tid);
       return;
     }
@@ -600,17 +669,42 @@ implements Analyzer
       brokerTariff.put(broker, new ArrayList<>());
     }
     brokerTariff.get(broker).add(data);
-    tariffData.put(tid, data);
+    addData(data);
     newTariffs.add(tariff);
   }
 
+  private void addData (TariffData data)
+  {
+    int slot = tariffIndex.add(data.getTariffId());
+    if (slot == tariffData.length)
+      tariffData = Arrays.copyOf(tariffData, slot * 2);
+    tariffData[slot] = data;
+  }
+
+  private TariffData findData (long tid)
+  {
+    int slot = tariffIndex.get(tid);
+    return slot < 0 ? null : tariffData[slot];
+  }
+
+  // Notes a subscription change, once per tariff per timeslot
+  private void addActiveSub (TariffData td)
+  {
+    if (td.subscriptionActive)
+      return;
+    td.subscriptionActive = true;
+    if (activeSubCount == activeSubs.length)
+      activeSubs = Arrays.copyOf(activeSubs, activeSubCount * 2);
+    activeSubs[activeSubCount++] = td.getTariffId();
+  }
+
   // -----------------------------------
   // catch TariffTransaction messages
   public void handleMessage (TariffTransaction tx)
   {
     //Broker broker = tx.getBroker();
     long tid = tx.getTariffSpec().getId();
-    TariffData td = tariffData.get(tid);
+    TariffData td = findData(tid);
     double amount = tx.getCharge();
     if (tx.getTxType() == Type.PUBLISH) {
       td.addFees(amount);
@@ -622,7 +716,7 @@ implements Analyzer
       return;
     }
     // separate state from produce/consume tx
-    activeTariffs.add(tid);
+    td.active = true;
     if (tx.getTxType() == Type.PRODUCE || tx.getTxType() == Type.CONSUME) {
       td.addEnergy(tx.getKWh(), amount, tx.isRegulation());
       return;
@@ -630,13 +724,13 @@ implements Analyzer
     if (tx.getTxType() == Type.SIGNUP) {
       td.subscriptionChange(tx.getCustomerCount());
       td.addStaticEarnings(amount);
-      activeSubs.add(tid);
+      addActiveSub(td);
       return;
     }
     if (tx.getTxType() == Type.WITHDRAW) {
       td.subscriptionChange(-tx.getCustomerCount());
       td.addStaticEarnings(amount);
-      activeSubs.add(tid);
+      addActiveSub(td);
       return;
     }
     // PERIODIC, REFUND
@@ -656,8 +750,8 @@ implements Analyzer
         if (timeslot % summaryInterval == 0) {
           //System.out.println("Summarize ts " + timeslot);
           narrativeSummary(timeslot);
-          for (TariffData data: tariffData.values()) {
-            data.clear();
+          for (int slot = 0; slot < tariffIndex.size(); slot++) {
+            tariffData[slot].clear();
           }
         }
         timeslot = tu.getFirstEnabled() -
@@ -666,6 +760,145 @@ implements Analyzer
     }
   }
 
+  // -----------------------------------
+  // Checkpointable
+
+  @Override
+  public String getDataFilename ()
+  {
+    return dataFilename;
+  }
+
+  @Override
+  public void saveState (DataOutputStream out) throws IOException
+  {
+    if (null != output)
+      output.flush();
+    out.writeBoolean(null != output);
+    if (null != profileData)
+      profileData.flush();
+    out.writeBoolean(null != profileData);
+    if (null != subscriptions)
+      subscriptions.flush();
+    out.writeLong(null == subscriptions ? -1L
+                  : Files.size(Paths.get(getSubscriptionFilename())));
+    out.writeBoolean(started);
+    out.writeInt(skip);
+    out.writeInt(timeslot);
+    out.writeInt(brokers.size());
+    for (Broker broker: brokers)
+      out.writeUTF(broker.getUsername());
+    // each TariffData is in exactly one broker's list
+    out.writeInt(brokerTariff.size());
+    for (Map.Entry<Broker, List<TariffData>> entry: brokerTariff.entrySet()) {
+      out.writeUTF(entry.getKey().getUsername());
+      out.writeInt(entry.getValue().size());
+      for (TariffData data: entry.getValue())
+        data.write(out);
+    }
+    writeTariffIds(out, newTariffs);
+    writeTariffIds(out, revokes);
+    int count = 0;
+    for (int slot = 0; slot < tariffIndex.size(); slot++) {
+      if (tariffData[slot].active)
+        count += 1;
+    }
+    out.writeInt(count);
+    for (int slot = 0; slot < tariffIndex.size(); slot++) {
+      if (tariffData[slot].active)
+        out.writeLong(tariffIndex.getKey(slot));
+    }
+    out.writeInt(activeSubCount);
+    for (int i = 0; i < activeSubCount; i++)
+      out.writeLong(activeSubs[i]);
+  }
+
+  private void writeTariffIds (DataOutputStream out, List<Tariff> tariffs)
+    throws IOException
+  {
+    out.writeInt(tariffs.size());
+    for (Tariff tariff: tariffs)
+      out.writeLong(null == tariff ? -1L : tariff.getSpecId());
+  }
+
+  @Override
+  public void restoreState (DataInputStream in) throws IOException
+  {
+    boolean open = in.readBoolean();
+    boolean profileOpen = in.readBoolean();
+    long subscriptionLength = in.readLong();
+    started = in.readBoolean();
+    skip = in.readInt();
+    timeslot = in.readInt();
+    brokers = new ArrayList<>();
+    int count = in.readInt();
+    for (int i = 0; i < count; i++)
+      brokers.add(findBroker(in.readUTF()));
+    count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      List<TariffData> dataList = new ArrayList<>();
+      brokerTariff.put(findBroker(in.readUTF()), dataList);
+      int tariffs = in.readInt();
+      for (int t = 0; t < tariffs; t++) {
+        long tid = in.readLong();
+        TariffData data = new TariffData(findTariff(tid));
+        data.read(in);
+        dataList.add(data);
+        addData(data);
+      }
+    }
+    count = in.readInt();
+    for (int i = 0; i < count; i++)
+      newTariffs.add(findData(in.readLong()).tariff);
+    count = in.readInt();
+    for (int i = 0; i < count; i++) {
+      long tid = in.readLong();
+      revokes.add(tid < 0 ? null : tariffRepo.findTariffById(tid));
+    }
+    count = in.readInt();
+    for (int i = 0; i < count; i++)
+      findData(in.readLong()).active = true;
+    count = in.readInt();
+    for (int i = 0; i < count; i++)
+      addActiveSub(findData(in.readLong()));
+    if (open)
+      output = RowWriter.append(dataFilename, df);
+    if (profileOpen)
+      profileData = DataSink.append(dataFilename, getProfileColumns(), df);
+    if (subscriptionLength >= 0) {
+      // cut off the rows written after the checkpoint
+      try (RandomAccessFile file =
+          new RandomAccessFile(getSubscriptionFilename(), "rw")) {
+        if (file.length() < subscriptionLength)
+          throw new IOException("Missing rows in " + getSubscriptionFilename());
+        file.setLength(subscriptionLength);
+      }
+      subscriptions = RowWriter.append(getSubscriptionFilename(), df);
+    }
+  }
+
+  private Broker findBroker (String username) throws IOException
+  {
+    Broker broker = brokerRepo.findByUsername(username);
+    if (null == broker)
+      throw new IOException("Unknown broker " + username);
+    return broker;
+  }
+
+  // Finds a tariff the same way handleMessage(TariffSpecification) does
+  private Tariff findTariff (long tid) throws IOException
+  {
+    Tariff tariff = tariffRepo.findTariffById(tid);
+    if (null != tariff)
+      return tariff;
+    TariffSpecification spec = tariffRepo.findSpecificationById(tid);
+    if (null == spec)
+      throw new IOException("Unknown tariff " + tid);
+    tariff = new Tariff(spec);
+    tariff.init();
+    return tariff;
+  }
+
   class TariffData
   {
     Tariff tariff;
@@ -683,6 +916,10 @@ implements Analyzer
     int subscribers = 0;
     double staticEarnings = 0.0;
     double totalStaticEarnings = 0.0;
+    // transactions since the last summary, subscription changes in
+    // the current timeslot
+    boolean active = false;
+    boolean subscriptionActive = false;
 
     TariffData (Tariff tariff)
     {
@@ -765,101 +1002,73 @@ implements Analyzer
       staticEarnings = 0.0;
     }
 
+    void write (DataOutputStream out) throws IOException
+    {
+      out.writeLong(getTariffId());
+      for (double value: new double[] {fees, totalFees, energy, totalEnergy,
+                                       energyEarnings, totalEnergyEarnings,
+                                       balanceEnergy, totalBalanceEnergy,
+                                       balanceEarnings, totalBalanceEarnings,
+                                       staticEarnings, totalStaticEarnings})
+        out.writeDouble(value);
+      out.writeInt(subChange);
+      out.writeInt(subscribers);
+    }
+
+    // Reads what write() wrote, after the tariff id
+    void read (DataInputStream in) throws IOException
+    {
+      fees = in.readDouble();
+      totalFees = in.readDouble();
+      energy = in.readDouble();
+      totalEnergy = in.readDouble();
+      energyEarnings = in.readDouble();
+      totalEnergyEarnings = in.readDouble();
+      balanceEnergy = in.readDouble();
+      totalBalanceEnergy = in.readDouble();
+      balanceEarnings = in.readDouble();
+      totalBalanceEarnings = in.readDouble();
+      staticEarnings = in.readDouble();
+      totalStaticEarnings = in.readDouble();
+      subChange = in.readInt();
+      subscribers = in.readInt();
+    }
+
     void printSummary (int timeslot)
     {
-      output.format("%s %d:", tariff.getBroker().getUsername(), tariff.getId());
+      output.print(tariff.getBroker().getUsername())
+          .print(' ').print(tariff.getId()).print(':');
       //if (!tariff.isActive())
       //  output.print(" (inactive)");
       if (fees != 0.0)
-        output.format(" fees=%s", df.format(fees));
-      output.format(" energy=%s earnings=%s",
-                    df.format(energy), df.format(energyEarnings));
+        output.print(" fees=").print(fees);
+      output.print(" energy=").print(energy)
+          .print(" earnings=").print(energyEarnings);
       if (balanceEnergy != 0.0 || balanceEarnings != 0.0)
-        output.format(" regulation=%s reg earnings=%s",
-                      df.format(balanceEnergy), df.format(balanceEarnings));
+        output.print(" regulation=").print(balanceEnergy)
+            .print(" reg earnings=").print(balanceEarnings);
       if (subChange > 0)
-        output.format(" signups=%d", subChange);
+        output.print(" signups=").print(subChange);
       else if (subChange < 0)
-        output.format(" withdrawals=%d", -subChange);
-      output.format(" subscribers=%d", subscribers);
+        output.print(" withdrawals=").print(-subChange);
+      output.print(" subscribers=").print(subscribers);
       if (staticEarnings != 0.0)
-        output.format(" cust fees=%s", df.format(staticEarnings));
+        output.print(" cust fees=").print(staticEarnings);
       output.println();
     }
 
     void printFinalSummary ()
     {
-      output.format("%d %s", tariff.getId(), tariff.getPowerType().toString());
-      output.format(" fees=%s", df.format(totalFees));
-      output.format(" energy=%s, earnings=%s",
-                    df.format(totalEnergy), df.format(totalEnergyEarnings));
-      output.format(" regulation=%s, reg earnings=%s",
-                    df.format(totalBalanceEnergy), df.format(totalBalanceEarnings));
-      output.format(" subscribers=%d", subscribers);
-      output.format(" cust fees=%s", df.format(totalStaticEarnings));
+      output.print(tariff.getId())
+          .print(' ').print(tariff.getPowerType().toString());
+      output.print(" fees=").print(totalFees);
+      output.print(" energy=").print(totalEnergy)
+          .print(", earnings=").print(totalEnergyEarnings);
+      output.print(" regulation=").print(totalBalanceEnergy)
+          .print(", reg earnings=").print(totalBalanceEarnings);
+      output.print(" subscribers=").print(subscribers);
+      output.print(" cust fees=").print(totalStaticEarnings);
       output.println();
     }
   }
-
-  class TariffActivity
-  {
-    int ts;
-    long tariffId;
-    int subCount;
-    double tariffPmt;
-    double ratePmt;
-    double regPmt;
-
-    TariffActivity (long tid, int subs, double tp, double rp, double rgp)
-    {
-      super();
-      ts = timeslot;
-      tariffId = tid;
-      subCount = subs;
-      tariffPmt = tp;
-      ratePmt = rp;
-      regPmt = rgp;
-    }
-
-    TariffActivity (TariffData td)
-    {
-      super();
-      ts = timeslot;
-      tariffId = td.getTariffId();
-      subCount = td.getSubscribers();
-      tariffPmt = td.getStaticEarnings();
-      ratePmt = td.getRateEarnings();
-      regPmt = td.getRegulationEarnings();
-    }
-
-    double getTimeslot ()
-    {
-      return ts;
-    }
-
-    long getTariffid ()
-    {
-      return tariffId;
-    }
-
-    int getSubCount ()
-    {
-      return subCount;
-    }
-
-    double getTariffPmt ()
-    {
-      return tariffPmt;
-    }
-
-    double getRatePmt ()
-    {
-      return ratePmt;
-    }
-
-    double getRegPmt ()
-    {
-      return regPmt;
-    }
-  }
 }
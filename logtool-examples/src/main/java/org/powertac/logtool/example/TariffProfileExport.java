@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+import org.powertac.logtool.example.DataSink.Column;
+import org.powertac.logtool.example.DataSink.Type;
+
+/**
+ * Collects the tariff profiles of every game in a tournament into a single
+ * data file. TariffAnalysis --profile is run on all the games through
+ * TournamentProcessor, several games at once, writing its columnar profile
+ * output to tournament-dir/data/tariff-profile-g.ptcol for game g. Those
+ * files are then merged, in game order, into the output file, with a game
+ * column in front of the profile columns. Each tariff appears only once
+ * per game, even if a game is listed twice.
+ *
+ * The rate of each tariff is a vector column of one, 24 or 168 prices, as
+ * in the profile dicts. The output is columnar if its name ends in
+ * ".ptcol", and csv otherwise, with the rate written as [p1 p2 ...].
+ * Games whose profile files already exist are not analyzed again unless
+ * --force is given.
+ *
+ * Usage: TariffProfileExport [--force] [--threads n] [--csv manifest]
+ *          tournament-dir output-file
+ */
+public class TariffProfileExport
+{
+  static final String dataPrefix = "tariff-profile-";
+
+  private List<String> processorArgs = new ArrayList<>();
+  private String outputFile;
+
+  /**
+   * Main method just creates an instance and passes command-line args to
+   * its cli() method.
+   */
+  public static void main (String[] args)
+  {
+    new TariffProfileExport().cli(args);
+  }
+
+  private void cli (String[] args)
+  {
+    processorArgs.add("--columnar");
+    int offset = 0;
+    while (offset < args.length && args[offset].startsWith("--")) {
+      if ("--force".equals(args[offset])) {
+        processorArgs.add(args[offset]);
+        offset += 1;
+      }
+      else if (("--threads".equals(args[offset]) || "--csv".equals(args[offset]))
+               && offset + 1 < args.length) {
+        processorArgs.add(args[offset]);
+        processorArgs.add(args[offset + 1]);
+        offset += 2;
+      }
+      else {
+        break;
+      }
+    }
+    if (args.length - offset != 2) {
+      System.out.println("Usage: TariffProfileExport [--force] [--threads n] [--csv manifest] tournament-dir output-file");
+      return;
+    }
+    processorArgs.add(args[offset]);
+    processorArgs.add(TariffAnalysis.class.getSimpleName());
+    processorArgs.add(dataPrefix);
+    processorArgs.add("--profile");
+    outputFile = args[offset + 1];
+
+    List<TournamentProcessor.Game> games =
+        new TournamentProcessor().cli(processorArgs.toArray(new String[0]));
+    try {
+      merge(games);
+    }
+    catch (IOException ioe) {
+      System.out.println("Cannot write " + outputFile + ": " + ioe.toString());
+    }
+  }
+
+  // Copies the profiles of all the games to the output file
+  private void merge (List<TournamentProcessor.Game> games) throws IOException
+  {
+    List<Column> columns = new ArrayList<>();
+    columns.add(new Column("game", Type.STRING));
+    columns.addAll(TariffAnalysis.getProfileColumns());
+    DecimalFormat format =
+        (DecimalFormat) NumberFormat.getNumberInstance(Locale.US);
+    format.setGroupingUsed(false);
+    format.setMaximumFractionDigits(6);
+    DataSink output = DataSink.open(outputFile, columns, format, true);
+
+    // tariff ids seen so far in each game
+    HashMap<String, LongIndex> seen = new HashMap<>();
+    int tariffCount = 0;
+    for (TournamentProcessor.Game game: games) {
+      if (null == game.dataFile || !game.dataFile.isFile()) {
+        System.out.println("No profiles for game " + game.gameId);
+        continue;
+      }
+      LongIndex tariffs = seen.get(game.gameId);
+      if (null == tariffs) {
+        tariffs = new LongIndex();
+        seen.put(game.gameId, tariffs);
+      }
+      try (ColumnarReader reader =
+          new ColumnarReader(game.dataFile.getPath())) {
+        List<Column> gameColumns = reader.getColumns();
+        int idColumn = checkColumns(gameColumns, columns);
+        while (reader.nextGroup()) {
+          long[] ids = reader.getLongs(idColumn);
+          for (int row = 0; row < reader.getRowCount(); row++) {
+            int known = tariffs.size();
+            if (tariffs.add(ids[row]) < known)
+              continue;
+            output.putString(game.gameId);
+            copyRow(reader, gameColumns, row, output);
+            output.endRow();
+            tariffCount += 1;
+          }
+        }
+      }
+    }
+    output.close();
+    System.out.println("Wrote " + tariffCount + " tariffs from "
+                       + seen.size() + " games to " + outputFile);
+  }
+
+  // Makes sure a game's file has the expected columns, and returns the
+  // index of the tariff id
+  private int checkColumns (List<Column> gameColumns, List<Column> columns)
+    throws IOException
+  {
+    if (gameColumns.size() != columns.size() - 1)
+      throw new IOException("Unexpected profile columns " + gameColumns.size());
+    int idColumn = -1;
+    for (int i = 0; i < gameColumns.size(); i++) {
+      Column expected = columns.get(i + 1);
+      Column actual = gameColumns.get(i);
+      if (!expected.getName().equals(actual.getName())
+          || expected.getType() != actual.getType())
+        throw new IOException("Unexpected profile column " + actual.getName());
+      if ("tariffId".equals(actual.getName()))
+        idColumn = i;
+    }
+    return idColumn;
+  }
+
+  private void copyRow (ColumnarReader reader, List<Column> columns, int row,
+                        DataSink output)
+  {
+    for (int col = 0; col < columns.size(); col++) {
+      switch (columns.get(col).getType()) {
+      case INT:
+        output.putInt(reader.getInts(col)[row]);
+        break;
+      case LONG:
+        output.putLong(reader.getLongs(col)[row]);
+        break;
+      case DOUBLE:
+        output.putDouble(reader.getDoubles(col)[row]);
+        break;
+      case VECTOR:
+        output.putVector(reader.getVectors(col)[row]);
+        break;
+      default:
+        output.putString(reader.getStrings(col)[row]);
+      }
+    }
+  }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-width rows of doubles indexed by timeslot, for analyzers that
+ * collect a few numbers per target timeslot (typically one or two per
+ * lead time or per broker) over a sliding window of open timeslots.
+ * Rows are kept in a single array, in slot (timeslot mod capacity), so
+ * storing and updating values does not allocate anything once the ring
+ * is big enough for the window.
+ *
+ * A row exists once a value has been stored in it or it has been opened,
+ * and a new row starts out filled with the empty value given to the
+ * constructor. Rows are released in timeslot order by release(), and
+ * values stored for timeslots that have already been released are
+ * ignored. The ring grows if the span between the oldest and newest rows
+ * does not fit the current capacity.
+ */
+public class TimeslotRing
+{
+  // refuse to grow beyond this many rows
+  private static final int maxCapacity = 1 << 20;
+  private static final int noTimeslot = Integer.MIN_VALUE;
+
+  private int width;
+  private double empty;
+  private int mask;
+  private int[] tags;
+  private double[] values;
+
+  // rows below floor have been released
+  private int floor = noTimeslot + 1;
+  // span of rows that may exist, empty if high < low
+  private int low = 0;
+  private int high = -1;
+
+  /**
+   * Creates a ring for the given number of timeslots, rounded up to a
+   * power of two, with width values per timeslot.
+   */
+  public TimeslotRing (int window, int width, double empty)
+  {
+    super();
+    this.width = width;
+    this.empty = empty;
+    allocate(capacityFor(window));
+  }
+
+  public int getWidth ()
+  {
+    return width;
+  }
+
+  public boolean isEmpty ()
+  {
+    return high < low;
+  }
+
+  /**
+   * Lowest timeslot that may have a row. Meaningless if the ring is empty.
+   */
+  public int getLow ()
+  {
+    return low;
+  }
+
+  /**
+   * Highest timeslot that may have a row. Meaningless if the ring is empty.
+   */
+  public int getHigh ()
+  {
+    return high;
+  }
+
+  public boolean contains (int timeslot)
+  {
+    return tags[timeslot & mask] == timeslot;
+  }
+
+  /**
+   * Returns the value at the given index for the given timeslot, or the
+   * empty value if there is no row for the timeslot.
+   */
+  public double get (int timeslot, int index)
+  {
+    int slot = timeslot & mask;
+    if (tags[slot] != timeslot)
+      return empty;
+    return values[slot * width + index];
+  }
+
+  /**
+   * Makes sure there is a row for the given timeslot. Returns false if
+   * the timeslot has been released.
+   */
+  public boolean open (int timeslot)
+  {
+    return row(timeslot) >= 0;
+  }
+
+  /**
+   * Stores a value. Returns false if the timeslot has been released.
+   */
+  public boolean set (int timeslot, int index, double value)
+  {
+    int base = row(timeslot);
+    if (base < 0)
+      return false;
+    values[base + index] = value;
+    return true;
+  }
+
+  /**
+   * Adds to a value. Returns false if the timeslot has been released.
+   */
+  public boolean add (int timeslot, int index, double value)
+  {
+    int base = row(timeslot);
+    if (base < 0)
+      return false;
+    values[base + index] += value;
+    return true;
+  }
+
+  /**
+   * Discards the rows for all timeslots before the given one.
+   */
+  public void release (int before)
+  {
+    if (before <= floor)
+      return;
+    floor = before;
+    if (isEmpty())
+      return;
+    int last = Math.min(high, before - 1);
+    for (int ts = low; ts <= last; ts++) {
+      int slot = ts & mask;
+      if (tags[slot] == ts)
+        tags[slot] = noTimeslot;
+    }
+    if (before > high) {
+      low = 0;
+      high = -1;
+    }
+    else {
+      low = Math.max(low, before);
+    }
+  }
+
+  // Returns the offset of the row for timeslot in values, creating
+  // the row if needed, or -1 if the timeslot has been released
+  private int row (int timeslot)
+  {
+    int slot = timeslot & mask;
+    if (tags[slot] == timeslot)
+      return slot * width;
+    if (timeslot < floor)
+      return -1;
+    int newLow = isEmpty() ? timeslot : Math.min(low, timeslot);
+    int newHigh = isEmpty() ? timeslot : Math.max(high, timeslot);
+    if ((long) newHigh - newLow >= tags.length) {
+      grow(capacityFor((int) Math.min((long) newHigh - newLow + 1,
+                                      maxCapacity + 1L)));
+      slot = timeslot & mask;
+    }
+    low = newLow;
+    high = newHigh;
+    tags[slot] = timeslot;
+    Arrays.fill(values, slot * width, (slot + 1) * width, empty);
+    return slot * width;
+  }
+
+  private int capacityFor (int window)
+  {
+    if (window > maxCapacity)
+      throw new IllegalStateException("Timeslot window " + window
+                                      + " too large");
+    int capacity = 1;
+    while (capacity < window)
+      capacity <<= 1;
+    return capacity;
+  }
+
+  private void allocate (int capacity)
+  {
+    mask = capacity - 1;
+    tags = new int[capacity];
+    Arrays.fill(tags, noTimeslot);
+    values = new double[capacity * width];
+  }
+
+  // Moves the existing rows into a larger ring
+  private void grow (int capacity)
+  {
+    int[] oldTags = tags;
+    double[] oldValues = values;
+    allocate(capacity);
+    for (int old = 0; old < oldTags.length; old++) {
+      int ts = oldTags[old];
+      if (ts == noTimeslot)
+        continue;
+      int slot = ts & mask;
+      tags[slot] = ts;
+      System.arraycopy(oldValues, old * width, values, slot * width, width);
+    }
+  }
+}
@@ -19,7 +19,6 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 
 import org.apache.logging.log4j.Logger;
@@ -30,11 +29,9 @@ import org.powertac.common.Broker;
 import org.powertac.common.repo.BrokerRepo;
 import org.powertac.common.Competition;
 import org.powertac.common.MarketTransaction;
-import org.powertac.common.TariffTransaction;
 import org.powertac.common.msg.SimStart;
 import org.powertac.common.msg.TimeslotUpdate;
 //import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -50,7 +47,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class TotalDemand
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(TotalDemand.class.getName());
@@ -61,10 +58,13 @@ implements Analyzer
   private boolean started = false;
   private int skip = 1;
 
-  // data collectors for current timeslot
+  // data collectors for current timeslot; customer demand comes from the
+  // demand index
   private int timeslot;
-  private double intDemand = 0.0;
-  HashMap<Broker, HashMap<Integer, Double>> wholesalePosn;
+  private DemandIndex demand;
+  // wholesale positions by timeslot, one column per wholesale broker
+  private List<Broker> wholesaleBrokers;
+  private TimeslotRing wholesalePosn;
 
   // data output file
   private PrintWriter data = null;
@@ -110,6 +110,7 @@ implements Analyzer
   @Override
   public void setup ()
   {
+    demand = getDemandIndex();
     try {
       data = new PrintWriter(new File(dataFilename));
     }
@@ -125,10 +126,10 @@ implements Analyzer
     data.println("slot, dow, hour, int_demand, ext_demand");
     competition = Competition.currentCompetition();
     BrokerRepo brokerRepo = (BrokerRepo)getBean("brokerRepo");
-    wholesalePosn = new HashMap<>();
-    brokerRepo.findWholesaleBrokers().forEach((b) -> {
-      wholesalePosn.put(b, new HashMap<>());
-    });
+    wholesaleBrokers = new ArrayList<>(brokerRepo.findWholesaleBrokers());
+    wholesalePosn =
+        new TimeslotRing(competition.getTimeslotsOpen() + 1,
+                         wholesaleBrokers.size(), 0.0);
     //gameId = competition.getName();
   }
 
@@ -143,7 +144,7 @@ implements Analyzer
   // the second timeslot (the third call to this method), and so customer
   // consumption against non-default broker tariffs first occurs after
   // four calls.
-  private void summarizeTimeslot (Instant instant)
+  private void summarizeTimeslot (Instant instant, DemandIndex.Period period)
   {
     // output format depends on options
     // print timeslot, dow, hod, production, consumption
@@ -152,15 +153,16 @@ implements Analyzer
                 instant.get(DateTimeFieldType.dayOfWeek()),
                 instant.get(DateTimeFieldType.hourOfDay()));
     double extDemand = 0.0;
-    for (Broker b: wholesalePosn.keySet()) {
-      HashMap<Integer, Double> tsMap = wholesalePosn.get(b);
-      Double qty = tsMap.get(timeslot);
-      if (null != qty && qty > 0.0)
+    for (int i = 0; i < wholesaleBrokers.size(); i++) {
+      double qty = wholesalePosn.get(timeslot, i);
+      if (qty > 0.0)
         extDemand += qty;
     }
+    wholesalePosn.release(timeslot + 1);
     // print customer usage
+    double intDemand = -(period.getTotal(DemandIndex.consumed)
+                         + period.getTotal(DemandIndex.produced)) / 1000.0;
     data.printf(", %s, %s\n", df.format(intDemand), df.format(extDemand));
-    intDemand = 0.0;
   }
 
   // -----------------------------------
@@ -184,39 +186,21 @@ implements Analyzer
       timeslot = msg.getFirstEnabled() - 1;
     }
     else {
-      summarizeTimeslot(msg.getPostedTime());
+      summarizeTimeslot(msg.getPostedTime(), demand.getPeriod(msg));
       timeslot = msg.getFirstEnabled() - 1;
       log.info("Start timeslot " + timeslot);
     }
   }
 
-  // -----------------------------------
-  // catch TariffTransactions, accumulate net demand
-  public void handleMessage (TariffTransaction tx)
-  {
-    if (!started)
-      return;
-    if (tx.getTxType() == TariffTransaction.Type.CONSUME) {
-        intDemand -= tx.getKWh() / 1000.0;
-    }
-    else if (tx.getTxType() == TariffTransaction.Type.PRODUCE) {
-        intDemand -= tx.getKWh() / 1000.0;
-    }
-  }
-
   // ------------------------------------
   // catch MarketTransaction events from wholesale brokers, add up quantities
   // per timeslot
   public void handleMessage (MarketTransaction tx)
   {
-    HashMap<Integer, Double> brokerMap = wholesalePosn.get(tx.getBroker());
-    if (null != brokerMap) {
-      int ts = tx.getTimeslotIndex();
-      Double value = brokerMap.get(ts);
-      if (null == value)
-        brokerMap.put(ts, tx.getMWh());
-      else
-        brokerMap.put(ts, value + tx.getMWh());
-    }
+    if (null == wholesalePosn)
+      return;
+    int index = wholesaleBrokers.indexOf(tx.getBroker());
+    if (index >= 0)
+      wholesalePosn.add(tx.getTimeslotIndex(), index, tx.getMWh());
   }
 }
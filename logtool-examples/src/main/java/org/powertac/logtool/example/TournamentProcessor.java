@@ -0,0 +1,421 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Applies a single analyzer to all the sim logs in a tournament, processing
+ * several games at once inside a single JVM. This replaces running
+ * python-scripts/TournamentLogtoolProcessor.py, which starts maven and a
+ * new JVM for every game.
+ *
+ * Games are found either in a csv manifest of the form used by
+ * TournamentGameIterator.py (only the gameId column is used), in which case
+ * the state log for game g is expected in tournament-dir/g/log, or by
+ * searching tournament-dir for state logs in log directories. Games that
+ * have not been unpacked are read directly from their archives, named
+ * game-g-sim-logs.tar.gz as written by TournamentIterator.py, or, for
+ * games in a manifest, g.tar.gz as saved by TournamentGameIterator.py.
+ * Output for game g is written to tournament-dir/data/data-prefix-g.csv, and games
+ * for which that file already exists are skipped unless --force is given.
+ * With --columnar, output goes to data-prefix-g.ptcol instead, which analyzers
+ * that support it write in the columnar format described in ColumnarSink.
+ *
+ * With --checkpoint n, analyzers that implement Checkpointable save their
+ * state every n timeslots (see CheckpointRunner). A data file with a
+ * checkpoint next to it belongs to a game that did not finish, and that
+ * game is resumed from the checkpoint rather than skipped.
+ * The analyzer is run as
+ *   analyzer [options ...] state-log data-file
+ * exactly as the python script does.
+ *
+ * Each worker thread runs its analyzers in its own class loader, since the
+ * logtool framework keeps its Spring context and the current Competition
+ * in static variables. The number of workers is given by --threads, and
+ * defaults to the number of available processors. Remember to give the JVM
+ * enough heap for that many games at once.
+ *
+ * Usage: TournamentProcessor [--force] [--columnar] [--threads n]
+ *          [--checkpoint n] [--csv manifest]
+ *          tournament-dir analyzer data-prefix [options ...]
+ */
+public class TournamentProcessor
+{
+  static private Logger log = LogManager.getLogger(TournamentProcessor.class.getName());
+
+  private boolean force = false;
+  private String extension = ".csv";
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private int checkpoint = 0;
+  private String manifest = null;
+  private File tournamentDir;
+  private File dataDir;
+  private String analyzerName;
+  private String dataPrefix;
+  private List<String> options = new ArrayList<>();
+
+  // class path used to build the per-worker class loaders
+  private URL[] classpath;
+  private ThreadLocal<ClassLoader> workerLoader = new ThreadLocal<>();
+
+  // state log names look like powertac-sim-nnn.state
+  private Pattern gameIdPattern = Pattern.compile("(\\d+)\\.state$");
+
+  // game archives look like game-nnn-sim-logs.tar.gz
+  private Pattern archivePattern =
+      Pattern.compile("^game-(\\w+)-sim-logs\\.(tar\\.gz|tgz)$");
+
+  /**
+   * Main method just creates an instance and passes command-line args to
+   * its cli() method.
+   */
+  public static void main (String[] args)
+  {
+    new TournamentProcessor().cli(args);
+  }
+
+  /**
+   * Processes the tournament as given by the command-line args, and
+   * returns the games that have complete output, whether it was written
+   * now or already existed.
+   */
+  List<Game> cli (String[] args)
+  {
+    int offset = 0;
+    while (offset < args.length && args[offset].startsWith("--")) {
+      if ("--force".equals(args[offset])) {
+        force = true;
+        offset += 1;
+      }
+      else if ("--columnar".equals(args[offset])) {
+        extension = ColumnarSink.extension;
+        offset += 1;
+      }
+      else if ("--threads".equals(args[offset]) && offset + 1 < args.length) {
+        threads = Integer.parseInt(args[offset + 1]);
+        offset += 2;
+      }
+      else if ("--checkpoint".equals(args[offset]) && offset + 1 < args.length) {
+        checkpoint = Integer.parseInt(args[offset + 1]);
+        offset += 2;
+      }
+      else if ("--csv".equals(args[offset]) && offset + 1 < args.length) {
+        manifest = args[offset + 1];
+        offset += 2;
+      }
+      else {
+        break;
+      }
+    }
+    if (args.length - offset < 3 || threads < 1) {
+      System.out.println("Usage: TournamentProcessor [--force] [--columnar] [--threads n] [--checkpoint n] [--csv manifest] tournament-dir analyzer data-prefix [options ...]");
+      return new ArrayList<>();
+    }
+    if (checkpoint > 0)
+      System.setProperty(AnalyzerContext.checkpointProperty,
+                         Integer.toString(checkpoint));
+    tournamentDir = new File(args[offset]);
+    analyzerName = args[offset + 1];
+    if (-1 == analyzerName.indexOf('.'))
+      analyzerName = getClass().getPackage().getName() + "." + analyzerName;
+    dataPrefix = args[offset + 2];
+    options.addAll(Arrays.asList(args).subList(offset + 3, args.length));
+    dataDir = new File(tournamentDir, "data");
+    if (!dataDir.isDirectory() && !dataDir.mkdirs()) {
+      System.out.println("Cannot create data directory " + dataDir);
+      return new ArrayList<>();
+    }
+    try {
+      classpath = buildClasspath();
+      List<Game> games = (null == manifest) ? findGames() : readManifest();
+      return processAll(games);
+    }
+    catch (IOException ioe) {
+      System.out.println("Cannot read games: " + ioe.toString());
+      return new ArrayList<>();
+    }
+  }
+
+  // Runs all the games on a bounded pool of worker threads, returns
+  // the ones that did not fail
+  private List<Game> processAll (List<Game> games)
+  {
+    ExecutorService pool =
+        Executors.newFixedThreadPool(threads, new WorkerFactory());
+    List<Future<Boolean>> results = new ArrayList<>();
+    for (Game game: games) {
+      results.add(pool.submit(() -> process(game)));
+    }
+    pool.shutdown();
+    List<Game> finished = new ArrayList<>();
+    int done = 0;
+    int failed = 0;
+    for (int i = 0; i < games.size(); i++) {
+      try {
+        if (results.get(i).get())
+          done += 1;
+        finished.add(games.get(i));
+      }
+      catch (ExecutionException | InterruptedException e) {
+        failed += 1;
+        log.error("Game " + games.get(i).gameId + " failed", e);
+        System.out.println("Game " + games.get(i).gameId + " failed: "
+                           + e.toString());
+      }
+    }
+    System.out.println("Processed " + done + " of " + games.size()
+                       + " games, " + failed + " failed");
+    return finished;
+  }
+
+  // Runs the analyzer on a single game. Returns false if the game
+  // was skipped.
+  private boolean process (Game game) throws Exception
+  {
+    File dataFile = new File(dataDir, dataPrefix + game.gameId + extension);
+    game.dataFile = dataFile;
+    File checkpointFile =
+        new File(dataFile.getPath() + CheckpointRunner.extension);
+    boolean incomplete = checkpointFile.exists();
+    if (force || (incomplete && checkpoint == 0)) {
+      dataFile.delete();
+      checkpointFile.delete();
+    }
+    else if (dataFile.exists() && !incomplete) {
+      System.out.println("Data file " + dataFile + " exists");
+      return false;
+    }
+    if (null == game.stateLog) {
+      throw new IOException("No state log for game " + game.gameId);
+    }
+    List<String> args = new ArrayList<>(options);
+    args.add(game.stateLog.getPath());
+    args.add(dataFile.getPath());
+    System.out.println("Game " + game.gameId + ": " + args);
+
+    ClassLoader loader = getWorkerLoader();
+    Thread current = Thread.currentThread();
+    ClassLoader saved = current.getContextClassLoader();
+    current.setContextClassLoader(loader);
+    try {
+      Class<?> analyzer = Class.forName(analyzerName, true, loader);
+      Method main = analyzer.getMethod("main", String[].class);
+      main.invoke(null, (Object) args.toArray(new String[0]));
+    }
+    catch (InvocationTargetException ite) {
+      if (ite.getCause() instanceof Exception)
+        throw (Exception) ite.getCause();
+      throw ite;
+    }
+    finally {
+      current.setContextClassLoader(saved);
+    }
+    return true;
+  }
+
+  // Each worker thread gets its own class loader, with the platform
+  // class loader as its parent so that nothing is shared with other workers
+  private ClassLoader getWorkerLoader ()
+  {
+    ClassLoader loader = workerLoader.get();
+    if (null == loader) {
+      loader = new URLClassLoader(classpath,
+                                  ClassLoader.getSystemClassLoader().getParent());
+      workerLoader.set(loader);
+    }
+    return loader;
+  }
+
+  private URL[] buildClasspath () throws MalformedURLException
+  {
+    String[] entries =
+        System.getProperty("java.class.path").split(File.pathSeparator);
+    URL[] result = new URL[entries.length];
+    for (int i = 0; i < entries.length; i++) {
+      result[i] = new File(entries[i]).toURI().toURL();
+    }
+    return result;
+  }
+
+  // Reads game IDs from the tournament manifest, which may be a file
+  // or a URL
+  private List<Game> readManifest () throws IOException
+  {
+    List<Game> result = new ArrayList<>();
+    URL url;
+    if (manifest.contains("://"))
+      url = new URL(manifest);
+    else
+      url = new File(manifest).toURI().toURL();
+    try (BufferedReader in =
+        new BufferedReader(new InputStreamReader(url.openStream(),
+                                                 StandardCharsets.UTF_8))) {
+      String header = in.readLine();
+      if (null == header)
+        return result;
+      if (header.startsWith("\uFEFF"))
+        header = header.substring(1);
+      int column = Arrays.asList(header.split(",")).indexOf("gameId");
+      if (-1 == column)
+        throw new IOException("No gameId column in " + manifest);
+      String line;
+      while (null != (line = in.readLine())) {
+        String[] fields = line.split(",");
+        if (fields.length <= column || fields[column].isEmpty())
+          continue;
+        String gameId = fields[column];
+        File stateLog =
+            findStateLog(new File(new File(tournamentDir, gameId), "log"));
+        if (null == stateLog)
+          stateLog = findArchive(gameId);
+        result.add(new Game(gameId, stateLog));
+      }
+    }
+    return result;
+  }
+
+  // Finds the archive of a game that has not been unpacked, under either
+  // of the names the tournament scripts save it as
+  private File findArchive (String gameId)
+  {
+    String[] names = {"game-" + gameId + "-sim-logs.tar.gz",
+                      gameId + ".tar.gz"};
+    for (String name: names) {
+      File archive = new File(tournamentDir, name);
+      if (archive.isFile())
+        return archive;
+    }
+    return null;
+  }
+
+  // Finds games by looking for state logs in log directories one or
+  // two levels down in the tournament directory, and for game archives
+  // that have not been unpacked
+  private List<Game> findGames () throws IOException
+  {
+    List<Game> result = new ArrayList<>();
+    Set<String> found = new HashSet<>();
+    List<File> logDirs = new ArrayList<>();
+    File top = new File(tournamentDir, "log");
+    if (top.isDirectory())
+      logDirs.add(top);
+    File[] subdirs = tournamentDir.listFiles(File::isDirectory);
+    if (null == subdirs)
+      throw new IOException("Cannot read " + tournamentDir);
+    Arrays.sort(subdirs);
+    for (File dir: subdirs) {
+      File logDir = new File(dir, "log");
+      if (logDir.isDirectory())
+        logDirs.add(logDir);
+    }
+    for (File logDir: logDirs) {
+      File[] states =
+          logDir.listFiles((d, name) -> isSimStateLog(name));
+      if (null == states)
+        continue;
+      Arrays.sort(states);
+      for (File state: states) {
+        Matcher m = gameIdPattern.matcher(state.getName());
+        String gameId = m.find() ? m.group(1) : state.getName();
+        if (logDir != top)
+          gameId = logDir.getParentFile().getName();
+        result.add(new Game(gameId, state));
+        found.add(gameId);
+      }
+    }
+    File[] archives = tournamentDir.listFiles(File::isFile);
+    Arrays.sort(archives);
+    for (File archive: archives) {
+      Matcher m = archivePattern.matcher(archive.getName());
+      if (m.matches() && !found.contains(m.group(1)))
+        result.add(new Game(m.group(1), archive));
+    }
+    return result;
+  }
+
+  // Finds the sim state log in a game's log directory. listFiles() returns
+  // the files in no particular order, so if there is more than one, the
+  // first by name is used, the same one on every run.
+  private File findStateLog (File logDir)
+  {
+    File[] states = logDir.listFiles((d, name) -> isSimStateLog(name));
+    if (null == states || 0 == states.length)
+      return null;
+    Arrays.sort(states);
+    if (states.length > 1)
+      log.warn(states.length + " state logs in " + logDir + ", using "
+               + states[0].getName());
+    return states[0];
+  }
+
+  private boolean isSimStateLog (String name)
+  {
+    return name.endsWith(".state") && !name.endsWith("init.state");
+  }
+
+  // A game, its state log, and its output once it has been processed
+  class Game
+  {
+    String gameId;
+    File stateLog;
+    File dataFile;
+
+    Game (String gameId, File stateLog)
+    {
+      super();
+      this.gameId = gameId;
+      this.stateLog = stateLog;
+    }
+  }
+
+  // Names the worker threads
+  class WorkerFactory implements ThreadFactory
+  {
+    private AtomicInteger count = new AtomicInteger(0);
+
+    @Override
+    public Thread newThread (Runnable task)
+    {
+      return new Thread(task, "logtool-worker-" + count.incrementAndGet());
+    }
+  }
+}
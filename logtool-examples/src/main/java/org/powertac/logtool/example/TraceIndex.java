@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Sidecar index for a trace log, recording the byte offset of the
+ * balancing market configuration line and of the "Deactivated timeslot"
+ * line that starts the balancing block for each timeslot. The index for
+ * game.trace is kept in game.trace.idx, and the index for the trace log in
+ * game-3-sim-logs.tar.gz is kept in game-3-sim-logs.tar.gz.trace.idx.
+ * An index is ignored if the size or modification time of the file it
+ * describes has changed since it was written.
+ *
+ * BrokerBalancingActions fills in an index as a side effect of reading a
+ * trace log, so the second and later runs on a game can seek directly to
+ * the data they need. Indexes can also be built ahead of time by running
+ * this class as
+ *   TraceIndex trace-log ...
+ */
+public class TraceIndex
+{
+  static private Logger log = LogManager.getLogger(TraceIndex.class.getName());
+
+  private static final int magic = 0x50545449; // "PTTI"
+  private static final int version = 1;
+
+  // literal markers for the indexed lines
+  static final String configMarker = "Configured BM: ";
+  static final String timeslotMarker = "Deactivated timeslot ";
+
+  private File source;
+  private File indexFile;
+  private long sourceLength;
+  private long sourceModified;
+
+  private long configOffset = -1l;
+  private HashMap<Integer, Long> offsets = new HashMap<>();
+  private boolean changed = false;
+
+  /**
+   * Main method builds indexes for the trace logs named on the
+   * command line.
+   */
+  public static void main (String[] args)
+  {
+    if (0 == args.length) {
+      System.out.println("Usage: TraceIndex trace-log ...");
+      return;
+    }
+    for (String filename: args) {
+      try {
+        TraceIndex index = build(filename);
+        System.out.println(filename + ": " + index.offsets.size()
+                           + " timeslots");
+      }
+      catch (IOException ioe) {
+        System.out.println("Cannot index " + filename + ": " + ioe.toString());
+      }
+    }
+  }
+
+  /**
+   * Reads the index for the given trace log or game archive. If there is
+   * no usable index, the result is empty and can be filled in and saved.
+   */
+  public static TraceIndex load (String traceFilename)
+  {
+    TraceIndex result = new TraceIndex(traceFilename);
+    if (result.indexFile.canRead()) {
+      try {
+        result.read();
+      }
+      catch (IOException ioe) {
+        log.warn("Ignoring trace index " + result.indexFile + ": "
+                 + ioe.toString());
+        result.configOffset = -1l;
+        result.offsets.clear();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Scans an entire trace log and saves its index.
+   */
+  public static TraceIndex build (String traceFilename) throws IOException
+  {
+    TraceIndex result = new TraceIndex(traceFilename);
+    try (TraceReader reader = TraceReader.open(traceFilename)) {
+      long offset = reader.position();
+      String line;
+      while (null != (line = reader.readLine())) {
+        int ts = parseTimeslot(line);
+        if (ts >= 0)
+          result.addOffset(ts, offset);
+        else if (result.configOffset < 0 && line.contains(configMarker))
+          result.setConfigOffset(offset);
+        offset = reader.position();
+      }
+    }
+    result.save();
+    return result;
+  }
+
+  /**
+   * Returns the timeslot number from a "Deactivated timeslot" line, or -1
+   * if the line is something else.
+   */
+  static int parseTimeslot (String line)
+  {
+    int index = line.indexOf(timeslotMarker);
+    if (-1 == index)
+      return -1;
+    int pos = index + timeslotMarker.length();
+    int result = 0;
+    int digits = 0;
+    while (pos < line.length()) {
+      char c = line.charAt(pos++);
+      if (c < '0' || c > '9')
+        break;
+      result = result * 10 + (c - '0');
+      digits += 1;
+    }
+    return (0 == digits) ? -1 : result;
+  }
+
+  private TraceIndex (String traceFilename)
+  {
+    super();
+    source = new File(traceFilename);
+    indexFile = new File(traceFilename
+                         + (GameArchive.isArchive(traceFilename) ? ".trace.idx"
+                                                                 : ".idx"));
+    sourceLength = source.length();
+    sourceModified = source.lastModified();
+  }
+
+  /**
+   * Offset of the balancing market configuration line, or -1 if unknown.
+   */
+  public long getConfigOffset ()
+  {
+    return configOffset;
+  }
+
+  public void setConfigOffset (long offset)
+  {
+    if (offset != configOffset) {
+      configOffset = offset;
+      changed = true;
+    }
+  }
+
+  /**
+   * Offset of the start of the balancing block for the given timeslot,
+   * or -1 if unknown.
+   */
+  public long getOffset (int timeslot)
+  {
+    Long result = offsets.get(timeslot);
+    if (null == result)
+      return -1l;
+    return result;
+  }
+
+  public void addOffset (int timeslot, long offset)
+  {
+    Long previous = offsets.put(timeslot, offset);
+    if (null == previous || previous != offset)
+      changed = true;
+  }
+
+  /**
+   * Writes the index if anything has been added since it was read.
+   */
+  public void save ()
+  {
+    if (!changed)
+      return;
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+      out.writeInt(magic);
+      out.writeInt(version);
+      out.writeLong(sourceLength);
+      out.writeLong(sourceModified);
+      out.writeLong(configOffset);
+      out.writeInt(offsets.size());
+      for (Integer ts: offsets.keySet()) {
+        out.writeInt(ts);
+        out.writeLong(offsets.get(ts));
+      }
+      changed = false;
+    }
+    catch (IOException ioe) {
+      log.warn("Cannot write trace index " + indexFile + ": " + ioe.toString());
+    }
+  }
+
+  private void read () throws IOException
+  {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+      if (in.readInt() != magic || in.readInt() != version)
+        throw new IOException("not a trace index");
+      if (in.readLong() != sourceLength || in.readLong() != sourceModified) {
+        log.info("Trace index " + indexFile + " is out of date");
+        return;
+      }
+      configOffset = in.readLong();
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        int ts = in.readInt();
+        offsets.put(ts, in.readLong());
+      }
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a trace log message that starts with a fixed string, such as
+ * "Deactivated timeslot ", followed by fields described by a regular
+ * expression. Nearly all trace lines come from components we are not
+ * interested in, so each line is first checked for the fixed string with
+ * indexOf(), and the regular expression is only run on lines that contain
+ * it, anchored at each place the string occurs until one matches. Numeric
+ * fields are parsed in place, without creating a String for each group.
+ *
+ * A TracePattern keeps its Matcher between calls, so it must not be shared
+ * among threads.
+ */
+public class TracePattern
+{
+  // exact powers of ten for the fast path in parseDouble()
+  private static final double[] powersOfTen = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+  // largest mantissa that is exact as a double
+  private static final long maxExactMantissa = 1l << 53;
+
+  private String prefix;
+  private Matcher matcher;
+  private String line;
+
+  /**
+   * Creates a pattern for messages that start with the given literal
+   * prefix, followed by text that matches the given regular expression.
+   */
+  public TracePattern (String prefix, String fields)
+  {
+    super();
+    this.prefix = prefix;
+    this.matcher = Pattern.compile(Pattern.quote(prefix) + fields).matcher("");
+  }
+
+  /**
+   * True just in case the line contains this message. If so, its fields
+   * can be retrieved until the next call to match().
+   */
+  public boolean match (String line)
+  {
+    int index = line.indexOf(prefix);
+    if (-1 == index)
+      return false;
+    this.line = line;
+    matcher.reset(line);
+    while (-1 != index) {
+      matcher.region(index, line.length());
+      if (matcher.lookingAt())
+        return true;
+      index = line.indexOf(prefix, index + 1);
+    }
+    return false;
+  }
+
+  /**
+   * Returns the given group from the last match as a String.
+   */
+  public String getString (int group)
+  {
+    return matcher.group(group);
+  }
+
+  /**
+   * Returns the given group from the last match as a double.
+   */
+  public double getDouble (int group)
+  {
+    return parseDouble(line, matcher.start(group), matcher.end(group));
+  }
+
+  /**
+   * Returns the given group from the last match as a long.
+   */
+  public long getLong (int group)
+  {
+    return parseLong(line, matcher.start(group), matcher.end(group));
+  }
+
+  /**
+   * Returns the given group from the last match as an int.
+   */
+  public int getInt (int group)
+  {
+    return (int) getLong(group);
+  }
+
+  /**
+   * Parses a signed decimal integer from part of a string.
+   */
+  static long parseLong (CharSequence text, int start, int end)
+  {
+    boolean negative = false;
+    int pos = start;
+    if (pos < end && text.charAt(pos) == '-') {
+      negative = true;
+      pos += 1;
+    }
+    if (pos == end || end - pos > 18)
+      return Long.parseLong(text.subSequence(start, end).toString());
+    long result = 0l;
+    while (pos < end) {
+      char c = text.charAt(pos++);
+      if (c < '0' || c > '9')
+        return Long.parseLong(text.subSequence(start, end).toString());
+      result = result * 10 + (c - '0');
+    }
+    return negative ? -result : result;
+  }
+
+  /**
+   * Parses a decimal number, possibly with an exponent, from part of a
+   * string. Numbers with few enough significant digits are computed with
+   * a single exact multiplication or division, which gives the same result
+   * as Double.parseDouble(); anything else is handed to Double.parseDouble().
+   */
+  static double parseDouble (CharSequence text, int start, int end)
+  {
+    int pos = start;
+    boolean negative = false;
+    if (pos < end && text.charAt(pos) == '-') {
+      negative = true;
+      pos += 1;
+    }
+    long mantissa = 0l;
+    int digits = 0;
+    int scale = 0;
+    boolean point = false;
+    boolean sawDigit = false;
+    while (pos < end) {
+      char c = text.charAt(pos);
+      if (c >= '0' && c <= '9') {
+        sawDigit = true;
+        if (digits > 0 || c != '0')
+          digits += 1;
+        if (digits > 18)
+          return slowParse(text, start, end);
+        mantissa = mantissa * 10 + (c - '0');
+        if (point)
+          scale -= 1;
+      }
+      else if (c == '.' && !point) {
+        point = true;
+      }
+      else {
+        break;
+      }
+      pos += 1;
+    }
+    if (!sawDigit)
+      return slowParse(text, start, end);
+    if (pos < end) {
+      char c = text.charAt(pos);
+      if (c != 'E' && c != 'e')
+        return slowParse(text, start, end);
+      pos += 1;
+      boolean negativeExp = false;
+      if (pos < end && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) {
+        negativeExp = text.charAt(pos) == '-';
+        pos += 1;
+      }
+      if (pos == end || end - pos > 3)
+        return slowParse(text, start, end);
+      int exp = 0;
+      while (pos < end) {
+        c = text.charAt(pos++);
+        if (c < '0' || c > '9')
+          return slowParse(text, start, end);
+        exp = exp * 10 + (c - '0');
+      }
+      scale += negativeExp ? -exp : exp;
+    }
+    if (mantissa > maxExactMantissa || scale < -22 || scale > 22)
+      return slowParse(text, start, end);
+    double result = (double) mantissa;
+    if (scale < 0)
+      result = result / powersOfTen[-scale];
+    else if (scale > 0)
+      result = result * powersOfTen[scale];
+    return negative ? -result : result;
+  }
+
+  private static double slowParse (CharSequence text, int start, int end)
+  {
+    return Double.parseDouble(text.subSequence(start, end).toString());
+  }
+}
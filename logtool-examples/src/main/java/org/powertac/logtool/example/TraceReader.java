@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Line reader for trace logs that keeps track of the byte offset of each
+ * line, so that a TraceIndex can record where things are and later runs can
+ * go straight to them. A trace log on disk can be repositioned anywhere;
+ * a trace log read out of a game archive can only be skipped forward, which
+ * still saves splitting and matching the lines in between.
+ */
+public class TraceReader implements Closeable
+{
+  private static final int bufferSize = 1 << 16;
+
+  // exactly one of these is non-null
+  private RandomAccessFile file;
+  private InputStream stream;
+
+  private byte[] buffer = new byte[bufferSize];
+  private int start = 0;
+  private int end = 0;
+  // offset in the trace of buffer[0]
+  private long bufferOffset = 0l;
+  private boolean eof = false;
+
+  /**
+   * Opens the trace log with the given name, which may be a trace file
+   * or a game archive containing one.
+   */
+  public static TraceReader open (String filename) throws IOException
+  {
+    if (GameArchive.isArchive(filename))
+      return new TraceReader(GameArchive.openTraceLog(filename));
+    return new TraceReader(new RandomAccessFile(filename, "r"));
+  }
+
+  public TraceReader (RandomAccessFile file)
+  {
+    super();
+    this.file = file;
+  }
+
+  public TraceReader (InputStream stream)
+  {
+    super();
+    this.stream = stream;
+  }
+
+  /**
+   * Byte offset of the start of the next line to be read.
+   */
+  public long position ()
+  {
+    return bufferOffset + start;
+  }
+
+  /**
+   * True if the reader can be positioned backward as well as forward.
+   */
+  public boolean isSeekable ()
+  {
+    return null != file;
+  }
+
+  /**
+   * Positions the reader at the given byte offset, which should be the
+   * start of a line. Fails if the reader is not seekable and the offset is
+   * behind the current position.
+   */
+  public void seek (long offset) throws IOException
+  {
+    if (offset >= bufferOffset && offset <= bufferOffset + end) {
+      start = (int) (offset - bufferOffset);
+      return;
+    }
+    if (null != file) {
+      file.seek(offset);
+    }
+    else if (offset > bufferOffset + end) {
+      long remaining = offset - (bufferOffset + end);
+      while (remaining > 0) {
+        long skipped = stream.skip(remaining);
+        if (skipped <= 0) {
+          // skip() may stop short; make sure we are not at the end
+          if (stream.read() == -1)
+            throw new IOException("Offset " + offset + " past end of trace");
+          skipped = 1;
+        }
+        remaining -= skipped;
+      }
+    }
+    else {
+      throw new IOException("Cannot seek backward to " + offset);
+    }
+    bufferOffset = offset;
+    start = 0;
+    end = 0;
+    eof = false;
+  }
+
+  /**
+   * Returns the next line without its line terminator, or null at the end
+   * of the trace.
+   */
+  public String readLine () throws IOException
+  {
+    byte[] line = null;
+    int lineLength = 0;
+    while (true) {
+      if (start == end && !fill()) {
+        if (null == line || 0 == lineLength)
+          return null;
+        return decode(line, lineLength);
+      }
+      int newline = start;
+      while (newline < end && buffer[newline] != '\n')
+        newline += 1;
+      int count = newline - start;
+      if (null == line && newline < end) {
+        // common case: the whole line is in the buffer
+        String result = decode(buffer, start, count);
+        start = newline + 1;
+        return result;
+      }
+      if (null == line)
+        line = new byte[Math.max(256, count * 2)];
+      else if (lineLength + count > line.length)
+        line = Arrays.copyOf(line, Math.max(line.length * 2,
+                                              lineLength + count));
+      System.arraycopy(buffer, start, line, lineLength, count);
+      lineLength += count;
+      if (newline < end) {
+        start = newline + 1;
+        return decode(line, lineLength);
+      }
+      start = end;
+    }
+  }
+
+  // Refills the buffer; returns false at end of input
+  private boolean fill () throws IOException
+  {
+    if (eof)
+      return false;
+    bufferOffset += end;
+    start = 0;
+    end = 0;
+    int count =
+        (null != file) ? file.read(buffer) : stream.read(buffer);
+    if (count <= 0) {
+      eof = true;
+      return false;
+    }
+    end = count;
+    return true;
+  }
+
+  private String decode (byte[] bytes, int length)
+  {
+    return decode(bytes, 0, length);
+  }
+
+  // drops a trailing carriage return
+  private String decode (byte[] bytes, int offset, int length)
+  {
+    if (length > 0 && bytes[offset + length - 1] == '\r')
+      length -= 1;
+    return new String(bytes, offset, length, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void close () throws IOException
+  {
+    if (null != file)
+      file.close();
+    else
+      stream.close();
+  }
+}
@@ -27,7 +27,6 @@ import org.joda.time.Instant;
 import org.powertac.common.WeatherForecast;
 import org.powertac.common.WeatherForecastPrediction;
 import org.powertac.common.WeatherReport;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.ifc.Analyzer;
 
 /**
@@ -44,7 +43,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class WeatherForecastStats
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(WeatherForecastStats.class.getName());
@@ -26,7 +26,6 @@ import org.joda.time.Instant;
 import org.powertac.common.TimeService;
 import org.powertac.common.WeatherReport;
 import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.common.DomainObjectReader;
 import org.powertac.logtool.common.NewObjectListener;
 import org.powertac.logtool.ifc.Analyzer;
@@ -37,7 +36,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class WeatherStats
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(WeatherStats.class.getName());
@@ -27,7 +27,6 @@ import org.powertac.common.TimeService;
 import org.powertac.common.WeatherReport;
 import org.powertac.common.msg.TimeslotUpdate;
 import org.powertac.common.spring.SpringApplicationContext;
-import org.powertac.logtool.LogtoolContext;
 import org.powertac.logtool.common.DomainObjectReader;
 import org.powertac.logtool.common.NewObjectListener;
 import org.powertac.logtool.ifc.Analyzer;
@@ -39,7 +38,7 @@ import org.powertac.logtool.ifc.Analyzer;
  * @author John Collins
  */
 public class WeatherWholesaleCapacity
-extends LogtoolContext
+extends AnalyzerContext
 implements Analyzer
 {
   static private Logger log = LogManager.getLogger(WeatherWholesaleCapacity.class.getName());
@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.powertac.logtool.example.DataSink.Column;
+import org.powertac.logtool.example.DataSink.Type;
+
+public class ColumnarSinkTest
+{
+  private File file;
+  private List<Column> columns;
+
+  @BeforeEach
+  public void setUp () throws IOException
+  {
+    file = File.createTempFile("sink", ColumnarSink.extension);
+    columns = new ArrayList<>();
+    columns.add(new Column("i", Type.INT));
+    columns.add(new Column("l", Type.LONG));
+    columns.add(new Column("d", Type.DOUBLE));
+    columns.add(new Column("s", Type.STRING));
+  }
+
+  @AfterEach
+  public void tearDown ()
+  {
+    file.delete();
+  }
+
+  // Values for row n
+  private int intValue (int n)
+  {
+    return (n % 3 == 0) ? Integer.MIN_VALUE + n : n * 1001 - 50000;
+  }
+
+  private long longValue (int n)
+  {
+    return (n % 5 == 0) ? Long.MAX_VALUE - n : n * 1234567891l;
+  }
+
+  private double doubleValue (int n)
+  {
+    double[] special = { Double.NaN, Double.NEGATIVE_INFINITY, -0.0,
+                         Double.MIN_VALUE, Double.MAX_VALUE };
+    if (n % 7 < special.length)
+      return special[n % 7];
+    return n * 0.1 - 3.0;
+  }
+
+  private String stringValue (int n)
+  {
+    if (n % 4 == 0)
+      return null;
+    if (n % 4 == 1)
+      return "";
+    return "row " + n + " é€";
+  }
+
+  private void putRow (DataSink sink, int n)
+  {
+    sink.putInt(intValue(n)).putLong(longValue(n))
+        .putDouble(doubleValue(n)).putString(stringValue(n));
+    sink.endRow();
+  }
+
+  // Reads the whole file, checking rows first to first + count - 1,
+  // and returns the sizes of the groups
+  private List<Integer> readBack (int first, int count) throws IOException
+  {
+    List<Integer> groups = new ArrayList<>();
+    int n = first;
+    try (ColumnarReader reader = new ColumnarReader(file.getPath())) {
+      assertEquals(columns.size(), reader.getColumns().size());
+      for (int i = 0; i < columns.size(); i++) {
+        assertEquals(columns.get(i).getName(),
+                     reader.getColumns().get(i).getName());
+        assertEquals(columns.get(i).getType(),
+                     reader.getColumns().get(i).getType());
+      }
+      while (reader.nextGroup()) {
+        int rows = reader.getRowCount();
+        groups.add(rows);
+        assertEquals(rows, reader.getInts(0).length);
+        for (int r = 0; r < rows; r++, n++) {
+          assertEquals(intValue(n), reader.getInts(0)[r]);
+          assertEquals(longValue(n), reader.getLongs(1)[r]);
+          assertEquals(Double.doubleToRawLongBits(doubleValue(n)),
+                       Double.doubleToRawLongBits(reader.getDoubles(2)[r]));
+          assertEquals(stringValue(n), reader.getStrings(3)[r]);
+        }
+      }
+      assertFalse(reader.nextGroup());
+    }
+    assertEquals(first + count, n);
+    return groups;
+  }
+
+  @Test
+  public void singleGroup () throws IOException
+  {
+    DataSink sink = new ColumnarSink(file.getPath(), columns);
+    for (int n = 0; n < 100; n++)
+      putRow(sink, n);
+    sink.close();
+    assertEquals(Arrays.asList(100), readBack(0, 100));
+  }
+
+  @Test
+  public void multipleGroups () throws IOException
+  {
+    DataSink sink = new ColumnarSink(file.getPath(), columns, 16);
+    for (int n = 0; n < 40; n++)
+      putRow(sink, n);
+    sink.close();
+    assertEquals(Arrays.asList(16, 16, 8), readBack(0, 40));
+  }
+
+  @Test
+  public void flushWritesShortGroup () throws IOException
+  {
+    DataSink sink = new ColumnarSink(file.getPath(), columns, 16);
+    for (int n = 0; n < 5; n++)
+      putRow(sink, n);
+    sink.flush();
+    // nothing new to flush
+    sink.flush();
+    for (int n = 5; n < 25; n++)
+      putRow(sink, n);
+    sink.close();
+    assertEquals(Arrays.asList(5, 16, 4), readBack(0, 25));
+  }
+
+  @Test
+  public void noRows () throws IOException
+  {
+    new ColumnarSink(file.getPath(), columns).close();
+    assertTrue(readBack(0, 0).isEmpty());
+  }
+
+  @Test
+  public void emptyGroup () throws IOException
+  {
+    DataSink sink = new ColumnarSink(file.getPath(), columns);
+    for (int n = 0; n < 3; n++)
+      putRow(sink, n);
+    sink.close();
+    // ColumnarSink does not write empty groups, but readers must
+    // accept them
+    try (DataOutputStream out =
+        new DataOutputStream(new FileOutputStream(file, true))) {
+      out.writeInt(0);
+      byte[] empty = deflate(new byte[0]);
+      for (int i = 0; i < columns.size(); i++) {
+        out.writeByte(ColumnarSink.plainEncoding);
+        out.writeInt(empty.length);
+        out.write(empty);
+      }
+    }
+    sink = ColumnarSink.append(file.getPath(), columns);
+    for (int n = 3; n < 5; n++)
+      putRow(sink, n);
+    sink.close();
+    assertEquals(Arrays.asList(3, 0, 2), readBack(0, 5));
+  }
+
+  @Test
+  public void append () throws IOException
+  {
+    DataSink sink = DataSink.open(file.getPath(), columns, null, true);
+    for (int n = 0; n < 10; n++)
+      putRow(sink, n);
+    sink.close();
+    sink = DataSink.append(file.getPath(), columns, null);
+    for (int n = 10; n < 30; n++)
+      putRow(sink, n);
+    sink.close();
+    assertEquals(Arrays.asList(10, 20), readBack(0, 30));
+  }
+
+  @Test
+  public void shuffle ()
+  {
+    byte[] data = new byte[24];
+    for (int i = 0; i < data.length; i++)
+      data[i] = (byte) i;
+    byte[] shuffled = ColumnarSink.shuffle(data, 4, 6);
+    assertEquals(4, shuffled[1]);
+    assertEquals(1, shuffled[6]);
+    assertArrayEquals(toInts(data),
+                      toInts(ColumnarSink.unshuffle(shuffled, 4, 6)));
+  }
+
+  @Test
+  public void wrongColumnType () throws IOException
+  {
+    DataSink sink = new ColumnarSink(file.getPath(), columns);
+    assertThrows(IllegalStateException.class, () -> sink.putDouble(1.0));
+    sink.close();
+  }
+
+  @Test
+  public void shortRow () throws IOException
+  {
+    DataSink sink = new ColumnarSink(file.getPath(), columns);
+    sink.putInt(1).putLong(2l);
+    assertThrows(IllegalStateException.class, () -> sink.endRow());
+  }
+
+  @Test
+  public void unknownVersion () throws IOException
+  {
+    for (int version: new int[] {0, ColumnarSink.version + 1}) {
+      try (DataOutputStream out =
+          new DataOutputStream(new FileOutputStream(file))) {
+        out.writeInt(ColumnarSink.magic);
+        out.writeInt(version);
+        out.writeInt(0);
+      }
+      assertThrows(IOException.class,
+                   () -> new ColumnarReader(file.getPath()).close());
+    }
+  }
+
+  @Test
+  public void notColumnar () throws IOException
+  {
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write("slot, price\n1, 2.0\n".getBytes("UTF-8"));
+    }
+    assertThrows(IOException.class,
+                 () -> new ColumnarReader(file.getPath()).close());
+  }
+
+  @Test
+  public void vectors () throws IOException
+  {
+    List<Column> vectorColumns = new ArrayList<>();
+    vectorColumns.add(new Column("slot", Type.INT));
+    vectorColumns.add(new Column("v", Type.VECTOR));
+    DataSink sink = new ColumnarSink(file.getPath(), vectorColumns, 4);
+    double[] value = new double[0];
+    for (int n = 0; n < 10; n++) {
+      // lengths 0, 1, ... with an empty vector in every group
+      value = Arrays.copyOf(value, n % 4);
+      if (n % 4 > 0)
+        value[n % 4 - 1] = (n == 5) ? Double.NaN : n * -1.5;
+      sink.putInt(n).putVector(value);
+      // the sink keeps its own copy
+      if (value.length > 0)
+        value[0] = 99.0;
+      sink.endRow();
+    }
+    sink.close();
+    int n = 0;
+    try (ColumnarReader reader = new ColumnarReader(file.getPath())) {
+      assertEquals(Type.VECTOR, reader.getColumns().get(1).getType());
+      while (reader.nextGroup()) {
+        for (int r = 0; r < reader.getRowCount(); r++, n++) {
+          assertEquals(n, reader.getInts(0)[r]);
+          double[] row = reader.getVectors(1)[r];
+          assertEquals(n % 4, row.length);
+          if (row.length > 0) {
+            double last = (n == 5) ? Double.NaN : n * -1.5;
+            assertEquals(last, row[row.length - 1], 0.0);
+          }
+          if (row.length > 1)
+            assertEquals(99.0, row[0], 0.0);
+        }
+      }
+    }
+    assertEquals(10, n);
+  }
+
+  @Test
+  public void vectorInVersionOne () throws IOException
+  {
+    // version 1 files cannot hold vector columns
+    try (DataOutputStream out =
+        new DataOutputStream(new FileOutputStream(file))) {
+      out.writeInt(ColumnarSink.magic);
+      out.writeInt(1);
+      out.writeInt(1);
+      out.writeUTF("v");
+      out.writeByte(Type.VECTOR.ordinal());
+    }
+    assertThrows(IOException.class,
+                 () -> new ColumnarReader(file.getPath()).close());
+  }
+
+  private byte[] deflate (byte[] data)
+  {
+    Deflater deflater = new Deflater();
+    deflater.setInput(data);
+    deflater.finish();
+    byte[] buffer = new byte[64];
+    int n = deflater.deflate(buffer);
+    deflater.end();
+    return Arrays.copyOf(buffer, n);
+  }
+
+  private int[] toInts (byte[] bytes)
+  {
+    int[] result = new int[bytes.length];
+    for (int i = 0; i < bytes.length; i++)
+      result[i] = bytes[i];
+    return result;
+  }
+}
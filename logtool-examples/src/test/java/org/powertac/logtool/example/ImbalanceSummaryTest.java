@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class ImbalanceSummaryTest
+{
+  private static final int width = ImbalanceSummary.width;
+
+  // Brute-force sums over values[ts][broker * width + i] for the
+  // timeslots in [start, end] that are present
+  private int expectedSums (double[][] values, boolean[] present,
+                            int start, int end, int first, int last,
+                            double[] sums)
+  {
+    int count = 0;
+    for (int ts = Math.max(0, start); ts <= end; ts++) {
+      if (!present[ts])
+        continue;
+      for (int b = first; b <= last; b++) {
+        for (int i = 0; i < width; i++)
+          sums[i] += values[ts][b * width + i];
+        count += 1;
+      }
+    }
+    return count;
+  }
+
+  // Runs a rolling window over the timeslots the way ImbalanceSummary
+  // does, checking the sums for each broker and for all together
+  private void checkRolling (int length, int brokers, boolean gaps)
+  {
+    Random random = new Random(length * 31 + brokers);
+    int timeslots = 200;
+    double[][] values = new double[timeslots][brokers * width];
+    boolean[] present = new boolean[timeslots];
+    TimeslotRing ring = new TimeslotRing(length + 1, brokers * width, 0.0);
+    double[] sums = new double[width];
+    for (int ts = 0; ts < timeslots; ts++) {
+      // some timeslots have no data
+      present[ts] = !gaps || random.nextInt(5) > 0;
+      if (present[ts]) {
+        for (int i = 0; i < brokers * width; i++) {
+          values[ts][i] = random.nextInt(2001) - 1000;
+          ring.set(ts, i, values[ts][i]);
+        }
+      }
+      for (int row = 0; row <= brokers; row++) {
+        int first = (row == brokers) ? 0 : row;
+        int last = (row == brokers) ? brokers - 1 : row;
+        double[] expected = new double[width];
+        int count = expectedSums(values, present, ts - length + 1, ts,
+                                 first, last, expected);
+        assertEquals(count,
+                     ImbalanceSummary.sumRolling(ring, ts - length + 1, ts,
+                                                 first, last, sums));
+        for (int i = 0; i < width; i++)
+          assertEquals(expected[i], sums[i], 0.0, "ts " + ts + " row " + row);
+      }
+      ring.release(ts - length + 2);
+    }
+  }
+
+  @Test
+  public void rollingSums ()
+  {
+    checkRolling(1, 1, false);
+    checkRolling(24, 3, false);
+    checkRolling(168, 2, false);
+    checkRolling(7, 4, true);
+  }
+
+  @Test
+  public void rollingSumsOfSingleTimeslot ()
+  {
+    TimeslotRing ring = new TimeslotRing(4, 2 * width, 0.0);
+    for (int i = 0; i < 2 * width; i++)
+      ring.set(360, i, i + 1.0);
+    double[] sums = new double[width];
+    assertEquals(1, ImbalanceSummary.sumRolling(ring, 358, 360, 1, 1, sums));
+    assertEquals(width + 1.0, sums[0], 0.0);
+    assertEquals(2, ImbalanceSummary.sumRolling(ring, 358, 360, 0, 1, sums));
+    assertEquals(width + 2.0, sums[0], 0.0);
+    // none of the timeslots are in the ring, and the sums are cleared
+    assertEquals(0, ImbalanceSummary.sumRolling(ring, 361, 363, 0, 1, sums));
+    assertEquals(0.0, sums[0], 0.0);
+  }
+}
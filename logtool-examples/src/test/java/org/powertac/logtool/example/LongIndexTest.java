@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class LongIndexTest
+{
+  @Test
+  public void addReturnsNextSlot ()
+  {
+    LongIndex index = new LongIndex(4);
+    assertEquals(0, index.size());
+    assertEquals(-1, index.get(42l));
+    long[] ids = { 42l, -7l, 0l, Long.MAX_VALUE, Long.MIN_VALUE, 200000345l };
+    for (long id: ids) {
+      int slot = index.add(id);
+      assertEquals(index.size() - 1, slot);
+    }
+    assertEquals(ids.length, index.size());
+    for (int i = 0; i < ids.length; i++) {
+      // adding again returns the same slot and does not grow
+      assertEquals(i, index.add(ids[i]));
+      assertEquals(i, index.get(ids[i]));
+      assertEquals(ids[i], index.getKey(i));
+    }
+    assertEquals(ids.length, index.size());
+  }
+
+  @Test
+  public void acrossRehash ()
+  {
+    // starts with room for 2, so the table is rehashed several times
+    LongIndex index = new LongIndex(2);
+    Map<Long, Integer> expected = new HashMap<>();
+    Random random = new Random(3);
+    for (int i = 0; i < 5000; i++) {
+      // sequential ids, as the server allocates them, and random ones
+      long id = (i % 2 == 0) ? 200000000l + i : random.nextLong();
+      int known = index.size();
+      int slot = index.add(id);
+      if (expected.containsKey(id)) {
+        assertEquals((int) expected.get(id), slot);
+        assertEquals(known, index.size());
+      }
+      else {
+        assertEquals(known, slot);
+        expected.put(id, slot);
+      }
+      // everything added so far is still found
+      if (i % 97 == 0) {
+        for (Map.Entry<Long, Integer> entry: expected.entrySet())
+          assertEquals((int) entry.getValue(), index.get(entry.getKey()));
+      }
+    }
+    for (Map.Entry<Long, Integer> entry: expected.entrySet()) {
+      assertEquals((int) entry.getValue(), index.get(entry.getKey()));
+      assertEquals((long) entry.getKey(), index.getKey(entry.getValue()));
+    }
+    assertEquals(-1, index.get(200000001l));
+  }
+
+  @Test
+  public void collidingKeys ()
+  {
+    // keys that share a home position in the initial 16-entry table
+    List<Long> keys = new ArrayList<>();
+    for (long id = 0; keys.size() < 6; id++) {
+      if ((LongIndex.hash(id) & 15) == 3)
+        keys.add(id);
+    }
+    LongIndex index = new LongIndex(8);
+    for (int i = 0; i < keys.size(); i++)
+      assertEquals(i, index.add(keys.get(i)));
+    for (int i = 0; i < keys.size(); i++)
+      assertEquals(i, index.get(keys.get(i)));
+    // a missing key with the same home position probes past all of them
+    long missing = keys.get(keys.size() - 1) + 1;
+    while ((LongIndex.hash(missing) & 15) != 3)
+      missing += 1;
+    assertEquals(-1, index.get(missing));
+    // and probing wraps around the end of the table
+    List<Long> last = new ArrayList<>();
+    for (long id = 0; last.size() < 3; id++) {
+      if ((LongIndex.hash(id) & 15) == 15)
+        last.add(id);
+    }
+    LongIndex wrap = new LongIndex(8);
+    for (int i = 0; i < last.size(); i++)
+      assertEquals(i, wrap.add(last.get(i)));
+    for (int i = 0; i < last.size(); i++)
+      assertEquals(i, wrap.get(last.get(i)));
+  }
+
+  @Test
+  public void getKeyBounds ()
+  {
+    LongIndex index = new LongIndex();
+    assertThrows(IndexOutOfBoundsException.class, () -> index.getKey(0));
+    index.add(5l);
+    assertEquals(5l, index.getKey(0));
+    assertThrows(IndexOutOfBoundsException.class, () -> index.getKey(1));
+    assertThrows(IndexOutOfBoundsException.class, () -> index.getKey(-1));
+  }
+}
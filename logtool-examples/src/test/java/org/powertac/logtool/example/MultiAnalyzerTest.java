@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+
+import org.junit.jupiter.api.Test;
+import org.powertac.logtool.ifc.Analyzer;
+
+public class MultiAnalyzerTest
+{
+  private MultiAnalyzer multi = new MultiAnalyzer();
+
+  private MultiAnalyzer.Handler handler (Analyzer tool, Class<?> type)
+      throws NoSuchMethodException
+  {
+    Method method = tool.getClass().getMethod("handleMessage", type);
+    return multi.new Handler(tool, method);
+  }
+
+  @Test
+  public void invokes () throws Exception
+  {
+    Failing tool = new Failing();
+    handler(tool, String.class).invoke("hello");
+    assertEquals("hello", tool.last);
+  }
+
+  @Test
+  public void runtimeExceptionPassesThrough () throws Exception
+  {
+    MultiAnalyzer.Handler handler = handler(new Failing(), Integer.class);
+    IllegalArgumentException e =
+        assertThrows(IllegalArgumentException.class,
+                     () -> handler.invoke(Integer.valueOf(3)));
+    assertEquals("bad 3", e.getMessage());
+  }
+
+  @Test
+  public void errorPassesThrough () throws Exception
+  {
+    MultiAnalyzer.Handler handler = handler(new Failing(), Long.class);
+    assertThrows(AssertionError.class, () -> handler.invoke(Long.valueOf(4)));
+  }
+
+  @Test
+  public void checkedExceptionIsWrapped () throws Exception
+  {
+    MultiAnalyzer.Handler handler = handler(new Failing(), Double.class);
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> handler.invoke(Double.valueOf(5.0)));
+    assertSame(IOException.class, e.getCause().getClass());
+  }
+
+  // An analyzer whose handlers fail in different ways
+  public static class Failing implements Analyzer
+  {
+    String last = null;
+
+    @Override
+    public void setup ()
+    {
+    }
+
+    @Override
+    public void report ()
+    {
+    }
+
+    public void handleMessage (String thing)
+    {
+      last = thing;
+    }
+
+    public void handleMessage (Integer thing)
+    {
+      throw new IllegalArgumentException("bad " + thing);
+    }
+
+    public void handleMessage (Long thing)
+    {
+      throw new AssertionError("bad " + thing);
+    }
+
+    public void handleMessage (Double thing) throws IOException
+    {
+      throw new IOException("bad " + thing);
+    }
+  }
+}
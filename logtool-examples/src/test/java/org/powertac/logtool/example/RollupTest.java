@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.powertac.logtool.example.Rollup.Window;
+
+public class RollupTest
+{
+  // Monday, 1 January 2024, at midnight
+  private DateTime monday = new DateTime(2024, 1, 1, 0, 0, DateTimeZone.UTC);
+
+  @Test
+  public void labels ()
+  {
+    for (Window window: Window.values())
+      assertSame(window, Window.forLabel(window.getLabel()));
+    assertSame(Window.HOUR_OF_DAY, Window.forLabel("hod"));
+    assertSame(Window.DAY_OF_WEEK, Window.forLabel("dow"));
+    assertNull(Window.forLabel("rolling24"));
+    assertNull(Window.forLabel("HOD"));
+    assertEquals(24, Window.HOUR_OF_DAY.getBins());
+    assertEquals(7, Window.DAY_OF_WEEK.getBins());
+    assertEquals(1, Window.GAME.getBins());
+  }
+
+  @Test
+  public void bins ()
+  {
+    for (int hour = 0; hour < 24 * 14; hour++) {
+      DateTime start = monday.plusHours(hour);
+      assertEquals(hour % 24, Window.HOUR_OF_DAY.getBin(start));
+      // Monday is bin 0, Sunday bin 6
+      assertEquals((hour / 24) % 7, Window.DAY_OF_WEEK.getBin(start));
+      assertEquals(0, Window.GAME.getBin(start));
+    }
+  }
+
+  @Test
+  public void sumsByHour ()
+  {
+    // two rows of two values, taken from the middle of the source
+    Rollup rollup = new Rollup(Window.HOUR_OF_DAY, 2, 2);
+    assertEquals(2, rollup.getRows());
+    assertEquals(2, rollup.getWidth());
+    double[] source = new double[5];
+    double[][][] expected = new double[2][24][2];
+    int[][] counts = new int[2][24];
+    for (int ts = 0; ts < 24 * 3 + 5; ts++) {
+      DateTime start = monday.plusHours(ts);
+      int row = ts % 2;
+      source[1] = ts;
+      source[2] = -0.5 * ts;
+      rollup.add(row, start, source, 1);
+      expected[row][ts % 24][0] += ts;
+      expected[row][ts % 24][1] += -0.5 * ts;
+      counts[row][ts % 24] += 1;
+    }
+    for (int row = 0; row < 2; row++) {
+      for (int bin = 0; bin < 24; bin++) {
+        assertEquals(counts[row][bin], rollup.getCount(row, bin));
+        assertEquals(expected[row][bin][0], rollup.get(row, bin, 0), 0.0);
+        assertEquals(expected[row][bin][1], rollup.get(row, bin, 1), 0.0);
+      }
+    }
+    // hour 4 was seen four times, always in an even timeslot, and
+    // hour 5 three times, always in an odd one
+    assertEquals(4, rollup.getCount(0, 4));
+    assertEquals(0, rollup.getCount(1, 4));
+    assertEquals(4.0 + 28.0 + 52.0 + 76.0, rollup.get(0, 4, 0), 0.0);
+    assertEquals(3, rollup.getCount(1, 5));
+  }
+
+  @Test
+  public void sumsByDay ()
+  {
+    Rollup rollup = new Rollup(Window.DAY_OF_WEEK, 1, 1);
+    double[] source = { 1.0 };
+    // three weeks of hourly timeslots, starting on a Wednesday
+    DateTime first = monday.plusDays(2);
+    for (int ts = 0; ts < 24 * 21; ts++)
+      rollup.add(0, first.plusHours(ts), source, 0);
+    for (int bin = 0; bin < 7; bin++) {
+      assertEquals(72, rollup.getCount(0, bin));
+      assertEquals(72.0, rollup.get(0, bin, 0), 0.0);
+    }
+    // one more hour, on Wednesday
+    rollup.add(0, first.plusDays(21), source, 0);
+    assertEquals(73, rollup.getCount(0, 2));
+    assertEquals(72, rollup.getCount(0, 3));
+  }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RowWriterTest
+{
+  private File file;
+
+  @BeforeEach
+  public void setUp () throws IOException
+  {
+    file = File.createTempFile("rows", ".csv");
+  }
+
+  @AfterEach
+  public void tearDown ()
+  {
+    file.delete();
+  }
+
+  // Values that exercise rounding, signs, special values and magnitude
+  private List<Double> values ()
+  {
+    List<Double> result = new ArrayList<>();
+    double[] fixed = {
+        0.0, -0.0, 1.0, -1.0, 0.1, 0.2, 0.3, 0.1 + 0.2, 1.0 / 3.0, 2.0 / 3.0,
+        // exact binary ties at various places
+        0.5, 1.5, 2.5, -0.5, -2.5, 0.25, 0.75, 0.125, 0.375, 0.0625,
+        1.0625, 0.03125, 0.015625, 0.001953125, 1024.5, -1024.5,
+        // decimal ties that are not exact in binary
+        0.05, 0.15, 0.35, 1.005, 2.675, 0.0005, 0.00015, 1.0000005,
+        0.45, -0.45, 8.345, 123.4565,
+        // negatives that round to zero
+        -0.00001, -0.0004, -1e-9, -1e-300, -Double.MIN_VALUE,
+        // specials
+        Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+        Double.MIN_VALUE, Double.MIN_NORMAL,
+        // large magnitudes, around and beyond the fast path
+        999999.9999, 1234567.891, 1e9 + 0.5, 123456789012.3456,
+        99999999999999.99, 1e15, 1e15 + 0.5, 1e16, 9.007199254740993e15,
+        1e20, -1e20, 1.23e25, Double.MAX_VALUE, -Double.MAX_VALUE };
+    for (double value: fixed)
+      result.add(value);
+    Random random = new Random(17);
+    for (int i = 0; i < 20000; i++) {
+      double value = random.nextDouble() * Math.pow(10, random.nextInt(14) - 4);
+      if (random.nextBoolean())
+        value = -value;
+      result.add(value);
+      // values one digit past the rounding point, often ties
+      result.add(Math.round(value * 1e5) / 1e5);
+    }
+    return result;
+  }
+
+  private DecimalFormat usFormat (int maxFraction, int minFraction,
+                                  boolean grouping)
+  {
+    DecimalFormat format =
+        (DecimalFormat) NumberFormat.getNumberInstance(Locale.US);
+    format.setMaximumFractionDigits(maxFraction);
+    format.setMinimumFractionDigits(minFraction);
+    format.setGroupingUsed(grouping);
+    return format;
+  }
+
+  // Prints each value on its own line with print(double), and checks
+  // each line against the format
+  private void checkFormat (DecimalFormat format) throws IOException
+  {
+    List<Double> values = values();
+    try (RowWriter out = new RowWriter(file.getPath(), format, 256)) {
+      for (double value: values)
+        out.print(value).println();
+    }
+    List<String> lines = Files.readAllLines(file.toPath(),
+                                            StandardCharsets.UTF_8);
+    assertEquals(values.size(), lines.size());
+    for (int i = 0; i < values.size(); i++) {
+      double value = values.get(i);
+      assertEquals(format.format(value), lines.get(i),
+                   format.toPattern() + " " + Double.toString(value));
+    }
+  }
+
+  @Test
+  public void fractionDigits () throws IOException
+  {
+    for (int digits = 0; digits <= 9; digits++)
+      checkFormat(usFormat(digits, 0, false));
+  }
+
+  @Test
+  public void minimumFractionDigits () throws IOException
+  {
+    checkFormat(usFormat(4, 2, false));
+    checkFormat(usFormat(6, 6, false));
+  }
+
+  @Test
+  public void grouping () throws IOException
+  {
+    for (int digits: new int[] {0, 3, 4, 6})
+      checkFormat(usFormat(digits, 0, true));
+  }
+
+  @Test
+  public void defaultFormat () throws IOException
+  {
+    checkFormat(new DecimalFormat());
+  }
+
+  @Test
+  public void slowPath () throws IOException
+  {
+    // more digits than the fast path handles, and a format it does not
+    // reproduce
+    checkFormat(usFormat(12, 0, false));
+    checkFormat((DecimalFormat) NumberFormat.getNumberInstance(Locale.GERMANY));
+  }
+
+  @Test
+  public void fixedPrecision () throws IOException
+  {
+    List<Double> values = values();
+    int[][] specs = { {0, 4}, {10, 3}, {8, 0}, {12, 6}, {3, 2}, {5, 11} };
+    try (RowWriter out =
+        new RowWriter(file.getPath(), usFormat(4, 0, false), 256)) {
+      for (int[] spec: specs) {
+        for (double value: values)
+          out.print(value, spec[0], spec[1]).println();
+      }
+    }
+    List<String> lines = Files.readAllLines(file.toPath(),
+                                            StandardCharsets.UTF_8);
+    int line = 0;
+    for (int[] spec: specs) {
+      String pattern = "%" + (spec[0] > 0 ? Integer.toString(spec[0]) : "")
+          + "." + spec[1] + "f";
+      for (double value: values) {
+        String expected = String.format(Locale.US, pattern, value);
+        assertEquals(expected, lines.get(line++),
+                     pattern + " " + Double.toString(value));
+      }
+    }
+  }
+
+  @Test
+  public void integersAndText () throws IOException
+  {
+    try (RowWriter out = new RowWriter(file.getPath(), new DecimalFormat(), 64)) {
+      out.print(0).print(',').print(-42).print(',').print(Long.MIN_VALUE)
+          .print(',').print(Long.MAX_VALUE).println();
+      out.print(7l, 5).print('|').print("ab", 4).print('|')
+          .print("ab", -4).print('|').print((String) null).println();
+      // longer than the buffer, with characters that need several bytes
+      StringBuilder text = new StringBuilder();
+      for (int i = 0; i < 100; i++)
+        text.append("é€😀");
+      out.print(text.toString()).println();
+    }
+    List<String> lines = Files.readAllLines(file.toPath(),
+                                            StandardCharsets.UTF_8);
+    assertEquals("0,-42," + Long.MIN_VALUE + "," + Long.MAX_VALUE,
+                 lines.get(0));
+    assertEquals("    7|  ab|ab  |null", lines.get(1));
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 100; i++)
+      text.append("é€😀");
+    assertEquals(text.toString(), lines.get(2));
+  }
+}
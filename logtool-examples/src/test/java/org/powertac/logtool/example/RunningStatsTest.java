@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class RunningStatsTest
+{
+  // Checks the stats against a two-pass computation over values[from, to)
+  private void checkTwoPass (RunningStats stats, double[] values,
+                             int from, int to)
+  {
+    int n = to - from;
+    double sum = 0.0;
+    for (int i = from; i < to; i++)
+      sum += values[i];
+    double mean = sum / n;
+    double squares = 0.0;
+    double deviations = 0.0;
+    for (int i = from; i < to; i++) {
+      squares += values[i] * values[i];
+      deviations += (values[i] - mean) * (values[i] - mean);
+    }
+    double variance = deviations / n;
+    double scale = Math.max(1.0, Math.abs(mean));
+    assertEquals(n, stats.getCount());
+    assertEquals(sum, stats.getSum(), 1e-9 * scale * n);
+    assertEquals(mean, stats.getMean(), 1e-12 * scale);
+    assertEquals(variance, stats.getVariance(),
+                 1e-9 * Math.max(1.0, variance));
+    assertEquals(Math.sqrt(squares / n), stats.getRms(), 1e-9 * scale);
+  }
+
+  private double[] randomValues (long seed, int n, double offset)
+  {
+    Random random = new Random(seed);
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++)
+      values[i] = offset + random.nextGaussian() * 10.0;
+    return values;
+  }
+
+  @Test
+  public void empty ()
+  {
+    RunningStats stats = new RunningStats();
+    assertEquals(0, stats.getCount());
+    assertEquals(0.0, stats.getSum(), 0.0);
+    assertTrue(Double.isNaN(stats.getMean()));
+    assertTrue(Double.isNaN(stats.getVariance()));
+    assertTrue(Double.isNaN(stats.getRms()));
+  }
+
+  @Test
+  public void addValues ()
+  {
+    double[] values = { 2.0, 4.0, 4.0, 4.0, 5.0, 5.0, 7.0, 9.0 };
+    RunningStats stats = new RunningStats();
+    for (double value: values)
+      stats.add(value);
+    assertEquals(5.0, stats.getMean(), 0.0);
+    assertEquals(4.0, stats.getVariance(), 1e-15);
+    checkTwoPass(stats, values, 0, values.length);
+  }
+
+  @Test
+  public void addRandom ()
+  {
+    // a large offset, where the one-pass sum of squares loses the variance
+    for (double offset: new double[] {0.0, -3.0, 1e6}) {
+      double[] values = randomValues(11, 1000, offset);
+      RunningStats stats = new RunningStats();
+      for (double value: values)
+        stats.add(value);
+      checkTwoPass(stats, values, 0, values.length);
+    }
+  }
+
+  @Test
+  public void merge ()
+  {
+    double[] values = randomValues(5, 900, 50.0);
+    // every split point, including empty halves on either side
+    for (int split = 0; split <= values.length; split += 30) {
+      RunningStats left = new RunningStats();
+      RunningStats right = new RunningStats();
+      for (int i = 0; i < split; i++)
+        left.add(values[i]);
+      for (int i = split; i < values.length; i++)
+        right.add(values[i]);
+      checkTwoPass(right, values, split, values.length);
+      left.add(right);
+      checkTwoPass(left, values, 0, values.length);
+    }
+  }
+
+  @Test
+  public void mergeMany ()
+  {
+    // uneven pieces, merged in order
+    double[] values = randomValues(8, 1000, 1e6);
+    RunningStats total = new RunningStats();
+    int from = 0;
+    for (int size = 1; from < values.length; size = size * 2 + 1) {
+      int to = Math.min(values.length, from + size);
+      RunningStats piece = new RunningStats();
+      for (int i = from; i < to; i++)
+        piece.add(values[i]);
+      total.add(piece);
+      checkTwoPass(total, values, 0, to);
+      from = to;
+    }
+  }
+
+  @Test
+  public void clear ()
+  {
+    RunningStats stats = new RunningStats();
+    for (double value: randomValues(3, 50, 7.0))
+      stats.add(value);
+    stats.clear();
+    assertEquals(0, stats.getCount());
+    assertTrue(Double.isNaN(stats.getMean()));
+    double[] values = { 1.0, 3.0 };
+    stats.add(values[0]);
+    stats.add(values[1]);
+    checkTwoPass(stats, values, 0, values.length);
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TimeslotRingTest
+{
+  @Test
+  public void setAndAdd ()
+  {
+    TimeslotRing ring = new TimeslotRing(4, 2, -1.0);
+    assertTrue(ring.isEmpty());
+    assertEquals(2, ring.getWidth());
+    assertEquals(-1.0, ring.get(100, 0), 0.0);
+    assertFalse(ring.contains(100));
+    assertTrue(ring.set(100, 1, 3.0));
+    assertTrue(ring.contains(100));
+    // a new row starts out empty
+    assertEquals(-1.0, ring.get(100, 0), 0.0);
+    assertTrue(ring.add(100, 0, 2.5));
+    assertTrue(ring.add(100, 1, 2.5));
+    assertEquals(1.5, ring.get(100, 0), 0.0);
+    assertEquals(5.5, ring.get(100, 1), 0.0);
+    assertTrue(ring.open(101));
+    assertEquals(-1.0, ring.get(101, 1), 0.0);
+    assertEquals(100, ring.getLow());
+    assertEquals(101, ring.getHigh());
+  }
+
+  @Test
+  public void releasedSlotsAreReused ()
+  {
+    TimeslotRing ring = new TimeslotRing(4, 1, 0.0);
+    for (int ts = 0; ts < 4; ts++)
+      ring.set(ts, 0, ts + 10.0);
+    ring.release(2);
+    assertFalse(ring.contains(0));
+    assertFalse(ring.contains(1));
+    assertEquals(0.0, ring.get(0, 0), 0.0);
+    assertEquals(2, ring.getLow());
+    // timeslots 4 and 5 land in the slots of 0 and 1, and start empty
+    ring.add(4, 0, 1.0);
+    ring.add(5, 0, 2.0);
+    assertEquals(1.0, ring.get(4, 0), 0.0);
+    assertEquals(2.0, ring.get(5, 0), 0.0);
+    assertEquals(0.0, ring.get(0, 0), 0.0);
+    assertEquals(12.0, ring.get(2, 0), 0.0);
+    assertEquals(13.0, ring.get(3, 0), 0.0);
+    assertEquals(5, ring.getHigh());
+    // a sliding window of four keeps working
+    for (int ts = 6; ts < 100; ts++) {
+      ring.release(ts - 3);
+      ring.set(ts, 0, ts);
+      assertEquals(ts - 3, ring.getLow());
+      assertEquals(ts, ring.get(ts, 0), 0.0);
+      assertFalse(ring.contains(ts - 4));
+    }
+  }
+
+  @Test
+  public void growKeepsRows ()
+  {
+    TimeslotRing ring = new TimeslotRing(4, 3, 0.0);
+    for (int ts = 7; ts < 30; ts++) {
+      for (int i = 0; i < 3; i++)
+        ring.set(ts, i, ts * 10 + i);
+    }
+    for (int ts = 7; ts < 30; ts++) {
+      assertTrue(ring.contains(ts));
+      for (int i = 0; i < 3; i++)
+        assertEquals(ts * 10.0 + i, ring.get(ts, i), 0.0);
+    }
+    assertEquals(7, ring.getLow());
+    assertEquals(29, ring.getHigh());
+  }
+
+  @Test
+  public void growBelowLow ()
+  {
+    // a row before the others also widens the span
+    TimeslotRing ring = new TimeslotRing(2, 1, 0.0);
+    ring.set(10, 0, 1.0);
+    ring.set(11, 0, 2.0);
+    ring.set(5, 0, 3.0);
+    assertEquals(1.0, ring.get(10, 0), 0.0);
+    assertEquals(2.0, ring.get(11, 0), 0.0);
+    assertEquals(3.0, ring.get(5, 0), 0.0);
+    assertEquals(5, ring.getLow());
+  }
+
+  @Test
+  public void tooLarge ()
+  {
+    assertThrows(IllegalStateException.class,
+                 () -> new TimeslotRing((1 << 20) + 1, 1, 0.0));
+    TimeslotRing ring = new TimeslotRing(4, 1, 0.0);
+    ring.set(0, 0, 1.0);
+    assertThrows(IllegalStateException.class,
+                 () -> ring.set(1 << 21, 0, 1.0));
+  }
+
+  @Test
+  public void belowFloor ()
+  {
+    TimeslotRing ring = new TimeslotRing(8, 1, 0.0);
+    ring.set(10, 0, 1.0);
+    ring.release(10);
+    assertTrue(ring.contains(10));
+    ring.release(11);
+    assertTrue(ring.isEmpty());
+    assertFalse(ring.set(10, 0, 5.0));
+    assertFalse(ring.add(9, 0, 5.0));
+    assertFalse(ring.open(3));
+    assertFalse(ring.contains(10));
+    assertEquals(0.0, ring.get(10, 0), 0.0);
+    assertTrue(ring.set(11, 0, 2.0));
+    assertEquals(11, ring.getLow());
+  }
+
+  @Test
+  public void releaseBelowLow ()
+  {
+    TimeslotRing ring = new TimeslotRing(8, 1, 0.0);
+    ring.set(10, 0, 1.0);
+    ring.set(12, 0, 2.0);
+    // nothing below 10, so the span stays as it is
+    ring.release(5);
+    assertEquals(10, ring.getLow());
+    assertEquals(12, ring.getHigh());
+    assertEquals(1.0, ring.get(10, 0), 0.0);
+    // releasing an earlier timeslot again does nothing
+    ring.release(11);
+    ring.release(6);
+    assertEquals(11, ring.getLow());
+    assertFalse(ring.contains(10));
+    assertEquals(2.0, ring.get(12, 0), 0.0);
+    assertFalse(ring.set(7, 0, 1.0));
+  }
+
+  @Test
+  public void releaseAll ()
+  {
+    TimeslotRing ring = new TimeslotRing(4, 1, 0.0);
+    for (int ts = 0; ts < 4; ts++)
+      ring.set(ts, 0, 1.0);
+    ring.release(1000);
+    assertTrue(ring.isEmpty());
+    for (int ts = 0; ts < 4; ts++)
+      assertFalse(ring.contains(ts));
+    // a far-off timeslot fits without growing past the window
+    assertTrue(ring.set(2000, 0, 4.0));
+    assertEquals(2000, ring.getLow());
+    assertEquals(2000, ring.getHigh());
+    assertEquals(4.0, ring.get(2000, 0), 0.0);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2026 by the original author
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.powertac.logtool.example;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+public class TracePatternTest
+{
+  // Parses the whole string both ways and compares the bits
+  private void checkDouble (String text)
+  {
+    double expected = Double.parseDouble(text);
+    double actual = TracePattern.parseDouble(text, 0, text.length());
+    assertEquals(Double.doubleToRawLongBits(expected),
+                 Double.doubleToRawLongBits(actual), text);
+  }
+
+  @Test
+  public void parseDoubleSimple ()
+  {
+    String[] values = {
+        "0", "0.0", "-0", "-0.0", "1", "-1", "12.5", "-12.5", ".5", "5.",
+        "0.1", "0.2", "0.3", "123.456", "-987654.321", "3.141592653589793",
+        "0.000001", "1000000", "00012.0300" };
+    for (String value: values)
+      checkDouble(value);
+  }
+
+  @Test
+  public void parseDoubleExponents ()
+  {
+    String[] values = {
+        "1e0", "1E5", "1e+5", "1e-5", "-2.5e3", "-2.5E-3", "6.02e23",
+        "1.6e-19", "1e22", "1e-22", "1e23", "1e-23", "123e-25", "4.9e-324",
+        "1.7976931348623157e308", "1e400", "1e-400", "12.5e020" };
+    for (String value: values)
+      checkDouble(value);
+  }
+
+  @Test
+  public void parseDoubleLargeMantissa ()
+  {
+    // 2^53 and neighbours, and mantissas beyond the exact range of a
+    // double
+    String[] values = {
+        "9007199254740992", "9007199254740993", "9007199254740991",
+        "-9007199254740993", "900719925474099.3", "12345678901234567",
+        "123456789012345678", "1234567890123456789", "0.1234567890123456789",
+        "99999999999999999999e-5", "18014398509481985e3" };
+    for (String value: values)
+      checkDouble(value);
+  }
+
+  @Test
+  public void parseDoubleScales ()
+  {
+    // scales on both sides of the +-22 limit of the fast path
+    for (int scale = -30; scale <= 30; scale++) {
+      checkDouble("7e" + scale);
+      checkDouble("-123.45e" + scale);
+      checkDouble("9007199254740991e" + scale);
+    }
+  }
+
+  @Test
+  public void parseDoubleRandom ()
+  {
+    Random random = new Random(42);
+    for (int i = 0; i < 100000; i++) {
+      long mantissa = (random.nextLong() >>> 1) >>> random.nextInt(63);
+      int scale = random.nextInt(61) - 30;
+      String text = Long.toString(mantissa);
+      if (random.nextBoolean())
+        text = "-" + text;
+      checkDouble(text + "e" + scale);
+      checkDouble(Double.toString(random.nextDouble() * Math.pow(10, scale)));
+    }
+  }
+
+  @Test
+  public void parseDoubleInPlace ()
+  {
+    String line = "x=-12.75, y=3e-4;";
+    assertEquals(-12.75, TracePattern.parseDouble(line, 2, 8), 0.0);
+    assertEquals(3e-4, TracePattern.parseDouble(line, 12, 16), 0.0);
+  }
+
+  @Test
+  public void parseLong ()
+  {
+    String[] values = {
+        "0", "-0", "7", "-7", "123456789", "-123456789012345678",
+        "999999999999999999", "9223372036854775807", "-9223372036854775808" };
+    for (String value: values)
+      assertEquals(Long.parseLong(value),
+                   TracePattern.parseLong(value, 0, value.length()), value);
+  }
+
+  @Test
+  public void matchFields ()
+  {
+    TracePattern pattern =
+        new TracePattern("balancing prices: pPlus=",
+                         "(-?[0-9.Ee-]+), pMinus=(-?[0-9.Ee-]+)");
+    assertFalse(pattern.match("12345 INFO Other: nothing to see"));
+    assertTrue(pattern.match("12345 INFO Bm: balancing prices: pPlus=-1.5e1, pMinus=20"));
+    assertEquals(-15.0, pattern.getDouble(1), 0.0);
+    assertEquals(20.0, pattern.getDouble(2), 0.0);
+    assertEquals("20", pattern.getString(2));
+  }
+
+  @Test
+  public void matchLaterOccurrence ()
+  {
+    // the first occurrence of the prefix does not match the fields
+    TracePattern pattern = new TracePattern("ts ", "(\\d+) done");
+    assertTrue(pattern.match("ts x then ts 42 done"));
+    assertEquals(42, pattern.getInt(1));
+    assertTrue(pattern.match("ts ts 7 done"));
+    assertEquals(7l, pattern.getLong(1));
+    assertFalse(pattern.match("ts x then ts y done"));
+  }
+}
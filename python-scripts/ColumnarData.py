@@ -0,0 +1,138 @@
+#!/usr/bin/python3
+'''
+Reads the columnar data files written by the logtool-examples analyzers
+when they are given an output file name ending in .ptcol (see
+ColumnarSink.java for the layout). This is much faster than parsing the
+equivalent csv output.
+
+readColumns(path) returns a list of (name, values) pairs in file order.
+Column names are not necessarily unique; BrokerAccounting, for example,
+repeats its column names for each broker. If numpy is installed, numeric
+columns are returned as numpy arrays, otherwise as lists. A vector column
+is returned as a list with one array (or tuple) of doubles per row.
+
+readDict(path) returns the same data as a dict, with repeated column
+names given suffixes .1, .2, ... as pandas does.
+
+From the command line, prints the schema and row count of a file:
+  python3 ColumnarData.py file.ptcol
+'''
+
+import struct, sys, zlib
+
+try:
+    import numpy
+except ImportError:
+    numpy = None
+
+MAGIC = 0x5054434c
+VERSION = 2
+# first version with vector columns
+VECTOR_VERSION = 2
+TYPES = ['int', 'long', 'double', 'string', 'vector']
+FORMATS = {'int': ('i', 4), 'long': ('q', 8), 'double': ('d', 8)}
+
+def readColumns (path):
+    with open(path, 'rb') as f:
+        data = f.read()
+    pos = 0
+    magic, version, count = struct.unpack_from('>iii', data, pos)
+    pos += 12
+    if magic != MAGIC:
+        raise ValueError(path + ' is not a columnar data file')
+    if version < 1 or version > VERSION:
+        raise ValueError('unsupported version {} in {}'.format(version, path))
+    names = []
+    types = []
+    for i in range(count):
+        (length,) = struct.unpack_from('>H', data, pos)
+        pos += 2
+        names.append(data[pos:pos + length].decode('utf-8'))
+        pos += length
+        code = data[pos]
+        if code >= len(TYPES) or (TYPES[code] == 'vector'
+                                  and version < VECTOR_VERSION):
+            raise ValueError('bad type code {} for column {}'
+                             .format(code, names[-1]))
+        types.append(TYPES[code])
+        pos += 1
+    values = [[] for i in range(count)]
+    while pos < len(data):
+        (rows,) = struct.unpack_from('>i', data, pos)
+        pos += 4
+        for i in range(count):
+            encoding = data[pos]
+            (length,) = struct.unpack_from('>i', data, pos + 1)
+            pos += 5
+            chunk = zlib.decompress(data[pos:pos + length])
+            pos += length
+            values[i].append(decode(types[i], encoding, chunk, rows))
+    result = []
+    for name, colType, chunks in zip(names, types, values):
+        if numpy is not None and colType in FORMATS:
+            result.append((name, numpy.concatenate(chunks) if chunks
+                           else numpy.array([], dtype=FORMATS[colType][0])))
+        else:
+            result.append((name, [v for chunk in chunks for v in chunk]))
+    return result
+
+def decode (colType, encoding, chunk, rows):
+    if colType == 'string':
+        result = []
+        pos = 0
+        for i in range(rows):
+            (length,) = struct.unpack_from('>i', chunk, pos)
+            pos += 4
+            if length < 0:
+                result.append(None)
+            else:
+                result.append(chunk[pos:pos + length].decode('utf-8'))
+                pos += length
+        return result
+    if colType == 'vector':
+        return decodeVectors(encoding, chunk, rows)
+    fmt, width = FORMATS[colType]
+    if numpy is not None:
+        raw = numpy.frombuffer(chunk, dtype=numpy.uint8)
+        if encoding == 1:
+            # undo the byte shuffle
+            raw = raw.reshape(width, rows).T.reshape(-1)
+        return raw.view('>' + fmt).astype(fmt)
+    if encoding == 1:
+        chunk = bytes(chunk[b * rows + i]
+                      for i in range(rows) for b in range(width))
+    return struct.unpack('>{}{}'.format(rows, fmt), chunk)
+
+def decodeVectors (encoding, chunk, rows):
+    lengths = struct.unpack_from('>{}i'.format(rows), chunk, 0)
+    count = sum(lengths)
+    flat = decode('double', encoding, chunk[rows * 4:], count)
+    result = []
+    pos = 0
+    for length in lengths:
+        result.append(flat[pos:pos + length])
+        pos += length
+    return result
+
+def readDict (path):
+    result = {}
+    seen = {}
+    for name, values in readColumns(path):
+        key = name
+        if name in seen:
+            seen[name] += 1
+            key = '{}.{}'.format(name, seen[name])
+        else:
+            seen[name] = 0
+        result[key] = values
+    return result
+
+if __name__ == '__main__':
+    if len(sys.argv) != 2:
+        print('Usage: ColumnarData.py file.ptcol')
+        sys.exit(1)
+    columns = readColumns(sys.argv[1])
+    rows = len(columns[0][1]) if columns else 0
+    print('{} columns, {} rows'.format(len(columns), rows))
+    for name, values in columns:
+        print('  {}: {}'.format(name, values[:3]))